@@ -0,0 +1,133 @@
+package watson;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+import watson.db.BlockEditSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * Allocation profile of the lookup of the current {@link BlockEditSet}.
+ * 
+ * Compares the bytes allocated and the time taken per call by the lookup that
+ * Controller.getBlockEditSet() used to do on every call (build a
+ * "server/dimension" key and look it up in a HashMap) with the cached
+ * {@link WorldContext} that it now returns.
+ * 
+ * Allocation is measured with com.sun.management.ThreadMXBean, which is
+ * available on HotSpot JVMs.
+ * 
+ * <pre>
+ * java watson.WorldContextBench [calls]
+ * </pre>
+ */
+public class WorldContextBench
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   * 
+   * @param args optional number of calls per measurement.
+   */
+  public static void main(String[] args)
+  {
+    int calls = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+    WorldContextBench bench = new WorldContextBench();
+
+    // Warm up both paths so that the JIT has compiled them, then measure.
+    for (int pass = 0; pass < 3; ++pass)
+    {
+      boolean report = (pass == 2);
+      bench.measure("key lookup", calls, true, report);
+      bench.measure("WorldContext", calls, false, report);
+    }
+    System.out.println(bench._sink);
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   */
+  public WorldContextBench()
+  {
+    for (int dimension = -1; dimension <= 1; ++dimension)
+    {
+      _edits.put(SERVER_IP + "/" + dimension, new BlockEditSet());
+    }
+    _context = new WorldContext(0, _edits.get(SERVER_IP + "/0"));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Look up the BlockEditSet the specified number of times and report the
+   * bytes allocated and time taken per call.
+   * 
+   * @param name the name of the lookup.
+   * @param calls the number of calls.
+   * @param keyLookup if true, use the old key lookup; otherwise the cached
+   *          WorldContext.
+   * @param report if true, print the results.
+   */
+  protected void measure(String name, int calls, boolean keyLookup, boolean report)
+  {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long startBytes = threads.getThreadAllocatedBytes(thread);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < calls; ++i)
+    {
+      BlockEditSet edits = keyLookup ? lookUpByKey(SERVER_IP, 0)
+                                     : _context.getBlockEditSet();
+      _sink += System.identityHashCode(edits) & 1;
+    }
+    long nanos = System.nanoTime() - startTime;
+    long bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+    if (report)
+    {
+      System.out.println(String.format("%-12s %8.1f bytes/call %8.1f ns/call",
+        name, (double) bytes / calls, (double) nanos / calls));
+    }
+  } // measure
+
+  // --------------------------------------------------------------------------
+  /**
+   * The lookup that Controller.getBlockEditSet() did on every call before the
+   * WorldContext was cached.
+   * 
+   * @param serverIP the address of the server.
+   * @param dimension the dimension number.
+   * @return the BlockEditSet.
+   */
+  protected BlockEditSet lookUpByKey(String serverIP, int dimension)
+  {
+    StringBuilder idBuilder = new StringBuilder();
+    if (serverIP != null)
+    {
+      idBuilder.append(serverIP);
+    }
+    idBuilder.append('/');
+    idBuilder.append(dimension);
+    return _edits.get(idBuilder.toString());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A typical server address.
+   */
+  protected static final String           SERVER_IP = "c.nerd.nu";
+
+  /**
+   * The BlockEditSets, by "server/dimension" key.
+   */
+  protected HashMap<String, BlockEditSet> _edits    = new HashMap<String, BlockEditSet>();
+
+  /**
+   * The cached context.
+   */
+  protected WorldContext                  _context;
+
+  /**
+   * Consumes the results so that the lookups are not optimised away.
+   */
+  protected long                          _sink;
+} // class WorldContextBench
@@ -0,0 +1,143 @@
+package watson.chat;
+
+import java.lang.management.ManagementFactory;
+
+// ----------------------------------------------------------------------------
+/**
+ * Allocation-rate benchmark of {@link Text} against {@link BaselineText}, the
+ * class it replaced.
+ * 
+ * Each iteration does the work of highlighting one chat line with two
+ * highlights: parse the formatted line, apply two formats and produce the
+ * result as a formatted string. With the "components" argument, which needs
+ * the Minecraft classes, the chat component is built as well. Bytes are
+ * measured with com.sun.management.ThreadMXBean, which is available on
+ * HotSpot JVMs.
+ * 
+ * <pre>
+ * java watson.chat.TextBench [lines [components]]
+ * </pre>
+ */
+public class TextBench
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   * 
+   * @param args optional number of lines per measurement, and "components"
+   *          to also build chat components.
+   */
+  public static void main(String[] args)
+  {
+    int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    boolean components = (args.length > 1) && args[1].equals("components");
+    TextBench bench = new TextBench();
+
+    // Warm up so that the JIT has compiled both classes, then measure.
+    for (int pass = 0; pass < 3; ++pass)
+    {
+      boolean report = (pass == 2);
+      bench.measure("BaselineText", lines, true, false, report);
+      bench.measure("Text", lines, false, false, report);
+      if (components)
+      {
+        bench.measure("BaselineText + component", lines, true, true, report);
+        bench.measure("Text + component", lines, false, true, report);
+      }
+    }
+    System.out.println(bench._sink);
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Highlight the line the specified number of times and report the bytes
+   * allocated and time taken per line.
+   * 
+   * @param name the name of the measurement.
+   * @param lines the number of times to highlight the line.
+   * @param baseline if true, use BaselineText; otherwise Text.
+   * @param component if true, also build the chat component.
+   * @param report if true, print the results.
+   */
+  protected void measure(String name, int lines, boolean baseline,
+                         boolean component, boolean report)
+  {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long startBytes = threads.getThreadAllocatedBytes(thread);
+    long startTime = System.nanoTime();
+    if (baseline)
+    {
+      for (int i = 0; i < lines; ++i)
+      {
+        BaselineText text = new BaselineText(LINE);
+        text.setFormat(PLAYER_START, PLAYER_END, _format);
+        text.setFormat(ORE_START, ORE_END, _format);
+        _sink += text.toFormattedString().length();
+        if (component)
+        {
+          _sink += System.identityHashCode(text.toChatComponent()) & 1;
+        }
+      }
+    }
+    else
+    {
+      // As ChatHighlighter, which reuses a Text per thread.
+      Text text = new Text();
+      for (int i = 0; i < lines; ++i)
+      {
+        text.set(LINE);
+        text.setFormat(PLAYER_START, PLAYER_END, _format);
+        text.setFormat(ORE_START, ORE_END, _format);
+        _sink += text.toFormattedString().length();
+        if (component)
+        {
+          _sink += System.identityHashCode(text.toChatComponent()) & 1;
+        }
+      }
+    }
+    long nanos = System.nanoTime() - startTime;
+    long bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+    if (report)
+    {
+      System.out.println(String.format("%-26s %8.1f bytes/line %8.1f ns/line",
+        name, (double) bytes / lines, (double) nanos / lines));
+    }
+  } // measure
+
+  // --------------------------------------------------------------------------
+  /**
+   * A typical chat line, with colour codes.
+   */
+  protected static final String LINE         = "§f<§bPlayer§f> the quick brown fox jumps over the lazy dog §cdiamond_ore§f x 12";
+
+  /**
+   * The range of the unformatted text highlighted as the player name.
+   */
+  protected static final int    PLAYER_START = 1;
+
+  /**
+   * The end of the player name (exclusive).
+   */
+  protected static final int    PLAYER_END   = 7;
+
+  /**
+   * The range of the unformatted text highlighted as an ore name.
+   */
+  protected static final int    ORE_START    = 53;
+
+  /**
+   * The end of the ore name (exclusive).
+   */
+  protected static final int    ORE_END      = 64;
+
+  /**
+   * The format applied to both ranges.
+   */
+  protected Format              _format      = new Format("+red");
+
+  /**
+   * Consumes the results so that the work is not optimised away.
+   */
+  protected long                _sink;
+} // class TextBench
@@ -0,0 +1,156 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * Micro-benchmark of {@link TimeStamp} against {@link BaselineTimeStamp}, the
+ * Calendar based class it replaced.
+ * 
+ * Measures toMillis() on one thread and on four threads at once, as when the
+ * chat pipeline and the client thread both convert times, and
+ * formatMonthDayTime() on one thread.
+ * 
+ * <pre>
+ * java watson.db.TimeStampBench [calls]
+ * </pre>
+ */
+public class TimeStampBench
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   * 
+   * @param args optional number of calls per measurement.
+   */
+  public static void main(String[] args)
+    throws InterruptedException
+  {
+    int calls = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+
+    // Warm up so that the JIT has compiled both classes, then measure.
+    for (int pass = 0; pass < 3; ++pass)
+    {
+      boolean report = (pass == 2);
+      for (int baseline = 1; baseline >= 0; --baseline)
+      {
+        String name = (baseline != 0) ? "BaselineTimeStamp" : "TimeStamp";
+        measure(name, calls, baseline != 0, report);
+      }
+    }
+    System.out.println(_sink);
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Measure one of the classes and report the time per call.
+   * 
+   * @param name the name of the class.
+   * @param calls the number of calls per measurement.
+   * @param baseline if true, measure BaselineTimeStamp; otherwise TimeStamp.
+   * @param report if true, print the results.
+   */
+  protected static void measure(String name, final int calls,
+                                final boolean baseline, boolean report)
+    throws InterruptedException
+  {
+    long start = System.nanoTime();
+    _sink += toMillis(baseline, calls);
+    long toMillisNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    _sink += format(baseline, calls / 4);
+    long formatNanos = System.nanoTime() - start;
+
+    Thread[] threads = new Thread[THREADS];
+    start = System.nanoTime();
+    for (int i = 0; i < THREADS; ++i)
+    {
+      threads[i] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          long result = toMillis(baseline, calls / THREADS);
+          synchronized (TimeStampBench.class)
+          {
+            _sink += result;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+    long threadedNanos = System.nanoTime() - start;
+
+    if (report)
+    {
+      System.out.println(String.format(
+        "%-17s toMillis %7.1f ns/call, formatMonthDayTime %7.1f ns/call, toMillis on %d threads %7.1f ns/call",
+        name, (double) toMillisNanos / calls, (double) formatNanos / (calls / 4),
+        THREADS, (double) threadedNanos / calls));
+    }
+  } // measure
+
+  // --------------------------------------------------------------------------
+  /**
+   * Convert a spread of dates and times to milliseconds.
+   * 
+   * @param baseline if true, use BaselineTimeStamp; otherwise TimeStamp.
+   * @param calls the number of conversions.
+   * @return a sum of the results, so that the calls are not optimised away.
+   */
+  protected static long toMillis(boolean baseline, int calls)
+  {
+    long sum = 0;
+    for (int i = 0; i < calls; ++i)
+    {
+      int month = 1 + i % 12;
+      int day = 1 + i % 28;
+      int hour = i % 24;
+      int minute = i % 60;
+      int second = (i * 7) % 60;
+      sum += baseline ? BaselineTimeStamp.toMillis(month, day, hour, minute, second)
+                      : TimeStamp.toMillis(month, day, hour, minute, second);
+    }
+    return sum;
+  } // toMillis
+
+  // --------------------------------------------------------------------------
+  /**
+   * Format a spread of times.
+   * 
+   * @param baseline if true, use BaselineTimeStamp; otherwise TimeStamp.
+   * @param calls the number of times to format.
+   * @return the total length of the results, so that the calls are not
+   *         optimised away.
+   */
+  protected static long format(boolean baseline, int calls)
+  {
+    long sum = 0;
+    for (int i = 0; i < calls; ++i)
+    {
+      long millis = START_MILLIS + i * 7919L;
+      sum += (baseline ? BaselineTimeStamp.formatMonthDayTime(millis)
+                       : TimeStamp.formatMonthDayTime(millis)).length();
+    }
+    return sum;
+  } // format
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of threads converting times at once.
+   */
+  protected static final int  THREADS      = 4;
+
+  /**
+   * The first time formatted: November 2023.
+   */
+  protected static final long START_MILLIS = 1700000000000L;
+
+  /**
+   * Consumes the results so that the calls are not optimised away.
+   */
+  protected static long       _sink;
+} // class TimeStampBench
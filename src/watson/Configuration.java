@@ -82,6 +82,10 @@ public class Configuration
       setSsDateDirectoryImp((String) dom.get("ss_date_directory"));
       _reformatQueryResults = (Boolean) dom.get("reformat_query_results");
       _recolourQueryResults = (Boolean) dom.get("recolour_query_results");
+      _cullDistance = ((Number) dom.get("cull_distance")).doubleValue();
+      _taskTimeBudget = (Integer) dom.get("task_time_budget");
+      _taskQueueWarning = (Integer) dom.get("task_queue_warning");
+      _chatPipelined = (Boolean) dom.get("chat_pipeline");
     }
     catch (Exception ex)
     {
@@ -123,6 +127,10 @@ public class Configuration
       dom.put("ss_date_directory", _ssDateDirectory.toPattern());
       dom.put("reformat_query_results", _reformatQueryResults);
       dom.put("recolour_query_results", _recolourQueryResults);
+      dom.put("cull_distance", _cullDistance);
+      dom.put("task_time_budget", _taskTimeBudget);
+      dom.put("task_queue_warning", _taskQueueWarning);
+      dom.put("chat_pipeline", _chatPipelined);
 
       DumperOptions options = new DumperOptions();
       options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
@@ -709,6 +717,139 @@ public class Configuration
     return _recolourQueryResults;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set the distance from the player, in blocks, beyond which edits, vectors
+   * and labels are not drawn.
+   * 
+   * @param cullDistance the distance in blocks; 0 disables distance culling.
+   */
+  public void setCullDistance(double cullDistance)
+  {
+    if (cullDistance < 0.0)
+    {
+      cullDistance = 0.0;
+    }
+    _cullDistance = cullDistance;
+    if (cullDistance == 0.0)
+    {
+      Chat.localOutput("Distance culling disabled.");
+    }
+    else
+    {
+      Chat.localOutput(String.format(Locale.US,
+        "Edits further than %.1f blocks away will not be drawn.", cullDistance));
+    }
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the distance from the player, in blocks, beyond which edits,
+   * vectors and labels are not drawn, or 0 if distance culling is disabled.
+   * 
+   * @return the distance from the player, in blocks, beyond which edits,
+   *         vectors and labels are not drawn, or 0 if distance culling is
+   *         disabled.
+   */
+  public double getCullDistance()
+  {
+    return _cullDistance;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the time, in milliseconds, that may be spent running queued tasks,
+   * such as adding query results to the stored edits, in each tick.
+   * 
+   * Tasks that don't fit in the budget are carried over to the next tick.
+   * 
+   * @param taskTimeBudget the time budget in milliseconds; at least 1.
+   */
+  public void setTaskTimeBudget(int taskTimeBudget)
+  {
+    _taskTimeBudget = Math.max(1, taskTimeBudget);
+    Chat.localOutput(String.format(Locale.US,
+      "Up to %d ms per tick will be spent processing queued tasks.",
+      _taskTimeBudget));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time, in milliseconds, that may be spent running queued tasks
+   * in each tick.
+   * 
+   * @return the time, in milliseconds, that may be spent running queued tasks
+   *         in each tick.
+   */
+  public int getTaskTimeBudget()
+  {
+    return _taskTimeBudget;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the number of queued tasks at which a warning is shown that Watson is
+   * falling behind.
+   * 
+   * @param taskQueueWarning the number of tasks; 0 disables the warning.
+   */
+  public void setTaskQueueWarning(int taskQueueWarning)
+  {
+    _taskQueueWarning = Math.max(0, taskQueueWarning);
+    if (_taskQueueWarning == 0)
+    {
+      Chat.localOutput("Task queue warnings disabled.");
+    }
+    else
+    {
+      Chat.localOutput(String.format(Locale.US,
+        "A warning will be shown when %d tasks are queued.", _taskQueueWarning));
+    }
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of queued tasks at which a warning is shown that Watson
+   * is falling behind, or 0 if the warning is disabled.
+   * 
+   * @return the number of queued tasks at which a warning is shown that Watson
+   *         is falling behind, or 0 if the warning is disabled.
+   */
+  public int getTaskQueueWarning()
+  {
+    return _taskQueueWarning;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Enable or disable parsing of query results on a separate thread.
+   * 
+   * @param chatPipelined if true, query results are parsed on the
+   *          {@link watson.chat.ChatPipeline} worker thread.
+   */
+  public void setChatPipelined(boolean chatPipelined)
+  {
+    _chatPipelined = chatPipelined;
+    Chat.localOutput(String.format(Locale.US,
+      "Parsing of query results on a separate thread %s.",
+      (_chatPipelined ? "enabled" : "disabled")));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if query results are parsed on a separate thread.
+   * 
+   * @return true if query results are parsed on a separate thread.
+   */
+  public boolean isChatPipelined()
+  {
+    return _chatPipelined;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Perform lazy initialisation of the SnakeValidator used to validate in
@@ -743,6 +884,10 @@ public class Configuration
       root.addChild("ss_date_directory", new TypeValidatorNode(String.class, true, ""));
       root.addChild("reformat_query_results", new TypeValidatorNode(Boolean.class, true, true));
       root.addChild("recolour_query_results", new TypeValidatorNode(Boolean.class, true, true));
+      root.addChild("cull_distance", new TypeValidatorNode(Double.class, true, 0.0));
+      root.addChild("task_time_budget", new TypeValidatorNode(Integer.class, true, 10));
+      root.addChild("task_queue_warning", new TypeValidatorNode(Integer.class, true, 10000));
+      root.addChild("chat_pipeline", new TypeValidatorNode(Boolean.class, true, true));
 
       _validator.setRoot(root);
     }
@@ -869,5 +1014,26 @@ public class Configuration
    * Recolour query results in chat.
    */
   protected boolean             _recolourQueryResults     = true;
+
+  /**
+   * Distance from the player, in blocks, beyond which edits, vectors and labels
+   * are not drawn; 0 (the default) disables distance culling.
+   */
+  protected double              _cullDistance             = 0.0;
+
+  /**
+   * Time in milliseconds that may be spent running queued tasks in each tick.
+   */
+  protected int                 _taskTimeBudget           = 10;
+
+  /**
+   * Number of queued tasks at which a warning is shown; 0 disables it.
+   */
+  protected int                 _taskQueueWarning         = 10000;
+
+  /**
+   * If true, query results are parsed on a separate thread.
+   */
+  protected boolean             _chatPipelined            = true;
 } // class Configuration
 
@@ -16,6 +16,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityPlayerSP;
 import net.minecraft.client.multiplayer.ServerData;
 import watson.chat.Chat;
 import watson.cli.AnnoCommand;
@@ -25,6 +26,8 @@ import watson.cli.ClientCommandManager;
 import watson.cli.HighlightCommand;
 import watson.cli.WatsonCommand;
 import watson.db.BlockEdit;
+import watson.db.BlockEditFileLoader;
+import watson.db.BlockEditFileWriter;
 import watson.db.BlockEditSet;
 import watson.db.BlockTypeRegistry;
 import watson.db.Filters;
@@ -101,25 +104,83 @@ public class Controller
    * A separate {@link BlockEditSet} is maintained for each dimension
    * (overworld, nether, end).
    * 
+   * This is called several times per frame, so it returns the edits of the
+   * {@link WorldContext} set by updateWorldContext() on joining a server and by
+   * checkDimension() on changing dimension, which is only resolved here if
+   * neither has happened yet.
+   * 
    * @return the current {@link BlockEditSet} under examination.
    */
   public BlockEditSet getBlockEditSet()
   {
-    // Compute id of the form: address/dimension
+    WorldContext context = _worldContext;
+    if (context == null)
+    {
+      context = updateWorldContext();
+    }
+    return context.getBlockEditSet();
+  } // getBlockEditSet
+
+  // --------------------------------------------------------------------------
+  /**
+   * Resolve the {@link WorldContext} of the server and dimension that the
+   * player is currently in and make it current.
+   * 
+   * This is called on joining a server.
+   * 
+   * @return the new current {@link WorldContext}.
+   */
+  public WorldContext updateWorldContext()
+  {
     // Note: Minecraft.theWorld.getWorldInfo().getDimension() doesn't update.
     Minecraft mc = Minecraft.getMinecraft();
-    StringBuilder idBuilder = new StringBuilder();
 
     // This code might get referenced at startup when changing display settings
     // if the mod happens to be disabled in the config file. At that time,
     // getServerIP() will be null. Let's avoid that crash.
-    String serverIP = getServerIP();
+    WorldContext context = resolveWorldContext(getServerIP(), mc.thePlayer.dimension);
+    _worldContext = context;
+    return context;
+  } // updateWorldContext
+
+  // --------------------------------------------------------------------------
+  /**
+   * Update the current {@link WorldContext} if the player has changed
+   * dimension.
+   * 
+   * This is called once per tick. The server can only change on joining a
+   * server, so only the dimension number is compared.
+   */
+  public void checkDimension()
+  {
+    EntityPlayerSP player = Minecraft.getMinecraft().thePlayer;
+    WorldContext context = _worldContext;
+    if (player != null && context != null
+        && player.dimension != context.getDimension())
+    {
+      updateWorldContext();
+    }
+  } // checkDimension
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new {@link WorldContext} for the specified server and dimension,
+   * creating the {@link BlockEditSet} if the world has not been visited.
+   * 
+   * @param serverIP the address of the server, or null in single player.
+   * @param dimension the dimension number.
+   * @return the {@link WorldContext}.
+   */
+  protected WorldContext resolveWorldContext(String serverIP, int dimension)
+  {
+    // Compute id of the form: address/dimension
+    StringBuilder idBuilder = new StringBuilder();
     if (serverIP != null)
     {
       idBuilder.append(serverIP);
     }
     idBuilder.append('/');
-    idBuilder.append(mc.thePlayer.dimension);
+    idBuilder.append(dimension);
     String id = idBuilder.toString();
 
     // Lookup BlockEditSet or create new mapping if not found.
@@ -129,8 +190,8 @@ public class Controller
       edits = new BlockEditSet();
       _edits.put(id, edits);
     }
-    return edits;
-  } // getBlockEditSet
+    return new WorldContext(dimension, edits);
+  } // resolveWorldContext
 
   // --------------------------------------------------------------------------
   /**
@@ -140,9 +201,9 @@ public class Controller
    * @param fileName the file name to write; if it is null and there is a
    *          current player variable value, a default file name of the form
    *          player-YYYY-MM-DD-hh.mm.ss is used.
-   * 
+   * @param binary if true, write the compact binary format rather than text.
    */
-  public void saveBlockEditFile(String fileName)
+  public void saveBlockEditFile(String fileName, boolean binary)
   {
     // Compute default fileName?
     if (fileName == null)
@@ -167,21 +228,10 @@ public class Controller
 
     createBlockEditDirectory();
 
+    // Snapshot the edits now and write them on a background thread, which
+    // reports the outcome in chat.
     File file = new File(getBlockEditDirectory(), fileName);
-    try
-    {
-      BlockEditSet edits = getBlockEditSet();
-      int editCount = edits.save(file);
-      int annoCount = edits.getAnnotations().size();
-      Chat.localOutput(String.format(Locale.US,
-        "Saved %d edits and %d annotations to %s", editCount, annoCount,
-        fileName));
-    }
-    catch (IOException ex)
-    {
-      Log.exception(Level.SEVERE, "error saving BlockEditSet to " + file, ex);
-      Chat.localError("The file " + fileName + " could not be saved.");
-    }
+    new BlockEditFileWriter(getBlockEditSet(), file, binary).start();
   } // saveBlockEditFile
 
   // --------------------------------------------------------------------------
@@ -195,6 +245,13 @@ public class Controller
    */
   public void loadBlockEditFile(String fileName)
   {
+    if (_fileLoader != null)
+    {
+      Chat.localError("Already loading " + _fileLoader.getFile().getName()
+                      + ". Use \"/w file cancel\" to stop.");
+      return;
+    }
+
     File file = new File(getBlockEditDirectory(), fileName);
     if (!file.canRead())
     {
@@ -210,21 +267,11 @@ public class Controller
 
     if (file.canRead())
     {
-      try
-      {
-        BlockEditSet edits = getBlockEditSet();
-        int editCount = edits.load(file);
-        int annoCount = edits.getAnnotations().size();
-        Chat.localOutput(String.format(Locale.US,
-          "Loaded %d edits and %d annotations from %s", editCount, annoCount,
-          file.getName()));
-      }
-      catch (Exception ex)
-      {
-        Log.exception(Level.SEVERE, "error loading BlockEditSet from " + file,
-          ex);
-        Chat.localError("The file " + fileName + " could not be loaded.");
-      }
+      // Parse the file in the background and add the edits to the current
+      // BlockEditSet in batches from the tick thread.
+      Chat.localOutput("Loading " + file.getName() + "...");
+      _fileLoader = new BlockEditFileLoader(file, getBlockEditSet());
+      _fileLoader.start();
     }
     else
     {
@@ -232,6 +279,37 @@ public class Controller
     }
   } // loadBlockEditFile
 
+  // --------------------------------------------------------------------------
+  /**
+   * Cancel the loading of the file started by loadBlockEditFile(), if any.
+   */
+  public void cancelBlockEditFileLoad()
+  {
+    if (_fileLoader == null)
+    {
+      Chat.localError("No file is being loaded.");
+    }
+    else
+    {
+      _fileLoader.cancel();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Called on the main thread by a {@link BlockEditFileLoader} when it has
+   * finished loading, successfully or otherwise.
+   * 
+   * @param loader the loader.
+   */
+  public void onBlockEditFileLoaderFinished(BlockEditFileLoader loader)
+  {
+    if (_fileLoader == loader)
+    {
+      _fileLoader = null;
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * List all of the {@link BlockEditSet} save files whose names begin with the
@@ -825,6 +903,13 @@ public class Controller
    */
   protected HashMap<String, BlockEditSet> _edits           = new HashMap<String, BlockEditSet>();
 
+  /**
+   * The context of the world the player is currently in, or null if not yet
+   * resolved; set by updateWorldContext(). Volatile because it is set on the
+   * main thread but also read from the chat thread, e.g. by TeleportAnalysis.
+   */
+  protected volatile WorldContext         _worldContext;
+
   /**
    * Determines which edits are stored (in a {@link BlocKEditSet}) and which are
    * ignored.
@@ -873,4 +958,10 @@ public class Controller
    * True if the selected edit position has changed.
    */
   protected boolean                       _selectionChanged;
+
+  /**
+   * The loader of the edit file currently being loaded in the background, or
+   * null if no file is being loaded.
+   */
+  protected BlockEditFileLoader           _fileLoader;
 } // class Controller
@@ -2,6 +2,7 @@ package watson;
 
 import net.minecraft.world.WorldSettings;
 import watson.chat.Chat;
+import watson.db.TimeWindow;
 
 // --------------------------------------------------------------------------
 /**
@@ -239,46 +240,76 @@ public class DisplaySettings
     return _minVectorLength;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Restrict the display of edits (outlines, vectors and ore deposit labels)
+   * to those in the specified time window.
+   * 
+   * @param timeWindow the time window, or {@link TimeWindow#ALL} to display
+   *          edits at all times.
+   */
+  public void setTimeWindow(TimeWindow timeWindow)
+  {
+    _timeWindow = timeWindow;
+    Chat.localOutput("Displaying edits from " + timeWindow + ".");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time window of edits that are displayed.
+   * 
+   * @return the time window of edits that are displayed; never null.
+   */
+  public TimeWindow getTimeWindow()
+  {
+    return _timeWindow;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * True if all Watson displays can be drawn. Other flags disable individual
    * displays.
    */
-  protected boolean _displayed          = true;
+  protected boolean    _displayed          = true;
 
   /**
    * True if _displayed has changed.
    */
-  protected boolean _displayVisibilityChanged;
+  protected boolean    _displayVisibilityChanged;
 
   /**
    * True if wireframe block outlines should be drawn.
    */
-  protected boolean _outlineShown       = true;
+  protected boolean    _outlineShown       = true;
 
   /**
    * True if annotations should be drawn.
    */
-  protected boolean _annotationsShown   = true;
+  protected boolean    _annotationsShown   = true;
 
   /**
    * True if ore deposit labels should be drawn.
    */
-  protected boolean _labelsShown        = true;
+  protected boolean    _labelsShown        = true;
 
   /**
    * If true, creation edits are linked by vectors.
    */
-  protected boolean _linkedCreations    = true;
+  protected boolean    _linkedCreations    = true;
 
   /**
    * If true, destruction edits are linked by vectors.
    */
-  protected boolean _linkedDestructions = true;
+  protected boolean    _linkedDestructions = true;
 
   /**
    * The minimum length of a vector between edits for it to be drawn.
    */
-  protected float   _minVectorLength    = 4.0f;
+  protected float      _minVectorLength    = 4.0f;
+
+  /**
+   * The time window of edits that are displayed.
+   */
+  protected TimeWindow _timeWindow         = TimeWindow.ALL;
 
 } // class DisplaySettings
\ No newline at end of file
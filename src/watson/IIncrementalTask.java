@@ -0,0 +1,23 @@
+package watson;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link SyncTaskQueue} task that can do its work in pieces, over several
+ * ticks, so that it can stay within the per-tick time budget.
+ * 
+ * An unfinished task remains at the head of the ordinary task queue and is
+ * resumed on the next tick, ahead of any ordinary task queued after it.
+ */
+public interface IIncrementalTask extends Runnable
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Do some of the work of the task, stopping as soon as practical after the
+   * deadline has passed.
+   * 
+   * @param deadline the value of System.nanoTime() at which the task should
+   *          return.
+   * @return true if the task has finished; false if it should be resumed.
+   */
+  public boolean runUntil(long deadline);
+}
@@ -167,6 +167,8 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable, Po
   public void onJoinGame(INetHandler netHandler, S01PacketJoinGame joinGamePacket, ServerData serverData,
                          RealmsServer realmsServer)
   {
+    // The edits shown depend on the server; look them up again.
+    Controller.instance.updateWorldContext();
     if (Configuration.instance.isEnabled())
     {
       _gameJoinTime = System.currentTimeMillis();
@@ -205,6 +207,10 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable, Po
   @Override
   public void onTick(Minecraft minecraft, float partialTicks, boolean inGame, boolean clock)
   {
+    if (inGame)
+    {
+      Controller.instance.checkDimension();
+    }
     SyncTaskQueue.instance.runTasks();
     Controller.instance.processServerChatQueue();
 
@@ -266,6 +272,10 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable, Po
       boolean foggy = GL11.glIsEnabled(GL11.GL_FOG);
       GL11.glDisable(GL11.GL_FOG);
 
+      // Capture the view frustum while the camera matrices are current.
+      ViewCuller.instance.beginFrame(getPlayerX(partialTicks),
+        getPlayerY(partialTicks), getPlayerZ(partialTicks));
+
       GL11.glPushMatrix();
 
       GL11.glTranslated(
@@ -1,6 +1,11 @@
 package watson;
 
+import java.util.Locale;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import watson.chat.Chat;
+import watson.debug.Log;
 
 // ----------------------------------------------------------------------------
 /**
@@ -9,6 +14,13 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * This minimises locking and allows various structures such as BlockEditSet to
  * be modified at an appropriate time, when not being traversed, thus avoiding a
  * ConcurrentModificationException.
+ * 
+ * Tasks are run from runTasks() until the per-tick time budget set by
+ * {@link Configuration#getTaskTimeBudget()} is spent; the remainder are left
+ * for the next tick. Priority tasks run ahead of ordinary tasks, and tasks
+ * that implement {@link IIncrementalTask} can be interrupted part way through.
+ * A warning is shown when the number of queued tasks reaches the limit set by
+ * {@link Configuration#getTaskQueueWarning()}.
  */
 public class SyncTaskQueue
 {
@@ -20,35 +32,191 @@ public class SyncTaskQueue
 
   // --------------------------------------------------------------------------
   /**
-   * Add a task to the queue.
+   * Add an ordinary task to the queue.
    * 
    * @param task the task.
    */
   public void addTask(Runnable task)
   {
-    _taskQueue.add(task);
+    addTask(task, false);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a task to the queue.
+   * 
+   * This method may be called from any thread.
+   * 
+   * @param task the task.
+   * @param priority if true, the task is run before any ordinary task, such as
+   *          the bulk addition of edits.
+   */
+  public void addTask(Runnable task, boolean priority)
+  {
+    _size.incrementAndGet();
+    if (priority)
+    {
+      _priorityQueue.add(task);
+    }
+    else
+    {
+      _taskQueue.add(task);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of tasks waiting to run, including any unfinished
+   * {@link IIncrementalTask}s.
+   * 
+   * @return the number of tasks waiting to run.
+   */
+  public int getSize()
+  {
+    return _size.get();
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Run and dequeue all tasks.
+   * Run and dequeue tasks until the queue is empty or the per-tick time budget
+   * is spent.
+   * 
+   * At least one task is run on each call, so the queue always makes progress.
    */
   public void runTasks()
   {
+    long deadline = System.nanoTime()
+                    + Configuration.instance.getTaskTimeBudget() * 1000000L;
     for (;;)
     {
-      Runnable task = _taskQueue.poll();
-      if (task == null)
+      // An unfinished task is resumed ahead of the rest of its queue.
+      Runnable task;
+      boolean priority = true;
+      if (_unfinishedPriority != null)
+      {
+        task = _unfinishedPriority;
+        _unfinishedPriority = null;
+      }
+      else
+      {
+        task = _priorityQueue.poll();
+        if (task == null)
+        {
+          priority = false;
+          if (_unfinished != null)
+          {
+            task = _unfinished;
+            _unfinished = null;
+          }
+          else
+          {
+            task = _taskQueue.poll();
+            if (task == null)
+            {
+              break;
+            }
+          }
+        }
+      }
+
+      if (task instanceof IIncrementalTask)
+      {
+        if (((IIncrementalTask) task).runUntil(deadline))
+        {
+          _size.decrementAndGet();
+        }
+        else
+        {
+          if (priority)
+          {
+            _unfinishedPriority = (IIncrementalTask) task;
+          }
+          else
+          {
+            _unfinished = (IIncrementalTask) task;
+          }
+          break;
+        }
+      }
+      else
+      {
+        task.run();
+        _size.decrementAndGet();
+      }
+
+      if (System.nanoTime() - deadline >= 0)
       {
         break;
       }
-      task.run();
+    } // for
+
+    checkHighWaterMark();
+  } // runTasks
+
+  // --------------------------------------------------------------------------
+  /**
+   * Warn, once, when the number of queued tasks reaches the configured limit,
+   * and allow the warning to be shown again once the queue has drained to half
+   * of that limit.
+   */
+  protected void checkHighWaterMark()
+  {
+    int limit = Configuration.instance.getTaskQueueWarning();
+    if (limit <= 0)
+    {
+      return;
     }
-  }
+
+    int size = _size.get();
+    if (!_warned && size >= limit)
+    {
+      _warned = true;
+      String message = String.format(Locale.US,
+        "Watson is falling behind: %d tasks are waiting to be processed.", size);
+      Log.warning(message);
+      Chat.localError(message);
+    }
+    else if (_warned && size <= limit / 2)
+    {
+      _warned = false;
+      Log.info(String.format(Locale.US, "Task queue has drained to %d.", size));
+    }
+  } // checkHighWaterMark
 
   // --------------------------------------------------------------------------
   /**
-   * Queue of tasks to execute in the order that they should run.
+   * Queue of priority tasks to execute in the order that they should run.
+   */
+  protected ConcurrentLinkedQueue<Runnable> _priorityQueue = new ConcurrentLinkedQueue<Runnable>();
+
+  /**
+   * Queue of ordinary tasks to execute in the order that they should run.
+   */
+  protected ConcurrentLinkedQueue<Runnable> _taskQueue     = new ConcurrentLinkedQueue<Runnable>();
+
+  /**
+   * An ordinary task that ran out of time on a previous tick and will be
+   * resumed before the next ordinary task; accessed only on the main thread.
+   */
+  protected IIncrementalTask                _unfinished;
+
+  /**
+   * A priority task that ran out of time on a previous tick and will be
+   * resumed before any other task; accessed only on the main thread.
+   */
+  protected IIncrementalTask                _unfinishedPriority;
+
+  /**
+   * The total number of tasks in both queues, plus _unfinished and
+   * _unfinishedPriority.
+   * 
+   * ConcurrentLinkedQueue.size() is O(n), so the count is kept separately.
+   */
+  protected AtomicInteger                   _size          = new AtomicInteger();
+
+  /**
+   * True if the high water mark warning has been shown and the queue has not
+   * since drained; accessed only on the main thread.
    */
-  protected ConcurrentLinkedQueue<Runnable> _taskQueue = new ConcurrentLinkedQueue<Runnable>();
-} // class SyncTaskQueue
\ No newline at end of file
+  protected boolean                         _warned;
+} // class SyncTaskQueue
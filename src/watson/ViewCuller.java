@@ -0,0 +1,183 @@
+package watson;
+
+import net.minecraft.client.renderer.culling.Frustum;
+
+// ----------------------------------------------------------------------------
+/**
+ * Decides, once per frame, which parts of the Watson display are worth
+ * submitting to OpenGL.
+ * 
+ * Anything that lies entirely outside the view frustum, or entirely further
+ * from the player than Configuration.getCullDistance(), is culled before any
+ * geometry is emitted. Counts of drawn and culled primitives are kept so that
+ * the cost of rendering large investigations can be checked with
+ * "/w display stats".
+ */
+public class ViewCuller
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance.
+   */
+  public static final ViewCuller instance = new ViewCuller();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Prepare to cull geometry for a new frame.
+   * 
+   * This must be called from the render thread while the camera's modelview
+   * and projection matrices are current, before anything is drawn.
+   * 
+   * @param x the camera x coordinate.
+   * @param y the camera y coordinate.
+   * @param z the camera z coordinate.
+   */
+  public void beginFrame(double x, double y, double z)
+  {
+    _lastDrawnCount = _drawnCount;
+    _lastCulledCount = _culledCount;
+    _drawnCount = 0;
+    _culledCount = 0;
+
+    _x = x;
+    _y = y;
+    _z = z;
+    double distance = Configuration.instance.getCullDistance();
+    _maxDistanceSquared = (distance > 0.0) ? distance * distance
+                                           : Double.POSITIVE_INFINITY;
+
+    // The Frustum constructor captures the current GL matrices.
+    _frustum = new Frustum();
+    _frustum.setPosition(x, y, z);
+  } // beginFrame
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if any part of the specified axis-aligned box is potentially
+   * visible.
+   * 
+   * @param minX the minimum x coordinate of the box.
+   * @param minY the minimum y coordinate of the box.
+   * @param minZ the minimum z coordinate of the box.
+   * @param maxX the maximum x coordinate of the box.
+   * @param maxY the maximum y coordinate of the box.
+   * @param maxZ the maximum z coordinate of the box.
+   * @param primitives the number of primitives in the box, added to the drawn
+   *          or culled count as appropriate.
+   * @return true if the box should be drawn.
+   */
+  public boolean isBoxVisible(double minX, double minY, double minZ,
+                              double maxX, double maxY, double maxZ,
+                              int primitives)
+  {
+    // Distance from the camera to the closest point of the box.
+    double dx = Math.max(0.0, Math.max(minX - _x, _x - maxX));
+    double dy = Math.max(0.0, Math.max(minY - _y, _y - maxY));
+    double dz = Math.max(0.0, Math.max(minZ - _z, _z - maxZ));
+    boolean visible = (dx * dx + dy * dy + dz * dz <= _maxDistanceSquared)
+                      && (_frustum == null || _frustum.isBoxInFrustum(minX,
+                        minY, minZ, maxX, maxY, maxZ));
+    if (visible)
+    {
+      _drawnCount += primitives;
+    }
+    else
+    {
+      _culledCount += primitives;
+    }
+    return visible;
+  } // isBoxVisible
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the block at the specified coordinates is potentially
+   * visible, counting it as a single primitive.
+   * 
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @return true if the block should be drawn.
+   */
+  public boolean isBlockVisible(int x, int y, int z)
+  {
+    return isBoxVisible(x, y, z, x + 1, y + 1, z + 1, 1);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of primitives drawn in the previous frame.
+   * 
+   * @return the number of primitives drawn in the previous frame.
+   */
+  public int getDrawnCount()
+  {
+    return _lastDrawnCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of primitives culled in the previous frame.
+   * 
+   * @return the number of primitives culled in the previous frame.
+   */
+  public int getCulledCount()
+  {
+    return _lastCulledCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce Singleton pattern.
+   */
+  private ViewCuller()
+  {
+    // Nothing.
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The view frustum for the current frame, or null before the first frame.
+   */
+  protected Frustum _frustum;
+
+  /**
+   * The camera x coordinate.
+   */
+  protected double  _x;
+
+  /**
+   * The camera y coordinate.
+   */
+  protected double  _y;
+
+  /**
+   * The camera z coordinate.
+   */
+  protected double  _z;
+
+  /**
+   * The square of the cull distance, or infinity if distance culling is
+   * disabled.
+   */
+  protected double  _maxDistanceSquared = Double.POSITIVE_INFINITY;
+
+  /**
+   * The number of primitives drawn so far in the current frame.
+   */
+  protected int     _drawnCount;
+
+  /**
+   * The number of primitives culled so far in the current frame.
+   */
+  protected int     _culledCount;
+
+  /**
+   * The number of primitives drawn in the previous frame.
+   */
+  protected int     _lastDrawnCount;
+
+  /**
+   * The number of primitives culled in the previous frame.
+   */
+  protected int     _lastCulledCount;
+} // class ViewCuller
@@ -0,0 +1,62 @@
+package watson;
+
+import watson.db.BlockEditSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * Associates a dimension of the current server with the {@link BlockEditSet}
+ * holding the edits in that world.
+ * 
+ * The {@link Controller} keeps a reference to the context of the world the
+ * player is in, so that the {@link BlockEditSet} can be returned without
+ * building a key and looking it up, which would otherwise happen several
+ * times per frame and once per edit added.
+ */
+public class WorldContext
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param dimension the dimension number.
+   * @param edits the edits in the world.
+   */
+  public WorldContext(int dimension, BlockEditSet edits)
+  {
+    _dimension = dimension;
+    _edits = edits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the dimension number.
+   * 
+   * @return the dimension number.
+   */
+  public int getDimension()
+  {
+    return _dimension;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits in this world.
+   * 
+   * @return the edits in this world.
+   */
+  public BlockEditSet getBlockEditSet()
+  {
+    return _edits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The dimension number.
+   */
+  protected int          _dimension;
+
+  /**
+   * The edits in this world.
+   */
+  protected BlockEditSet _edits;
+} // class WorldContext
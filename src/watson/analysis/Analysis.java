@@ -1,13 +1,16 @@
 package watson.analysis;
 
+import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraft.util.IChatComponent;
+import watson.chat.ChatPipeline;
 import watson.chat.IChatHandler;
 import watson.chat.IMatchedChatHandler;
+import watson.chat.LiteralPrefilter;
 
 // ----------------------------------------------------------------------------
 /**
@@ -37,12 +40,67 @@ public class Analysis implements IChatHandler
       Matcher m = entry.getKey().matcher(unformatted);
       if (m.matches())
       {
-        return entry.getValue().onMatchedChat(chat, m);
+        return dispatch(entry.getValue(), chat, m);
       }
     }
     return true;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Like dispatchMatchedChat(IChatComponent), but only the Patterns whose bits
+   * are set in the candidates computed by a {@link LiteralPrefilter} are
+   * evaluated.
+   * 
+   * @param chat the chat to match.
+   * @param unformatted the unformatted text of the chat.
+   * @param candidates the candidate patterns computed by the prefilter that
+   *          was last passed to addPatternsTo().
+   * @return the return value of the IMatchedChatHandler that was called, or
+   *         true if none were called. The chat is added to the client's chat
+   *         GUI if true was returned.
+   */
+  public boolean dispatchMatchedChat(IChatComponent chat, String unformatted,
+                                     BitSet candidates)
+  {
+    if (_patternIds == null || _patternIds.length != _handlers.size())
+    {
+      return dispatchMatchedChat(chat);
+    }
+
+    int i = 0;
+    for (Entry<Pattern, IMatchedChatHandler> entry : _handlers.entrySet())
+    {
+      if (candidates.get(_patternIds[i++]))
+      {
+        Matcher m = entry.getKey().matcher(unformatted);
+        if (m.matches())
+        {
+          return dispatch(entry.getValue(), chat, m);
+        }
+      }
+    }
+    return true;
+  } // dispatchMatchedChat
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add all of the Patterns registered with addMatchedChatHandler() to the
+   * prefilter, so that dispatchMatchedChat(IChatComponent, String, BitSet) can
+   * be called with the candidates that it computes.
+   * 
+   * @param prefilter the prefilter.
+   */
+  public void addPatternsTo(LiteralPrefilter prefilter)
+  {
+    _patternIds = new int[_handlers.size()];
+    int i = 0;
+    for (Pattern pattern : _handlers.keySet())
+    {
+      _patternIds[i++] = prefilter.add(pattern);
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Specify that the handler's onMatchedChat() should be called for chat that
@@ -56,6 +114,117 @@ public class Analysis implements IChatHandler
     _handlers.put(pattern, handler);
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Specify that the handler's onMatchedChat() should be called for chat that
+   * matches the specified pattern, on the {@link ChatPipeline} worker thread
+   * when that is enabled.
+   * 
+   * Since the decision whether to show the chat must be made before the handler
+   * runs, it is fixed when the handler is added and the handler's return value
+   * is ignored. All of the handlers of an Analysis that share state should be
+   * pipelined, so that they run in the order that chats were received.
+   * 
+   * @param pattern the regexp that the unformatted chat must match.
+   * @param echo true if the chat should be echoed in the client GUI; false if
+   *          it should be filtered out.
+   * @param handler the handler whose method is called.
+   */
+  public void addPipelinedChatHandler(Pattern pattern, boolean echo,
+                                      IMatchedChatHandler handler)
+  {
+    _handlers.put(pattern, new PipelinedChatHandler(handler, echo));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Call the handler of a matched chat, or submit the call to the
+   * {@link ChatPipeline} if the handler is pipelined and that is enabled.
+   * 
+   * @param handler the handler.
+   * @param chat the chat.
+   * @param m the Matcher that matched the unformatted chat.
+   * @return true if the chat should be echoed in the client GUI.
+   */
+  protected boolean dispatch(IMatchedChatHandler handler,
+                             final IChatComponent chat, final Matcher m)
+  {
+    if (handler instanceof PipelinedChatHandler
+        && ChatPipeline.instance.isEnabled())
+    {
+      final PipelinedChatHandler pipelined = (PipelinedChatHandler) handler;
+      ChatPipeline.instance.submit(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          pipelined.onMatchedChat(chat, m);
+        }
+      });
+      return pipelined.getEcho();
+    }
+    else
+    {
+      return handler.onMatchedChat(chat, m);
+    }
+  } // dispatch
+
+  // --------------------------------------------------------------------------
+  /**
+   * An IMatchedChatHandler registered by addPipelinedChatHandler(), which has
+   * a fixed decision whether to echo the chat.
+   */
+  protected static class PipelinedChatHandler implements IMatchedChatHandler
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param handler the handler to call.
+     * @param echo true if the chat should be echoed in the client GUI.
+     */
+    public PipelinedChatHandler(IMatchedChatHandler handler, boolean echo)
+    {
+      _handler = handler;
+      _echo = echo;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the chat should be echoed in the client GUI.
+     * 
+     * @return true if the chat should be echoed in the client GUI.
+     */
+    public boolean getEcho()
+    {
+      return _echo;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Call the handler and return the fixed echo decision.
+     * 
+     * @see watson.chat.IMatchedChatHandler#onMatchedChat(net.minecraft.util.IChatComponent,
+     *      java.util.regex.Matcher)
+     */
+    @Override
+    public boolean onMatchedChat(IChatComponent chat, Matcher m)
+    {
+      _handler.onMatchedChat(chat, m);
+      return _echo;
+    }
+
+    /**
+     * The handler to call.
+     */
+    protected IMatchedChatHandler _handler;
+
+    /**
+     * True if the chat should be echoed in the client GUI.
+     */
+    protected boolean             _echo;
+  } // class PipelinedChatHandler
+
   // --------------------------------------------------------------------------
   /**
    * @see watson.chat.IChatHandler#onChat(net.minecraft.util.IChatComponent)
@@ -71,4 +240,10 @@ public class Analysis implements IChatHandler
    * Handlers for chats that match specific regexps.
    */
   protected LinkedHashMap<Pattern, IMatchedChatHandler> _handlers = new LinkedHashMap<Pattern, IMatchedChatHandler>();
+
+  /**
+   * The prefilter index of each Pattern in _handlers, in the same order, or
+   * null if addPatternsTo() has not been called.
+   */
+  protected int[]                                       _patternIds;
 } // class Analysis
@@ -8,7 +8,6 @@ import java.util.regex.Matcher;
 
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
-import watson.SyncTaskQueue;
 import watson.analysis.task.AddBlockEditTask;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
@@ -136,7 +135,7 @@ public class CoalBlockAnalysis extends Analysis
     if (Controller.instance.getFilters().isAcceptedPlayer(player))
     {
       BlockEdit edit = new BlockEdit(millis, player, created, _x, _y, _z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, _expectingFirstEdit));
+      AddBlockEditTask.queue(edit, _expectingFirstEdit);
 
       // Once our first edit passes the filter, no need to set variables.
       if (_expectingFirstEdit)
@@ -10,7 +10,6 @@ import java.util.regex.Pattern;
 
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
-import watson.SyncTaskQueue;
 import watson.analysis.task.AddBlockEditTask;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
@@ -145,7 +144,7 @@ public class CoreProtectAnalysis extends Analysis
         if (Controller.instance.getFilters().isAcceptedPlayer(_player))
         {
           BlockEdit edit = new BlockEdit(_millis, _player, _creation, _x, _y, _z, _type);
-          SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, _firstInspectorResult));
+          AddBlockEditTask.queue(edit, _firstInspectorResult);
 
           // The first inspector result to pass the filter sets variables.
           if (_firstInspectorResult)
@@ -186,7 +185,7 @@ public class CoreProtectAnalysis extends Analysis
       // https://github.com/totemo/watson/issues/23
 
       BlockEdit edit = new BlockEdit(_millis, _player, _creation, _x, _y, _z, _type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditTask.queue(edit, true);
       _lookupDetails = false;
     }
   } // lookupCoords
@@ -15,6 +15,7 @@ import static watson.analysis.LogBlockPatterns.LB_HEADER_SUM_PLAYERS;
 import static watson.analysis.LogBlockPatterns.LB_HEADER_TIME_CHECK;
 import static watson.analysis.LogBlockPatterns.LB_PAGE;
 
+import java.util.BitSet;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
@@ -22,10 +23,10 @@ import java.util.regex.Matcher;
 import net.minecraft.util.IChatComponent;
 import watson.Configuration;
 import watson.Controller;
-import watson.SyncTaskQueue;
 import watson.analysis.task.AddBlockEditTask;
 import watson.chat.Chat;
 import watson.chat.ChatComponents;
+import watson.chat.ChatPipeline;
 import watson.chat.Colour;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
@@ -47,37 +48,68 @@ public class LbCoordsAnalysis extends Analysis
    */
   public LbCoordsAnalysis()
   {
-    addMatchedChatHandler(LB_COORD, new IMatchedChatHandler()
+    addPipelinedChatHandler(LB_COORD, false, new IMatchedChatHandler()
     {
       @Override
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
       {
-        lbCoord(chat, m);
+        LbCoordsLine line = new LbCoordsLine();
+        try
+        {
+          line.set(m, m.group(8).equals("created") ? LbCoordsLine.CREATED
+            : LbCoordsLine.DESTROYED);
+        }
+        catch (NumberFormatException ex)
+        {
+          Log.exception(Level.INFO, "error parsing lb coords", ex);
+          return false;
+        }
+        lbCoord(chat, line);
         // Don't echo in GUI.
         return false;
       }
     });
-    addMatchedChatHandler(LB_COORD_KILLS, new IMatchedChatHandler()
+    addPipelinedChatHandler(LB_COORD_KILLS, false, new IMatchedChatHandler()
     {
       @Override
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
       {
-        lbCoordKills(chat, m);
+        LbCoordsLine line = new LbCoordsLine();
+        try
+        {
+          line.set(m, LbCoordsLine.KILLED);
+        }
+        catch (NumberFormatException ex)
+        {
+          Log.exception(Level.INFO, "error parsing lb kills coords", ex);
+          return false;
+        }
+        lbCoordKills(chat, line);
         // Don't echo in GUI.
         return false;
       }
     });
-    addMatchedChatHandler(LB_COORD_REPLACED, new IMatchedChatHandler()
+    addPipelinedChatHandler(LB_COORD_REPLACED, false, new IMatchedChatHandler()
     {
       @Override
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
       {
-        lbCoordReplaced(chat, m);
+        LbCoordsLine line = new LbCoordsLine();
+        try
+        {
+          line.set(m, LbCoordsLine.REPLACED);
+        }
+        catch (NumberFormatException ex)
+        {
+          Log.exception(Level.INFO, "error parsing lb replaced coords", ex);
+          return false;
+        }
+        lbCoordReplaced(chat, line);
         // Don't echo in GUI.
         return false;
       }
     });
-    addMatchedChatHandler(LB_PAGE, new IMatchedChatHandler()
+    addPipelinedChatHandler(LB_PAGE, true, new IMatchedChatHandler()
     {
       @Override
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
@@ -97,67 +129,53 @@ public class LbCoordsAnalysis extends Analysis
       }
     };
 
-    addMatchedChatHandler(LB_HEADER_NO_RESULTS, headerHandler);
-    addMatchedChatHandler(LB_HEADER_CHANGES, headerHandler);
-    addMatchedChatHandler(LB_HEADER_BLOCKS, headerHandler);
-    addMatchedChatHandler(LB_HEADER_SUM_BLOCKS, headerHandler);
-    addMatchedChatHandler(LB_HEADER_SUM_PLAYERS, headerHandler);
-    addMatchedChatHandler(LB_HEADER_SEARCHING, headerHandler);
-    addMatchedChatHandler(LB_HEADER_RATIO, headerHandler);
-    addMatchedChatHandler(LB_HEADER_RATIO_CURRENT, headerHandler);
-    addMatchedChatHandler(LB_HEADER_TIME_CHECK, headerHandler);
-    addMatchedChatHandler(LB_HEADER_BLOCK, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_NO_RESULTS, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_CHANGES, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_BLOCKS, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_SUM_BLOCKS, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_SUM_PLAYERS, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_SEARCHING, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_RATIO, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_RATIO_CURRENT, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_TIME_CHECK, true, headerHandler);
+    addPipelinedChatHandler(LB_HEADER_BLOCK, true, headerHandler);
   } // constructor
 
   // --------------------------------------------------------------------------
   /**
    * Parse creation and destruction coords results.
    */
-  void lbCoord(IChatComponent chat, Matcher m)
+  void lbCoord(IChatComponent chat, LbCoordsLine line)
   {
     try
     {
-      // TODO: describe Matcher groups and their conversions in a config file.
-      // Provide a way to get a set of named properties of a line.
-      // Use reflection or JavaBeans Statement/Expression to create the
-      // BlockEdit as directed by config file.
-
-      int index = Integer.parseInt(m.group(1));
-      int month = Integer.parseInt(m.group(2));
-      int day = Integer.parseInt(m.group(3));
-      int hour = Integer.parseInt(m.group(4));
-      int minute = Integer.parseInt(m.group(5));
-      int second = Integer.parseInt(m.group(6));
+      int index = line.getIndex();
+      int month = line.getMonth();
+      int day = line.getDay();
+      int hour = line.getHour();
+      int minute = line.getMinute();
+      int second = line.getSecond();
       long millis = TimeStamp.toMillis(month, day, hour, minute, second);
 
-      String player = m.group(7);
-      String action = m.group(8);
-      String block = m.group(9);
+      String player = line.getPlayer();
 
-      // If there are an extra 4 groups, then we're dealing with a sign.
       String sign1 = null, sign2 = null, sign3 = null, sign4 = null;
-      int x, y, z;
-      if (m.groupCount() == 16)
+      if (line.hasSigns())
       {
-        sign1 = m.group(10);
-        sign2 = m.group(11);
-        sign3 = m.group(12);
-        sign4 = m.group(13);
-        x = Integer.parseInt(m.group(14));
-        y = Integer.parseInt(m.group(15));
-        z = Integer.parseInt(m.group(16));
-      }
-      else
-      {
-        x = Integer.parseInt(m.group(10));
-        y = Integer.parseInt(m.group(11));
-        z = Integer.parseInt(m.group(12));
+        sign1 = line.getSign(0);
+        sign2 = line.getSign(1);
+        sign3 = line.getSign(2);
+        sign4 = line.getSign(3);
       }
+      int x = line.getX();
+      int y = line.getY();
+      int z = line.getZ();
 
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(block);
-      boolean created = action.equals("created");
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(
+        line.getText(), line.getBlockStart(), line.getBlockEnd());
+      boolean created = (line.getAction() == LbCoordsLine.CREATED);
       BlockEdit edit = new BlockEdit(millis, player, created, x, y, z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditTask.queue(edit, true);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -213,26 +231,24 @@ public class LbCoordsAnalysis extends Analysis
   /**
    * Parse kill coords results.
    */
-  void lbCoordKills(IChatComponent chat, Matcher m)
+  void lbCoordKills(IChatComponent chat, LbCoordsLine line)
   {
     try
     {
-      int index = Integer.parseInt(m.group(1));
-      int month = Integer.parseInt(m.group(2));
-      int day = Integer.parseInt(m.group(3));
-      int hour = Integer.parseInt(m.group(4));
-      int minute = Integer.parseInt(m.group(5));
-      int second = Integer.parseInt(m.group(6));
+      int index = line.getIndex();
+      int month = line.getMonth();
+      int day = line.getDay();
+      int hour = line.getHour();
+      int minute = line.getMinute();
+      int second = line.getSecond();
       long millis = TimeStamp.toMillis(month, day, hour, minute, second);
 
-      String player = m.group(7);
-      String action = m.group(8);
-      String block = m.group(9);
+      String player = line.getPlayer();
 
-      int x = Integer.parseInt(m.group(10));
-      int y = Integer.parseInt(m.group(11));
-      int z = Integer.parseInt(m.group(12));
-      String weapon = m.group(13);
+      int x = line.getX();
+      int y = line.getY();
+      int z = line.getZ();
+      String weapon = line.getOther();
 
       /**
        * LogBlock doesn't distinguish between player kills and other kills, it just
@@ -246,12 +262,13 @@ public class LbCoordsAnalysis extends Analysis
        * player-like looking model over a typical "unknown" bright magenta box.
        */
 
-      BlockType type = BlockTypeRegistry.instance.getBlockKillTypeByName(block);
+      BlockType type = BlockTypeRegistry.instance.getBlockKillTypeByName(
+        line.getText(), line.getBlockStart(), line.getBlockEnd());
 
       // For our purposes, we'll treat a kill like a block destruction
-      boolean created = action.equals("created");
+      boolean created = false;
       BlockEdit edit = new BlockEdit(millis, player, created, x, y, z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditTask.queue(edit, true);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -267,7 +284,7 @@ public class LbCoordsAnalysis extends Analysis
           output = String.format(Locale.US,
             "%s(%2d) %02d-%02d %02d:%02d:%02d (%d,%d,%d) %s %s %s %s",
             colour, index, month, day, hour, minute,
-            second, x, y, z, (created ? '+' : '-'), block, player, weapon);
+            second, x, y, z, (created ? '+' : '-'), line.getBlock(), player, weapon);
 
           Chat.localChat(output);
         }
@@ -298,29 +315,29 @@ public class LbCoordsAnalysis extends Analysis
    * Parse /lb coords results where the edit was replacement of one block with
    * another.
    */
-  void lbCoordReplaced(IChatComponent chat, Matcher m)
+  void lbCoordReplaced(IChatComponent chat, LbCoordsLine line)
   {
     try
     {
-      int index = Integer.parseInt(m.group(1));
-      int month = Integer.parseInt(m.group(2));
-      int day = Integer.parseInt(m.group(3));
-      int hour = Integer.parseInt(m.group(4));
-      int minute = Integer.parseInt(m.group(5));
-      int second = Integer.parseInt(m.group(6));
+      int index = line.getIndex();
+      int month = line.getMonth();
+      int day = line.getDay();
+      int hour = line.getHour();
+      int minute = line.getMinute();
+      int second = line.getSecond();
       long millis = TimeStamp.toMillis(month, day, hour, minute, second);
 
-      String player = m.group(7);
-      String oldBlock = m.group(8);
-      // UNUSED: String newBlock = m.group(9);
-      int x = Integer.parseInt(m.group(10));
-      int y = Integer.parseInt(m.group(11));
-      int z = Integer.parseInt(m.group(12));
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(oldBlock);
+      String player = line.getPlayer();
+      // UNUSED: String newBlock = line.getOther();
+      int x = line.getX();
+      int y = line.getY();
+      int z = line.getZ();
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(
+        line.getText(), line.getBlockStart(), line.getBlockEnd());
 
       // Store the destruction but don't bother with the creation.
       BlockEdit edit = new BlockEdit(millis, player, false, x, y, z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditTask.queue(edit, true);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -356,6 +373,98 @@ public class LbCoordsAnalysis extends Analysis
     }
   } // lbCoordReplaced
 
+  // --------------------------------------------------------------------------
+  /**
+   * Try the {@link LbCoordsLine} scanner before the regexps.
+   * 
+   * @see watson.analysis.Analysis#dispatchMatchedChat(net.minecraft.util.IChatComponent)
+   */
+  @Override
+  public boolean dispatchMatchedChat(IChatComponent chat)
+  {
+    String unformatted = chat.getUnformattedText();
+    return dispatchScannedCoords(chat, unformatted) ? false
+      : super.dispatchMatchedChat(chat);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Try the {@link LbCoordsLine} scanner before the candidate regexps.
+   * 
+   * @see watson.analysis.Analysis#dispatchMatchedChat(net.minecraft.util.IChatComponent,
+   *      java.lang.String, java.util.BitSet)
+   */
+  @Override
+  public boolean dispatchMatchedChat(IChatComponent chat, String unformatted,
+                                     BitSet candidates)
+  {
+    return dispatchScannedCoords(chat, unformatted) ? false
+      : super.dispatchMatchedChat(chat, unformatted, candidates);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse an "/lb coords" result with the hand-written scanner, which is much
+   * cheaper than trying the coords regexps in turn and extracting their 16
+   * groups. Lines that the scanner rejects are left to the regexps.
+   * 
+   * The scanner fills a record that is reused for every line. If the handler
+   * runs on the {@link ChatPipeline} worker, it is given a copy.
+   * 
+   * @param chat the chat.
+   * @param unformatted the unformatted text of the chat.
+   * @return true if the chat was an "/lb coords" result, which is not echoed.
+   */
+  protected boolean dispatchScannedCoords(final IChatComponent chat,
+                                          String unformatted)
+  {
+    if (!_scannedLine.scan(unformatted))
+    {
+      return false;
+    }
+
+    if (ChatPipeline.instance.isEnabled())
+    {
+      final LbCoordsLine line = new LbCoordsLine(_scannedLine);
+      ChatPipeline.instance.submit(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          lbCoordsLine(chat, line);
+        }
+      });
+    }
+    else
+    {
+      lbCoordsLine(chat, _scannedLine);
+    }
+    return true;
+  } // dispatchScannedCoords
+
+  // --------------------------------------------------------------------------
+  /**
+   * Call the handler for the action of an "/lb coords" result.
+   * 
+   * @param chat the chat.
+   * @param line the parsed line.
+   */
+  void lbCoordsLine(IChatComponent chat, LbCoordsLine line)
+  {
+    if (line.getAction() == LbCoordsLine.KILLED)
+    {
+      lbCoordKills(chat, line);
+    }
+    else if (line.getAction() == LbCoordsLine.REPLACED)
+    {
+      lbCoordReplaced(chat, line);
+    }
+    else
+    {
+      lbCoord(chat, line);
+    }
+  } // lbCoordsLine
+
   // --------------------------------------------------------------------------
   /**
    * Parse page headers.
@@ -479,6 +588,11 @@ public class LbCoordsAnalysis extends Analysis
    */
   protected int                _lastX, _lastY, _lastZ;
 
+  /**
+   * The record filled by the scanner on the thread that dispatches chat.
+   */
+  protected LbCoordsLine       _scannedLine            = new LbCoordsLine();
+
   /**
    * Current page number extracted from lb.page lines.
    */
@@ -0,0 +1,861 @@
+package watson.analysis;
+
+import java.util.regex.Matcher;
+
+// ----------------------------------------------------------------------------
+/**
+ * The fields of an "/lb coords" result line, described by
+ * {@link LogBlockPatterns#LB_COORD}, {@link LogBlockPatterns#LB_COORD_KILLS}
+ * and {@link LogBlockPatterns#LB_COORD_REPLACED}.
+ * 
+ * {@link #scan(String)} parses a line in a single pass without allocating,
+ * so that an instance can be reused for every line. Text fields are kept as
+ * ranges of the line and are only converted to Strings on request. The scanner
+ * accepts exactly the lines that the regexps match, with the same fields,
+ * except that it rejects numbers of more than 9 digits and sign or weapon text
+ * containing line terminators; {@link #set(Matcher, int)} fills the record from
+ * a regexp match for those.
+ */
+public class LbCoordsLine
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Action: a block was created.
+   */
+  public static final int CREATED   = 0;
+
+  /**
+   * Action: a block was destroyed.
+   */
+  public static final int DESTROYED = 1;
+
+  /**
+   * Action: an entity was killed.
+   */
+  public static final int KILLED    = 2;
+
+  /**
+   * Action: a block was replaced by another.
+   */
+  public static final int REPLACED  = 3;
+
+  // --------------------------------------------------------------------------
+  /**
+   * Default constructor.
+   */
+  public LbCoordsLine()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Copy constructor.
+   * 
+   * @param other the record to copy.
+   */
+  public LbCoordsLine(LbCoordsLine other)
+  {
+    _text = other._text;
+    _index = other._index;
+    _month = other._month;
+    _day = other._day;
+    _hour = other._hour;
+    _minute = other._minute;
+    _second = other._second;
+    _playerStart = other._playerStart;
+    _playerEnd = other._playerEnd;
+    _action = other._action;
+    _blockStart = other._blockStart;
+    _blockEnd = other._blockEnd;
+    _otherStart = other._otherStart;
+    _otherEnd = other._otherEnd;
+    _hasSigns = other._hasSigns;
+    System.arraycopy(other._signStarts, 0, _signStarts, 0, 4);
+    System.arraycopy(other._signEnds, 0, _signEnds, 0, 4);
+    _x = other._x;
+    _y = other._y;
+    _z = other._z;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse an "/lb coords" result line into this record.
+   * 
+   * @param text the unformatted text of the line.
+   * @return true if the line was parsed; false if it was rejected, in which
+   *         case the contents of this record are unspecified.
+   */
+  public boolean scan(String text)
+  {
+    _text = text;
+    _pos = 0;
+
+    // "(index) MM-DD hh:mm:ss "
+    if (!expect('('))
+    {
+      return false;
+    }
+    _index = readNumber();
+    if (_index < 0 || !expect(')') || !expect(' '))
+    {
+      return false;
+    }
+    _month = readTwoDigits();
+    if (_month < 0 || !expect('-'))
+    {
+      return false;
+    }
+    _day = readTwoDigits();
+    if (_day < 0 || !expect(' '))
+    {
+      return false;
+    }
+    _hour = readTwoDigits();
+    if (_hour < 0 || !expect(':'))
+    {
+      return false;
+    }
+    _minute = readTwoDigits();
+    if (_minute < 0 || !expect(':'))
+    {
+      return false;
+    }
+    _second = readTwoDigits();
+    if (_second < 0 || !expect(' '))
+    {
+      return false;
+    }
+
+    // "player action "
+    int length = text.length();
+    _playerStart = _pos;
+    while (_pos < length && isWordChar(text.charAt(_pos)))
+    {
+      ++_pos;
+    }
+    _playerEnd = _pos;
+    if (_playerEnd == _playerStart || !expect(' '))
+    {
+      return false;
+    }
+
+    if (expect("created "))
+    {
+      _action = CREATED;
+    }
+    else if (expect("destroyed "))
+    {
+      _action = DESTROYED;
+    }
+    else if (expect("killed "))
+    {
+      _action = KILLED;
+    }
+    else if (expect("replaced "))
+    {
+      _action = REPLACED;
+    }
+    else
+    {
+      return false;
+    }
+
+    _blockStart = _pos;
+    _hasSigns = false;
+    _otherStart = _otherEnd = -1;
+    return (_action == KILLED) ? scanKill() : scanCoordsEdit();
+  } // scan
+
+  // --------------------------------------------------------------------------
+  /**
+   * Fill this record from a match of one of the "/lb coords" regexps.
+   * 
+   * @param m the Matcher that matched the whole line.
+   * @param action the action: {@link #CREATED} or {@link #DESTROYED} for
+   *          {@link LogBlockPatterns#LB_COORD}, {@link #KILLED} for
+   *          {@link LogBlockPatterns#LB_COORD_KILLS} and {@link #REPLACED} for
+   *          {@link LogBlockPatterns#LB_COORD_REPLACED}.
+   * @throws NumberFormatException if a number is out of range.
+   */
+  public void set(Matcher m, int action)
+  {
+    _text = m.group();
+    _index = Integer.parseInt(m.group(1));
+    _month = Integer.parseInt(m.group(2));
+    _day = Integer.parseInt(m.group(3));
+    _hour = Integer.parseInt(m.group(4));
+    _minute = Integer.parseInt(m.group(5));
+    _second = Integer.parseInt(m.group(6));
+    _playerStart = m.start(7);
+    _playerEnd = m.end(7);
+    _action = action;
+    _hasSigns = false;
+    _otherStart = _otherEnd = -1;
+
+    int coords;
+    if (action == CREATED || action == DESTROYED)
+    {
+      _blockStart = m.start(9);
+      _blockEnd = m.end(9);
+      if (m.start(10) >= 0)
+      {
+        _hasSigns = true;
+        for (int i = 0; i < 4; ++i)
+        {
+          _signStarts[i] = m.start(10 + i);
+          _signEnds[i] = m.end(10 + i);
+        }
+      }
+      coords = 14;
+    }
+    else if (action == KILLED)
+    {
+      _blockStart = m.start(9);
+      _blockEnd = m.end(9);
+      _otherStart = m.start(13);
+      _otherEnd = m.end(13);
+      coords = 10;
+    }
+    else
+    {
+      _blockStart = m.start(8);
+      _blockEnd = m.end(8);
+      _otherStart = m.start(9);
+      _otherEnd = m.end(9);
+      coords = 10;
+    }
+    _x = Integer.parseInt(m.group(coords));
+    _y = Integer.parseInt(m.group(coords + 1));
+    _z = Integer.parseInt(m.group(coords + 2));
+  } // set
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the result index, shown in parentheses.
+   * 
+   * @return the result index.
+   */
+  public int getIndex()
+  {
+    return _index;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the month, from 1 to 12.
+   * 
+   * @return the month.
+   */
+  public int getMonth()
+  {
+    return _month;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the day of the month.
+   * 
+   * @return the day of the month.
+   */
+  public int getDay()
+  {
+    return _day;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the hour of the day, from 0 to 23.
+   * 
+   * @return the hour.
+   */
+  public int getHour()
+  {
+    return _hour;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the minute of the hour.
+   * 
+   * @return the minute.
+   */
+  public int getMinute()
+  {
+    return _minute;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the second of the minute.
+   * 
+   * @return the second.
+   */
+  public int getSecond()
+  {
+    return _second;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the name of the player who made the edit.
+   * 
+   * @return the name of the player.
+   */
+  public String getPlayer()
+  {
+    return _text.substring(_playerStart, _playerEnd);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the action: {@link #CREATED}, {@link #DESTROYED}, {@link #KILLED}
+   * or {@link #REPLACED}.
+   * 
+   * @return the action.
+   */
+  public int getAction()
+  {
+    return _action;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the text of the line.
+   * 
+   * @return the text of the line.
+   */
+  public String getText()
+  {
+    return _text;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the name of the block that was created or destroyed, the entity that
+   * was killed or the block that was replaced.
+   * 
+   * @return the name of the block or entity.
+   */
+  public String getBlock()
+  {
+    return _text.substring(_blockStart, _blockEnd);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the start of the block or entity name in the text of the line.
+   * 
+   * @return the start of the name.
+   * @see #getBlock()
+   */
+  public int getBlockStart()
+  {
+    return _blockStart;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the end of the block or entity name in the text of the line.
+   * 
+   * @return the end of the name (exclusive).
+   * @see #getBlock()
+   */
+  public int getBlockEnd()
+  {
+    return _blockEnd;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the name of the replacement block, for {@link #REPLACED}, or the
+   * weapon, for {@link #KILLED}.
+   * 
+   * @return the replacement block or weapon, or null for other actions.
+   */
+  public String getOther()
+  {
+    return (_otherStart < 0) ? null : _text.substring(_otherStart, _otherEnd);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the line ends with the four lines of text of a sign.
+   * 
+   * @return true if the line has sign text.
+   */
+  public boolean hasSigns()
+  {
+    return _hasSigns;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return one line of the text of a sign.
+   * 
+   * @param line the line number, from 0 to 3.
+   * @return the text, or null if {@link #hasSigns()} is false.
+   */
+  public String getSign(int line)
+  {
+    return _hasSigns ? _text.substring(_signStarts[line], _signEnds[line]) : null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the X coordinate.
+   * 
+   * @return the X coordinate.
+   */
+  public int getX()
+  {
+    return _x;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the Y coordinate.
+   * 
+   * @return the Y coordinate.
+   */
+  public int getY()
+  {
+    return _y;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the Z coordinate.
+   * 
+   * @return the Z coordinate.
+   */
+  public int getZ()
+  {
+    return _z;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Scan the remainder of a created, destroyed or replaced line:
+   * 
+   * <pre>
+   * block[ [sign1] [sign2] [sign3] [sign4]] at x:y:z
+   * old with new at x:y:z
+   * </pre>
+   * 
+   * Since block names cannot contain digits, the coordinates are found by
+   * scanning backwards from the end of the line. Where the regexps are
+   * ambiguous, the greedy groups on the left take the longest match, so the
+   * last possible separators are chosen.
+   * 
+   * @return true if the line was parsed.
+   */
+  protected boolean scanCoordsEdit()
+  {
+    String text = _text;
+    int at = scanCoordsBackwards(text.length());
+    if (at <= _blockStart)
+    {
+      return false;
+    }
+
+    int end = _blockStart;
+    while (end < at && isBlockNameChar(text.charAt(end)))
+    {
+      ++end;
+    }
+
+    if (_action == REPLACED)
+    {
+      int with = text.lastIndexOf(" with ", at - 7);
+      if (end != at || with <= _blockStart)
+      {
+        return false;
+      }
+      _blockEnd = with;
+      _otherStart = with + 6;
+      _otherEnd = at;
+      return true;
+    }
+
+    if (end == at)
+    {
+      _blockEnd = end;
+      return true;
+    }
+
+    // " [sign1] [sign2] [sign3] [sign4]"
+    if (text.charAt(end) != '[' || end - 1 <= _blockStart
+        || text.charAt(end - 1) != ' ' || text.charAt(at - 1) != ']'
+        || containsLineTerminator(end, at))
+    {
+      return false;
+    }
+    _blockEnd = end - 1;
+    _hasSigns = true;
+
+    int signEnd = at - 1;
+    for (int i = 3; i > 0; --i)
+    {
+      int separator = text.lastIndexOf("] [", signEnd - 3);
+      if (separator <= end)
+      {
+        return false;
+      }
+      _signStarts[i] = separator + 3;
+      _signEnds[i] = signEnd;
+      signEnd = separator;
+    }
+    _signStarts[0] = end + 1;
+    _signEnds[0] = signEnd;
+    return true;
+  } // scanCoordsEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Scan the remainder of a kill line: "entity at x:y:z with weapon".
+   * 
+   * @return true if the line was parsed.
+   */
+  protected boolean scanKill()
+  {
+    String text = _text;
+    int length = text.length();
+    while (_pos < length && isBlockNameChar(text.charAt(_pos)))
+    {
+      ++_pos;
+    }
+
+    // The name ends at the last " at " before the coordinates.
+    _blockEnd = _pos - 4;
+    if (_blockEnd <= _blockStart || !text.startsWith(" at ", _blockEnd))
+    {
+      return false;
+    }
+
+    boolean negative = expect('-');
+    _x = readNumber();
+    if (_x < 0 || !expect(':'))
+    {
+      return false;
+    }
+    if (negative)
+    {
+      _x = -_x;
+    }
+    _y = readNumber();
+    if (_y < 0 || !expect(':'))
+    {
+      return false;
+    }
+    negative = expect('-');
+    _z = readNumber();
+    if (_z < 0 || !expect(" with "))
+    {
+      return false;
+    }
+    if (negative)
+    {
+      _z = -_z;
+    }
+
+    _otherStart = _pos;
+    _otherEnd = length;
+    return !containsLineTerminator(_otherStart, _otherEnd);
+  } // scanKill
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse " at x:y:z" backwards from the specified end of the text, setting the
+   * coordinates.
+   * 
+   * @param end the end of the coordinates.
+   * @return the position of " at ", or -1 if not found.
+   */
+  protected int scanCoordsBackwards(int end)
+  {
+    String text = _text;
+
+    int start = digitsStart(end);
+    _z = parseNumber(start, end);
+    if (_z < 0)
+    {
+      return -1;
+    }
+    if (start > 0 && text.charAt(start - 1) == '-')
+    {
+      _z = -_z;
+      --start;
+    }
+    if (start == 0 || text.charAt(start - 1) != ':')
+    {
+      return -1;
+    }
+
+    end = start - 1;
+    start = digitsStart(end);
+    _y = parseNumber(start, end);
+    if (_y < 0 || start == 0 || text.charAt(start - 1) != ':')
+    {
+      return -1;
+    }
+
+    end = start - 1;
+    start = digitsStart(end);
+    _x = parseNumber(start, end);
+    if (_x < 0)
+    {
+      return -1;
+    }
+    if (start > 0 && text.charAt(start - 1) == '-')
+    {
+      _x = -_x;
+      --start;
+    }
+    return (start >= 4 && text.startsWith(" at ", start - 4)) ? start - 4 : -1;
+  } // scanCoordsBackwards
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the start of the run of digits that ends at the specified position.
+   * 
+   * @param end the end of the digits (exclusive).
+   * @return the position of the first digit, or end if there are none.
+   */
+  protected int digitsStart(int end)
+  {
+    int start = end;
+    while (start > 0 && isDigit(_text.charAt(start - 1)))
+    {
+      --start;
+    }
+    return start;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the digits in the specified range of the text.
+   * 
+   * @param start the position of the first digit.
+   * @param end the end of the digits (exclusive).
+   * @return the value, or -1 if there are no digits or more than 9.
+   */
+  protected int parseNumber(int start, int end)
+  {
+    if (start == end || end - start > 9)
+    {
+      return -1;
+    }
+    int value = 0;
+    for (int i = start; i < end; ++i)
+    {
+      value = value * 10 + (_text.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read an unsigned number at the current position.
+   * 
+   * @return the value, or -1 if there are no digits or more than 9.
+   */
+  protected int readNumber()
+  {
+    int start = _pos;
+    int length = _text.length();
+    while (_pos < length && isDigit(_text.charAt(_pos)))
+    {
+      ++_pos;
+    }
+    return parseNumber(start, _pos);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read exactly two digits at the current position.
+   * 
+   * @return the value, or -1 if there are not two digits.
+   */
+  protected int readTwoDigits()
+  {
+    if (_pos + 2 > _text.length())
+    {
+      return -1;
+    }
+    char tens = _text.charAt(_pos);
+    char units = _text.charAt(_pos + 1);
+    if (!isDigit(tens) || !isDigit(units))
+    {
+      return -1;
+    }
+    _pos += 2;
+    return (tens - '0') * 10 + (units - '0');
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Advance past the specified character if it is at the current position.
+   * 
+   * @param c the character.
+   * @return true if the character was found.
+   */
+  protected boolean expect(char c)
+  {
+    if (_pos < _text.length() && _text.charAt(_pos) == c)
+    {
+      ++_pos;
+      return true;
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Advance past the specified string if it is at the current position.
+   * 
+   * @param s the string.
+   * @return true if the string was found.
+   */
+  protected boolean expect(String s)
+  {
+    if (_text.startsWith(s, _pos))
+    {
+      _pos += s.length();
+      return true;
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified range of the text contains a character that
+   * the regexp "." does not match.
+   * 
+   * @param start the start of the range.
+   * @param end the end of the range (exclusive).
+   * @return true if there is a line terminator in the range.
+   */
+  protected boolean containsLineTerminator(int start, int end)
+  {
+    for (int i = start; i < end; ++i)
+    {
+      char c = _text.charAt(i);
+      if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+          || c == '\u2029')
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the character matches the regexp "\d".
+   */
+  protected static boolean isDigit(char c)
+  {
+    return c >= '0' && c <= '9';
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the character matches the regexp "\w".
+   */
+  protected static boolean isWordChar(char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c)
+           || c == '_';
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the character matches the regexp "[a-zA-Z ]".
+   */
+  protected static boolean isBlockNameChar(char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ';
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The text of the line.
+   */
+  protected String  _text;
+
+  /**
+   * The scanning position in _text.
+   */
+  protected int     _pos;
+
+  /**
+   * The result index.
+   */
+  protected int     _index;
+
+  /**
+   * The month, from 1 to 12.
+   */
+  protected int     _month;
+
+  /**
+   * The day of the month.
+   */
+  protected int     _day;
+
+  /**
+   * The hour of the day.
+   */
+  protected int     _hour;
+
+  /**
+   * The minute of the hour.
+   */
+  protected int     _minute;
+
+  /**
+   * The second of the minute.
+   */
+  protected int     _second;
+
+  /**
+   * The range of _text containing the player name.
+   */
+  protected int     _playerStart, _playerEnd;
+
+  /**
+   * The action: CREATED, DESTROYED, KILLED or REPLACED.
+   */
+  protected int     _action;
+
+  /**
+   * The range of _text containing the block or entity name.
+   */
+  protected int     _blockStart, _blockEnd;
+
+  /**
+   * The range of _text containing the replacement block or weapon; -1 if not
+   * present.
+   */
+  protected int     _otherStart, _otherEnd;
+
+  /**
+   * True if the line has sign text.
+   */
+  protected boolean _hasSigns;
+
+  /**
+   * The ranges of _text containing the lines of sign text.
+   */
+  protected int[]   _signStarts = new int[4];
+
+  /**
+   * The ends of the ranges of _text containing the lines of sign text.
+   */
+  protected int[]   _signEnds   = new int[4];
+
+  /**
+   * The coordinates.
+   */
+  protected int     _x, _y, _z;
+} // class LbCoordsLine
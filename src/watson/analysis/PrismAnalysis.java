@@ -10,7 +10,6 @@ import java.util.regex.Pattern;
 
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
-import watson.SyncTaskQueue;
 import watson.analysis.task.AddBlockEditTask;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
@@ -200,7 +199,7 @@ public class PrismAnalysis extends Analysis
           // inspector header, but update it on every result from a lookup.
           boolean updateVariables = (!_inspectorResult || _awaitingFirstResult);
           BlockEdit edit = new BlockEdit(millis, _player, _created, x, y, z, _type);
-          SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, updateVariables));
+          AddBlockEditTask.queue(edit, updateVariables);
           if (_awaitingFirstResult)
           {
             _awaitingFirstResult = false;
@@ -1,47 +1,173 @@
 package watson.analysis.task;
 
 import watson.Controller;
+import watson.IIncrementalTask;
+import watson.SyncTaskQueue;
+import watson.chat.ChatPipeline;
 import watson.db.BlockEdit;
+import watson.db.BlockEditSet;
 
 // ----------------------------------------------------------------------------
 /**
- * A synchronous task to add a {@link BlockEdit} to the current stored set.
+ * A synchronous task to add a batch of {@link BlockEdit}s to the current stored
+ * set.
+ * 
+ * Edits are queued with {@link #queue(BlockEdit, boolean)}, which appends them
+ * to the batch that is waiting in the {@link SyncTaskQueue}, or starts a new
+ * batch if that task has already begun to run. All of the edits parsed from
+ * chat between two ticks, including every page of an auto-paged query, are
+ * therefore added in a single task, which looks up the current
+ * {@link BlockEditSet} and evaluates the filters and game mode once per slice.
+ * 
+ * A large batch is added in slices, over as many ticks as it takes to stay
+ * within the {@link SyncTaskQueue} time budget.
  */
-public class AddBlockEditTask implements Runnable
+public class AddBlockEditTask implements IIncrementalTask
 {
   // --------------------------------------------------------------------------
   /**
-   * Constructor.
+   * Queue an edit to be added to the current {@link BlockEditSet} on the next
+   * tick.
    * 
-   * @param edit the edit to add when the task is run.
-   * @param true if true, the state variables signifying the selected edit are
-   *        updated.
+   * This method may be called from any thread.
+   * 
+   * @param edit the edit to add.
+   * @param updateVariables if true, the state variables signifying the
+   *          selected edit are updated, by a {@link SelectBlockEditTask} that
+   *          runs ahead of the batch.
    */
-  public AddBlockEditTask(BlockEdit edit, boolean updateVariables)
+  public static void queue(final BlockEdit edit, final boolean updateVariables)
   {
-    _edit = edit;
-    _updateVariables = updateVariables;
-  }
+    // Keep edits in the order their chats were received by letting the
+    // pipeline queue them after any chats that it is still parsing.
+    if (ChatPipeline.instance.isEnabled()
+        && !ChatPipeline.instance.isWorkerThread())
+    {
+      ChatPipeline.instance.submit(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          queue(edit, updateVariables);
+        }
+      });
+      return;
+    }
+
+    if (updateVariables)
+    {
+      SelectBlockEditTask.queue(edit);
+    }
+
+    synchronized (AddBlockEditTask.class)
+    {
+      if (_pending == null)
+      {
+        _pending = new AddBlockEditTask();
+        SyncTaskQueue.instance.addTask(_pending);
+      }
+      _pending.append(edit);
+    }
+  } // queue
 
   // --------------------------------------------------------------------------
   /**
+   * Add all of the edits in the batch.
+   * 
    * @see java.lang.Runnable#run()
    */
   @Override
   public void run()
   {
+    runUntil(Long.MAX_VALUE);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.IIncrementalTask#runUntil(long)
+   */
+  @Override
+  public boolean runUntil(long deadline)
+  {
+    // Close the batch; any further edits start a new one.
+    synchronized (AddBlockEditTask.class)
+    {
+      if (_pending == this)
+      {
+        _pending = null;
+      }
+    }
+
     // TODO: potentially wrong if the server/dimension changes for queued tasks.
-    Controller.instance.getBlockEditSet().addBlockEdit(_edit, _updateVariables);
+    BlockEditSet edits = Controller.instance.getBlockEditSet();
+    while (_next < _count)
+    {
+      int end = Math.min(_count, _next + SLICE_SIZE);
+      edits.addBlockEdits(_edits, _next, end);
+      _next = end;
+      if (_next < _count && System.nanoTime() - deadline >= 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  } // runUntil
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor; batches are created only by queue().
+   */
+  protected AddBlockEditTask()
+  {
+    // Nothing.
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Edit to store.
+   * Append an edit to this batch, growing the array as necessary.
+   * 
+   * @param edit the edit to add.
+   */
+  protected void append(BlockEdit edit)
+  {
+    if (_count == _edits.length)
+    {
+      BlockEdit[] edits = new BlockEdit[2 * _count];
+      System.arraycopy(_edits, 0, edits, 0, _count);
+      _edits = edits;
+    }
+    _edits[_count++] = edit;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial capacity of a batch; enough for a page of query results.
+   */
+  protected static final int        INITIAL_CAPACITY = 16;
+
+  /**
+   * The number of edits added between checks of the deadline.
+   */
+  protected static final int        SLICE_SIZE       = 256;
+
+  /**
+   * The batch that is waiting in the {@link SyncTaskQueue} and can still have
+   * edits appended, or null if there is none. Guarded by the class lock.
+   */
+  protected static AddBlockEditTask _pending;
+
+  /**
+   * Edits to store, in the order they were queued.
+   */
+  protected BlockEdit[]             _edits           = new BlockEdit[INITIAL_CAPACITY];
+
+  /**
+   * The number of edits in the batch.
    */
-  protected BlockEdit _edit;
+  protected int                     _count;
 
   /**
-   * Whether to update variables signifying the current selection.
+   * The index of the next edit to add when the task runs.
    */
-  protected boolean   _updateVariables;
-} // class AddBlockEditTask
\ No newline at end of file
+  protected int                     _next;
+} // class AddBlockEditTask
@@ -0,0 +1,83 @@
+package watson.analysis.task;
+
+import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.db.BlockEdit;
+
+// ----------------------------------------------------------------------------
+/**
+ * A synchronous priority task to select the most recently parsed
+ * {@link BlockEdit}, setting the state variables that describe it.
+ * 
+ * Each selection replaces the one before, so there is at most one of these
+ * tasks waiting in the {@link SyncTaskQueue}; queueing another edit just
+ * replaces the edit that it will select. It runs ahead of the ordinary tasks
+ * that add edits in bulk, so the selection is not held up behind them.
+ */
+public class SelectBlockEditTask implements Runnable
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Queue an edit to be selected on the next tick, if it passes the filters.
+   * 
+   * This method may be called from any thread.
+   * 
+   * @param edit the edit to select.
+   */
+  public static void queue(BlockEdit edit)
+  {
+    synchronized (SelectBlockEditTask.class)
+    {
+      if (_pending == null)
+      {
+        _pending = new SelectBlockEditTask();
+        SyncTaskQueue.instance.addTask(_pending, true);
+      }
+      _pending._edit = edit;
+    }
+  } // queue
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    BlockEdit edit;
+    synchronized (SelectBlockEditTask.class)
+    {
+      if (_pending == this)
+      {
+        _pending = null;
+      }
+      edit = _edit;
+    }
+
+    if (Controller.instance.getFilters().isAcceptedPlayer(edit.player))
+    {
+      Controller.instance.selectBlockEdit(edit);
+    }
+  } // run
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor; tasks are created only by queue().
+   */
+  protected SelectBlockEditTask()
+  {
+    // Nothing.
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The task that is waiting in the {@link SyncTaskQueue}, or null if there is
+   * none. Guarded by the class lock.
+   */
+  protected static SelectBlockEditTask _pending;
+
+  /**
+   * The edit to select. Guarded by the class lock.
+   */
+  protected BlockEdit                  _edit;
+} // class SelectBlockEditTask
@@ -7,6 +7,7 @@ import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.ChatStyle;
 import net.minecraft.util.EnumChatFormatting;
 import net.minecraft.util.IChatComponent;
+import watson.SyncTaskQueue;
 import watson.debug.Log;
 
 // ----------------------------------------------------------------------------
@@ -90,16 +91,38 @@ public class Chat
   /**
    * Display the chat locally.
    * 
+   * When called from the {@link ChatPipeline} worker, the chat is highlighted
+   * on the worker and displayed on the next tick, as a priority task.
+   * 
    * @param chat the chat component.
    */
   public static void localChat(IChatComponent chat)
   {
-    if (isChatGuiReady())
+    if (ChatPipeline.instance.isWorkerThread())
+    {
+      // Highlight on the worker, but only touch the GUI from the main thread.
+      // Output is queued with priority, so that it is not held up behind bulk
+      // tasks, such as the addition of edits, and stays in step with the
+      // surrounding chat.
+      final IChatComponent highlighted = getChatHighlighter().highlight(chat);
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (isChatGuiReady())
+          {
+            Minecraft.getMinecraft().ingameGUI.getChatGUI().printChatMessage(highlighted);
+          }
+        }
+      }, true);
+    }
+    else if (isChatGuiReady())
     {
       IChatComponent highlighted = getChatHighlighter().highlight(chat);
       Minecraft.getMinecraft().ingameGUI.getChatGUI().printChatMessage(highlighted);
     }
-  }
+  } // localChat
 
   // --------------------------------------------------------------------------
   /**
@@ -0,0 +1,52 @@
+package watson.chat;
+
+import net.minecraft.util.ChatComponentText;
+import net.minecraft.util.IChatComponent;
+
+// ----------------------------------------------------------------------------
+/**
+ * Assembles a flat IChatComponent, in a single pass, from components that
+ * each have their own style and no siblings.
+ * 
+ * The components are appended as siblings of an empty, unstyled root, so no
+ * component inherits the style or events of another.
+ */
+public class ChatComponentBuilder
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Append a component, unless it has no text and no style.
+   * 
+   * The component is not copied, so it must not already be part of another
+   * IChatComponent.
+   * 
+   * @param component the component, which should not have siblings.
+   * @return this builder.
+   */
+  public ChatComponentBuilder append(IChatComponent component)
+  {
+    if (component.getUnformattedTextForChat().length() != 0
+        || !component.getChatStyle().isEmpty())
+    {
+      _result.appendSibling(component);
+    }
+    return this;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the assembled IChatComponent.
+   * 
+   * @return the assembled IChatComponent.
+   */
+  public IChatComponent getResult()
+  {
+    return _result;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The root of the result.
+   */
+  protected IChatComponent _result = new ChatComponentText("");
+} // class ChatComponentBuilder
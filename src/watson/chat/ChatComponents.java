@@ -2,8 +2,10 @@ package watson.chat;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import net.minecraft.util.ChatComponentText;
+import net.minecraft.util.ChatComponentTranslation;
 import net.minecraft.util.EnumChatFormatting;
 import net.minecraft.util.IChatComponent;
 import watson.PrivateFieldsWatson;
@@ -32,26 +34,132 @@ public class ChatComponents
 
   // --------------------------------------------------------------------------
   /**
-   * Return an array containing the specified IChatComponent and all its
-   * siblings.
+   * Return true if the specified IChatComponent or any of its siblings has a
+   * click or hover event.
+   * 
+   * The components are walked in place, through their siblings and the
+   * arguments of any ChatComponentTranslation, rather than with the component's
+   * own iterator, which copies every component. A component's ChatStyle
+   * inherits events from that of its parent, so checking each component in
+   * place gives the same answer as checking the copies.
+   * 
+   * @return true if any component has a click or hover event.
+   */
+  public static boolean hasAnyEvents(IChatComponent chat)
+  {
+    if (hasEvents(chat))
+    {
+      return true;
+    }
+
+    if (chat instanceof ChatComponentTranslation)
+    {
+      for (Object arg : ((ChatComponentTranslation) chat).getFormatArgs())
+      {
+        if (arg instanceof IChatComponent && hasAnyEvents((IChatComponent) arg))
+        {
+          return true;
+        }
+      }
+    }
+
+    for (Object sibling : chat.getSiblings())
+    {
+      if (hasAnyEvents((IChatComponent) sibling))
+      {
+        return true;
+      }
+    }
+    return false;
+  } // hasAnyEvents
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return an array containing copies of the specified IChatComponent and all
+   * its siblings, each with its effective style and without siblings.
    * 
    * @return an array containing the specified IChatComponent and all its
    *         siblings.
    */
-  @SuppressWarnings("unchecked")
   public static ArrayList<IChatComponent> getComponents(IChatComponent chat)
   {
     ArrayList<IChatComponent> components = new ArrayList<IChatComponent>();
-    for (Object o : chat)
+    getComponents(chat, components);
+    for (int i = 0; i < components.size(); ++i)
     {
-      IChatComponent component = (IChatComponent) o;
-      IChatComponent copy = new ChatComponentText(component.getUnformattedTextForChat());
-      copy.setChatStyle(component.getChatStyle().createDeepCopy());
-      components.add(copy);
+      components.set(i, copyComponent(components.get(i)));
     }
     return components;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Append the specified IChatComponent and all its siblings, in their natural
+   * order, to a list, without copying them.
+   * 
+   * ChatComponentText instances hold only their own text, and are walked in
+   * place. Other kinds of component, such as ChatComponentTranslation, are
+   * expanded by their own iterator, which returns copies.
+   * 
+   * The components in the list still have their siblings, and so should be
+   * read with {@link #appendFormattedText(StringBuilder, IChatComponent)} and
+   * {@link #copyComponent(IChatComponent)}, rather than getFormattedText().
+   * 
+   * @param chat the chat component.
+   * @param components the list to append to.
+   */
+  @SuppressWarnings("unchecked")
+  public static void getComponents(IChatComponent chat, List<IChatComponent> components)
+  {
+    if (chat instanceof ChatComponentText)
+    {
+      components.add(chat);
+      for (Object sibling : chat.getSiblings())
+      {
+        getComponents((IChatComponent) sibling, components);
+      }
+    }
+    else
+    {
+      for (Object o : chat)
+      {
+        components.add((IChatComponent) o);
+      }
+    }
+  } // getComponents
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a copy of the specified component, without its siblings, that has
+   * the same text and effective style (including that inherited from its
+   * parents).
+   * 
+   * @param component the component.
+   * @return the copy.
+   */
+  public static IChatComponent copyComponent(IChatComponent component)
+  {
+    IChatComponent copy = new ChatComponentText(component.getUnformattedTextForChat());
+    copy.setChatStyle(component.getChatStyle().createDeepCopy());
+    return copy;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Append the formatted text of the specified component alone, not including
+   * its siblings, to a StringBuilder, as IChatComponent.getFormattedText() does
+   * for each component.
+   * 
+   * @param text the StringBuilder.
+   * @param component the component.
+   */
+  public static void appendFormattedText(StringBuilder text, IChatComponent component)
+  {
+    text.append(component.getChatStyle().getFormattingCode());
+    text.append(component.getUnformattedTextForChat());
+    text.append(EnumChatFormatting.RESET);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return an array containing all of the components in the input array and all
@@ -6,7 +6,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -31,6 +36,12 @@ import watson.debug.Log;
  * {@link Format} controls the colour and formatting attributes of text. See the
  * documentation of that class for more information on Watson's take on
  * formatting codes.
+ * 
+ * Highlights are applied in the order they were added, so later highlights
+ * override earlier ones where they overlap. The highlight patterns are
+ * compiled into a {@link LiteralPrefilter} whenever they change; lines in which
+ * no highlight can match are returned unchanged and only the candidate
+ * highlights are evaluated on the others.
  */
 public class ChatHighlighter
 {
@@ -83,50 +94,153 @@ public class ChatHighlighter
    */
   public IChatComponent highlight(IChatComponent chat)
   {
-    if (isReisLikeCode(chat.getFormattedText()))
+    CompiledHighlights compiled = _compiled;
+    BitSet candidates = _candidates.get();
+
+    // The unformatted text can still contain embedded formatting codes. Strip
+    // them as Text does for the segments that the highlights are matched
+    // against, so that a code inside a literal doesn't hide a candidate.
+    Text unformatted = _text.get();
+    unformatted.set(chat.getUnformattedText());
+    compiled.prefilter.getCandidates(unformatted.getUnformatted(), candidates);
+    if (candidates.isEmpty())
     {
       return chat;
     }
-    else
+
+    String formatted = chat.getFormattedText();
+    if (isReisLikeCode(formatted))
+    {
+      return chat;
+    }
+
+    // The formatted text identifies the chat completely only if no component
+    // has a click or hover event.
+    if (ChatComponents.hasAnyEvents(chat))
+    {
+      return highlight(chat, compiled, candidates);
+    }
+
+    synchronized (_cache)
     {
-      ArrayList<IChatComponent> resultComponents = new ArrayList<IChatComponent>();
-      ArrayList<IChatComponent> components = ChatComponents.getComponents(chat);
-      while (!components.isEmpty())
+      CachedHighlight cached = _cache.get(formatted);
+      if (cached != null && cached.generation == compiled.generation)
       {
-        IChatComponent head = components.remove(0);
+        ++_cacheHits;
+        return cached.result.createCopy();
+      }
+      ++_cacheMisses;
+    }
+
+    IChatComponent result = highlight(chat, compiled, candidates);
+    synchronized (_cache)
+    {
+      _cache.put(formatted, new CachedHighlight(compiled.generation, result.createCopy()));
+    }
+    return result;
+  } // highlight
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of chat components that were highlighted from the cache.
+   * 
+   * @return the number of cache hits.
+   */
+  public long getCacheHits()
+  {
+    synchronized (_cache)
+    {
+      return _cacheHits;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of chat components that were candidates for the cache
+   * but had to be highlighted.
+   * 
+   * @return the number of cache misses.
+   */
+  public long getCacheMisses()
+  {
+    synchronized (_cache)
+    {
+      return _cacheMisses;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show the highlight cache statistics in chat.
+   */
+  public void showCacheStatistics()
+  {
+    int size;
+    long hits, misses;
+    synchronized (_cache)
+    {
+      size = _cache.size();
+      hits = _cacheHits;
+      misses = _cacheMisses;
+    }
+    long total = hits + misses;
+    Chat.localOutput(String.format(Locale.US,
+      "Highlight cache: %d of %d lines cached, %d hits, %d misses (%.1f%% hit rate).",
+      size, CACHE_SIZE, hits, misses, (total == 0) ? 0.0 : 100.0 * hits / total));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Highlight the text in a chat component with the specified highlights.
+   * 
+   * @param chat the text to highlight.
+   * @param compiled the highlights.
+   * @param candidates the candidate highlights from the prefilter.
+   * @return highlighted text.
+   */
+  protected IChatComponent highlight(IChatComponent chat,
+                                     CompiledHighlights compiled,
+                                     BitSet candidates)
+  {
+    ArrayList<IChatComponent> components = _components.get();
+    ChatComponents.getComponents(chat, components);
+    try
+    {
+      ChatComponentBuilder result = new ChatComponentBuilder();
+      StringBuilder highlightableText = new StringBuilder();
+      Text highlighted = _text.get();
+      int i = 0;
+      while (i < components.size())
+      {
+        IChatComponent head = components.get(i);
         if (ChatComponents.hasEvents(head))
         {
           // Can't currently highlight links etc.
-          resultComponents.add(head);
+          result.append(ChatComponents.copyComponent(head));
+          ++i;
         }
         else
         {
-          // Collect all consecutive components that don't have events
-          // and therefore can be highlighted.
-          ArrayList<IChatComponent> highlightableComps = new ArrayList<IChatComponent>();
-          highlightableComps.add(head);
-
-          while (!components.isEmpty())
+          // Collect the text of all consecutive components that don't have
+          // events and therefore can be highlighted.
+          highlightableText.setLength(0);
+          do
           {
-            IChatComponent next = components.get(0);
-            if (ChatComponents.hasEvents(next))
-            {
-              break;
-            }
-            else
-            {
-              highlightableComps.add(next);
-              components.remove(0);
-            }
-          } // while
+            ChatComponents.appendFormattedText(highlightableText, components.get(i));
+            ++i;
+          } while (i < components.size() && !ChatComponents.hasEvents(components.get(i)));
 
-          IChatComponent highlightable = ChatComponents.toChatComponent(highlightableComps);
-          String highlightableText = highlightable.getFormattedText();
-          Text highlighted = highlight(highlightableText);
-          resultComponents.add(highlighted.toChatComponent());
+          highlighted.set(highlightableText);
+          compiled.highlight(highlighted, candidates);
+          highlighted.appendTo(result);
         }
       } // while there are components to consider
-      return ChatComponents.toChatComponent(resultComponents);
+      return result.getResult();
+    }
+    finally
+    {
+      // Don't hold on to the chat.
+      components.clear();
     }
   } // highlight
 
@@ -140,11 +254,11 @@ public class ChatHighlighter
    */
   public Text highlight(String chat)
   {
+    CompiledHighlights compiled = _compiled;
+    BitSet candidates = _candidates.get();
     Text text = new Text(chat);
-    for (Highlight h : _highlights)
-    {
-      h.highlight(text);
-    }
+    compiled.prefilter.getCandidates(text.getUnformatted(), candidates);
+    compiled.highlight(text, candidates);
     return text;
   }
 
@@ -166,6 +280,7 @@ public class ChatHighlighter
     {
       Highlight highlight = new Highlight(new Format(format), pattern, selection);
       _highlights.add(highlight);
+      compileHighlights();
       Chat.localOutput("Added highlight #" + _highlights.size() + " " + highlight.toString());
       saveHighlights();
     }
@@ -222,6 +337,7 @@ public class ChatHighlighter
     else
     {
       _highlights.remove(index - 1);
+      compileHighlights();
       Chat.localOutput("Removed highlight #" + index);
       saveHighlights();
     }
@@ -291,8 +407,23 @@ public class ChatHighlighter
     {
       Log.exception(Level.SEVERE, "error loading chat highlights: ", ex);
     }
+    compileHighlights();
   } // loadHighlights
 
+  // --------------------------------------------------------------------------
+  /**
+   * Rebuild the compiled form of the highlights after they have changed.
+   */
+  protected void compileHighlights()
+  {
+    synchronized (_cache)
+    {
+      _compiled = new CompiledHighlights(_highlights.toArray(new Highlight[0]),
+                                         ++_generation);
+      _cache.clear();
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Save the highlights to the configuration file.
@@ -400,7 +531,7 @@ public class ChatHighlighter
      */
     public void highlight(Text text)
     {
-      Matcher m = _pattern.matcher(text.toUnformattedString());
+      Matcher m = _pattern.matcher(text.getUnformatted());
       if (_selection)
       {
         if (m.matches())
@@ -452,21 +583,196 @@ public class ChatHighlighter
 
   }; // inner class Highlight
 
+  // --------------------------------------------------------------------------
+  /**
+   * An immutable snapshot of the highlights, with a prefilter of their
+   * patterns, that can be used by several threads at once.
+   */
+  private static final class CompiledHighlights
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param highlights the highlights, in the order they are applied.
+     * @param generation identifies this set of highlights.
+     */
+    public CompiledHighlights(Highlight[] highlights, int generation)
+    {
+      this.highlights = highlights;
+      this.generation = generation;
+      for (Highlight highlight : highlights)
+      {
+        // Selection highlights use matches(), but on each segment of the
+        // text rather than the whole line, so a leading literal need not be at
+        // the start of the line. Only require that their literals occur.
+        prefilter.add(highlight._pattern, false);
+      }
+      prefilter.build();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Apply the candidate highlights to the text, in order.
+     * 
+     * @param text the text to highlight, modified in place.
+     * @param candidates the candidate highlights from the prefilter.
+     */
+    public void highlight(Text text, BitSet candidates)
+    {
+      for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+      {
+        highlights[i].highlight(text);
+      }
+    }
+
+    /**
+     * The highlights, in the order they are applied. The index of each is also
+     * its index in the prefilter, since every Highlight has its own Pattern.
+     */
+    public final Highlight[]      highlights;
+
+    /**
+     * Prefilter of the highlight patterns.
+     */
+    public final LiteralPrefilter prefilter = new LiteralPrefilter(true);
+
+    /**
+     * Identifies this set of highlights; incremented whenever they change.
+     */
+    public final int              generation;
+  } // inner class CompiledHighlights
+
+  // --------------------------------------------------------------------------
+  /**
+   * A highlighted chat component in the cache, with the generation of the
+   * highlights that produced it.
+   */
+  private static final class CachedHighlight
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param generation the generation of the highlights that were applied.
+     * @param result the highlighted chat, which must not be modified.
+     */
+    public CachedHighlight(int generation, IChatComponent result)
+    {
+      this.generation = generation;
+      this.result = result;
+    }
+
+    /**
+     * The generation of the highlights that were applied.
+     */
+    public final int            generation;
+
+    /**
+     * The highlighted chat, which must not be modified.
+     */
+    public final IChatComponent result;
+  } // inner class CachedHighlight
+
   // --------------------------------------------------------------------------
   /**
    * Regexp describing Rei's radar enabling codes. Note that Rei's does not
    * require the code to be the entire contents of the line.
    */
-  protected static final Pattern REIS_CODE   = Pattern.compile("\2470\2470(?:\247[1-9a-d])+\247e\247f");
+  protected static final Pattern                         REIS_CODE   = Pattern.compile("\2470\2470(?:\247[1-9a-d])+\247e\247f");
 
   /**
    * Regexp describing lines that consist only of colour codes. Such lines are
    * presumed to be a Rei's-like mechanism that we should not disrupt.
    */
-  protected static final Pattern COLOUR_LINE = Pattern.compile("^(?:\247[0-9a-fk-or])+$");
+  protected static final Pattern                         COLOUR_LINE = Pattern.compile("^(?:\247[0-9a-fk-or])+$");
 
   /**
    * Highlight patterns.
+   * 
+   * Copy-on-write, since chat may be highlighted on the {@link ChatPipeline}
+   * worker while highlights are changed by commands on the main thread.
+   */
+  protected CopyOnWriteArrayList<Highlight>              _highlights = new CopyOnWriteArrayList<ChatHighlighter.Highlight>();
+
+  /**
+   * The compiled form of _highlights, replaced whenever they change.
+   */
+  protected volatile CompiledHighlights                  _compiled   = new CompiledHighlights(new Highlight[0], 0);
+
+  /**
+   * Per-thread scratch set of candidate highlights.
+   */
+  protected final ThreadLocal<BitSet>                    _candidates = new ThreadLocal<BitSet>()
+  {
+    @Override
+    protected BitSet initialValue()
+    {
+      return new BitSet();
+    }
+  };
+
+  /**
+   * Per-thread list of the components of the chat being highlighted.
+   */
+  protected final ThreadLocal<ArrayList<IChatComponent>> _components = new ThreadLocal<ArrayList<IChatComponent>>()
+  {
+    @Override
+    protected ArrayList<IChatComponent> initialValue()
+    {
+      return new ArrayList<IChatComponent>();
+    }
+  };
+
+  /**
+   * Per-thread Text that is reused to highlight each chat component, since only
+   * the IChatComponent built from it outlives the call.
+   */
+  protected final ThreadLocal<Text>                      _text       = new ThreadLocal<Text>()
+  {
+    @Override
+    protected Text initialValue()
+    {
+      return new Text();
+    }
+  };
+
+  /**
+   * The maximum number of highlighted chats kept in _cache.
+   */
+  protected static final int                             CACHE_SIZE  = 256;
+
+  /**
+   * The generation of the most recently compiled highlights. Guarded by
+   * _cache.
+   */
+  protected int                                          _generation;
+
+  /**
+   * Recently highlighted chats without click or hover events, keyed on their
+   * formatted text, in least recently used order.
+   * 
+   * Watson's own output and server spam repeat the same lines often, so this
+   * saves copying and highlighting them again. Entries are checked against the
+   * generation of the current highlights, and the cache is cleared when the
+   * highlights change.
+   */
+  protected final LinkedHashMap<String, CachedHighlight> _cache      = new LinkedHashMap<String, CachedHighlight>(CACHE_SIZE, 0.75f, true)
+  {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CachedHighlight> eldest)
+    {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  /**
+   * The number of cache hits. Guarded by _cache.
+   */
+  protected long                                         _cacheHits;
+
+  /**
+   * The number of cache misses. Guarded by _cache.
    */
-  protected ArrayList<Highlight> _highlights = new ArrayList<ChatHighlighter.Highlight>();
+  protected long                                         _cacheMisses;
 } // class ChatHighlighter
\ No newline at end of file
@@ -0,0 +1,127 @@
+package watson.chat;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+
+import watson.Configuration;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * A single worker thread that parses query results out of chat, in the order
+ * that the chats were received, so that the thread that receives chat only
+ * has to decide whether each line should be shown.
+ * 
+ * Work is submitted by {@link watson.analysis.Analysis} for handlers that were
+ * registered as pipelined. The results of that work are published in order:
+ * edits through {@link watson.analysis.task.AddBlockEditTask} and chat output
+ * through {@link Chat#localChat(net.minecraft.util.IChatComponent)}, both of
+ * which hand over to the {@link watson.SyncTaskQueue} when called from the
+ * worker.
+ * 
+ * The pipeline is used when {@link Configuration#isChatPipelined()} is true.
+ */
+public class ChatPipeline
+{
+  // --------------------------------------------------------------------------
+  /**
+   * The single instance of this class.
+   */
+  public static final ChatPipeline instance = new ChatPipeline();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if chat parsing should be done on the worker thread.
+   * 
+   * @return true if chat parsing should be done on the worker thread.
+   */
+  public boolean isEnabled()
+  {
+    return Configuration.instance.isChatPipelined();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the calling thread is the worker thread.
+   * 
+   * @return true if the calling thread is the worker thread.
+   */
+  public boolean isWorkerThread()
+  {
+    return Thread.currentThread() == _thread;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Queue work to be run on the worker thread after all work submitted before
+   * it, starting the thread if necessary.
+   * 
+   * @param task the work.
+   */
+  public synchronized void submit(Runnable task)
+  {
+    if (_thread == null)
+    {
+      _thread = new Thread(new Worker(), "Watson chat parser");
+      _thread.setDaemon(true);
+      _thread.start();
+    }
+    _queue.add(task);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Runs submitted work, in order, forever.
+   */
+  protected class Worker implements Runnable
+  {
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+      for (;;)
+      {
+        Runnable task;
+        try
+        {
+          task = _queue.take();
+        }
+        catch (InterruptedException ex)
+        {
+          continue;
+        }
+
+        try
+        {
+          task.run();
+        }
+        catch (Exception ex)
+        {
+          Log.exception(Level.SEVERE, "error parsing chat", ex);
+        }
+      } // for
+    } // run
+  } // class Worker
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce single instance.
+   */
+  private ChatPipeline()
+  {
+    // Nothing.
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Work waiting to be run on the worker thread.
+   */
+  protected LinkedBlockingQueue<Runnable> _queue = new LinkedBlockingQueue<Runnable>();
+
+  /**
+   * The worker thread, or null if it has not been started.
+   */
+  protected volatile Thread               _thread;
+} // class ChatPipeline
@@ -1,9 +1,11 @@
 package watson.chat;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 
 import net.minecraft.util.IChatComponent;
 import watson.Configuration;
+import watson.analysis.Analysis;
 import watson.analysis.CoalBlockAnalysis;
 import watson.analysis.CoreProtectAnalysis;
 import watson.analysis.LbCoordsAnalysis;
@@ -42,12 +44,20 @@ public class ChatProcessor
   public void addChatHandler(IChatHandler handler)
   {
     _handlers.add(handler);
+    if (handler instanceof Analysis)
+    {
+      ((Analysis) handler).addPatternsTo(_prefilter);
+    }
   }
 
   // --------------------------------------------------------------------------
   /**
    * Process the chat
    * 
+   * The unformatted text of the chat is computed once and passed through a
+   * {@link LiteralPrefilter} of the patterns of all {@link Analysis} handlers,
+   * so that each of them only evaluates the patterns that might match.
+   * 
    * @param chat the chat message.
    * @return true if the chat should be echoed in the client chat GUI; false if
    *         it should be filtered out.
@@ -56,10 +66,21 @@ public class ChatProcessor
   {
     if (Configuration.instance.isEnabled())
     {
+      String unformatted = chat.getUnformattedText();
+      _prefilter.getCandidates(unformatted, _candidates);
+
       boolean allow = true;
       for (IChatHandler handler : _handlers)
       {
-        allow &= handler.onChat(chat);
+        if (handler instanceof Analysis)
+        {
+          allow &= ((Analysis) handler).dispatchMatchedChat(chat, unformatted,
+            _candidates);
+        }
+        else
+        {
+          allow &= handler.onChat(chat);
+        }
       }
       return allow;
     }
@@ -92,5 +113,15 @@ public class ChatProcessor
   /**
    * Handlers notified of chat arriving at the client.
    */
-  protected ArrayList<IChatHandler> _handlers = new ArrayList<IChatHandler>();
+  protected ArrayList<IChatHandler> _handlers   = new ArrayList<IChatHandler>();
+
+  /**
+   * Prefilter of the patterns of all {@link Analysis} handlers.
+   */
+  protected LiteralPrefilter        _prefilter  = new LiteralPrefilter();
+
+  /**
+   * The candidate patterns for the chat being processed.
+   */
+  protected BitSet                  _candidates = new BitSet();
 } // class ChatProcessor
@@ -0,0 +1,762 @@
+package watson.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// ----------------------------------------------------------------------------
+/**
+ * Quickly rules out regular expressions that cannot match a line of text, so
+ * that only the remaining candidates need to be evaluated.
+ * 
+ * For each added {@link Pattern}, a literal string that must appear in any
+ * matching text is extracted from the regular expression: for patterns used
+ * with Matcher.matches(), the literal text at the start of the pattern if
+ * there is any, otherwise the longest literal run that is not inside a group,
+ * character class or optional term. All of these literals are compiled into a
+ * single Aho-Corasick automaton, so that the candidates for a line are found
+ * in one pass over its characters. Literals at the start of a pattern used with
+ * matches() only count when they are found at the start of the text.
+ * 
+ * A pattern with top level alternation gets the literal of each alternative.
+ * Patterns from which no literal can be extracted (those with unsupported
+ * flags or an alternative with no literal text outside groups) are always
+ * candidates. A prefilter constructed to ignore case also accepts patterns
+ * with the CASE_INSENSITIVE flag, by folding ASCII letters to lower case.
+ * 
+ * The automaton is rebuilt lazily when patterns have been added. Once built,
+ * getCandidates() can be called from several threads, provided no more
+ * patterns are added; otherwise, instances are not thread-safe.
+ */
+public class LiteralPrefilter
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor for a case sensitive prefilter.
+   */
+  public LiteralPrefilter()
+  {
+    this(false);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param ignoreCase if true, ASCII letters are matched without regard to
+   *          case, so that patterns with the CASE_INSENSITIVE flag can be
+   *          prefiltered.
+   */
+  public LiteralPrefilter(boolean ignoreCase)
+  {
+    _ignoreCase = ignoreCase;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a pattern that will be used with Matcher.matches() to the prefilter,
+   * if it has not already been added.
+   * 
+   * @param pattern the pattern.
+   * @return the index of the pattern's bit in the candidates computed by
+   *         getCandidates().
+   */
+  public int add(Pattern pattern)
+  {
+    return add(pattern, true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a pattern to the prefilter, if it has not already been added.
+   * 
+   * @param pattern the pattern.
+   * @param whole true if the pattern will be used with Matcher.matches(), so
+   *          that its leading literal can only match at the start of the text;
+   *          false if it will be used with Matcher.find().
+   * @return the index of the pattern's bit in the candidates computed by
+   *         getCandidates().
+   */
+  public int add(Pattern pattern, boolean whole)
+  {
+    Integer id = _ids.get(pattern);
+    if (id == null)
+    {
+      id = _ids.size();
+      _ids.put(pattern, id);
+
+      String regex = pattern.pattern();
+      int allowedFlags = _ignoreCase ? Pattern.CASE_INSENSITIVE : 0;
+      ArrayList<Literal> literals = new ArrayList<Literal>();
+      if ((pattern.flags() & ~allowedFlags) == 0 && !hasInlineFlags(regex))
+      {
+        // Every alternative at the top level must have a literal. Only a
+        // pattern without alternatives can have a leading literal.
+        ArrayList<String> alternatives = splitAlternatives(regex);
+        for (String alternative : alternatives)
+        {
+          ArrayList<String> runs = new ArrayList<String>();
+          String leading = getLiteralRuns(alternative, runs);
+          String literal = null;
+          for (String run : runs)
+          {
+            if (literal == null || run.length() > literal.length())
+            {
+              literal = run;
+            }
+          }
+
+          if (whole && alternatives.size() == 1 && leading != null
+              && isAscii(leading))
+          {
+            literals.add(new Literal(fold(leading), id, true));
+          }
+          else if (literal != null && isAscii(literal))
+          {
+            literals.add(new Literal(fold(literal), id, false));
+          }
+          else
+          {
+            literals.clear();
+            break;
+          }
+        } // for
+      }
+
+      if (literals.isEmpty())
+      {
+        _alwaysCandidates.set(id);
+      }
+      else
+      {
+        _literals.addAll(literals);
+      }
+      _next = null;
+    }
+    return id;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of distinct patterns added.
+   * 
+   * @return the number of distinct patterns added.
+   */
+  public int size()
+  {
+    return _ids.size();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Compute the set of patterns that might match the text.
+   * 
+   * @param text the text.
+   * @param candidates on return, the bits of the patterns that might match are
+   *          set and all others are clear.
+   */
+  public void getCandidates(CharSequence text, BitSet candidates)
+  {
+    if (_next == null)
+    {
+      build();
+    }
+    int[][] next = _next;
+
+    candidates.clear();
+    candidates.or(_alwaysCandidates);
+    int state = 0;
+    int length = text.length();
+    for (int i = 0; i < length; ++i)
+    {
+      char c = text.charAt(i);
+      if (_ignoreCase && c >= 'A' && c <= 'Z')
+      {
+        c += 'a' - 'A';
+      }
+      state = (c < ALPHABET) ? next[state][c] : 0;
+      for (Literal literal : _outputs[state])
+      {
+        if (!literal.leading || i + 1 == literal.text.length())
+        {
+          candidates.set(literal.id);
+        }
+      }
+    }
+  } // getCandidates
+
+  // --------------------------------------------------------------------------
+  /**
+   * Split a regular expression into its top level alternatives.
+   * 
+   * @param regex the regular expression.
+   * @return the alternatives; just the expression itself if it has no top level
+   *         alternation.
+   */
+  protected static ArrayList<String> splitAlternatives(String regex)
+  {
+    ArrayList<String> alternatives = new ArrayList<String>();
+    int start = 0;
+    int i = 0;
+    while (i < regex.length())
+    {
+      char c = regex.charAt(i);
+      if (c == '\\')
+      {
+        i += 2;
+      }
+      else if (c == '[')
+      {
+        i = skipClass(regex, i);
+      }
+      else if (c == '(')
+      {
+        i = skipGroup(regex, i);
+      }
+      else
+      {
+        if (c == '|')
+        {
+          alternatives.add(regex.substring(start, i));
+          start = i + 1;
+        }
+        ++i;
+      }
+    } // while
+    alternatives.add(regex.substring(Math.min(start, regex.length())));
+    return alternatives;
+  } // splitAlternatives
+
+  // --------------------------------------------------------------------------
+  /**
+   * Scan a regular expression, collecting the runs of literal characters that
+   * are not inside groups or character classes and not made optional by a
+   * quantifier.
+   * 
+   * This only needs to be conservative: every returned run must occur in any
+   * text that the expression matches.
+   * 
+   * @param regex the regular expression.
+   * @param runs the list to which runs are appended.
+   * @return the run at the very start of the expression, or null if it doesn't
+   *         start with a literal; null is also returned, with runs cleared, if
+   *         the expression has a top level alternation.
+   */
+  protected static String getLiteralRuns(String regex, ArrayList<String> runs)
+  {
+    String leading = null;
+    boolean atStart = true;
+    StringBuilder run = new StringBuilder();
+    int length = regex.length();
+    int i = regex.startsWith("^") ? 1 : 0;
+    while (i < length)
+    {
+      char c = regex.charAt(i);
+      boolean literal = false;
+      switch (c)
+      {
+        case '\\':
+          if (i + 1 < length && !Character.isLetterOrDigit(regex.charAt(i + 1)))
+          {
+            c = regex.charAt(i + 1);
+            literal = true;
+            i += 2;
+          }
+          else
+          {
+            // Escapes such as \x41 or \Q...\E span more than two characters
+            // and end the run.
+            i = skipEscape(regex, i);
+          }
+          break;
+
+        case '[':
+          i = skipClass(regex, i);
+          break;
+
+        case '(':
+          i = skipGroup(regex, i);
+          break;
+
+        case '|':
+          runs.clear();
+          return null;
+
+        case '?':
+        case '*':
+          // The previous character is optional.
+          if (run.length() > 0)
+          {
+            run.setLength(run.length() - 1);
+          }
+          ++i;
+          break;
+
+        case '{':
+          if (run.length() > 0 && regex.startsWith("{0", i))
+          {
+            run.setLength(run.length() - 1);
+          }
+          int close = regex.indexOf('}', i);
+          i = (close < 0) ? length : close + 1;
+          break;
+
+        case '+':
+        case '.':
+        case '^':
+        case '$':
+        case ')':
+          ++i;
+          break;
+
+        default:
+          literal = true;
+          ++i;
+          break;
+      } // switch
+
+      if (literal)
+      {
+        run.append(c);
+      }
+      else
+      {
+        if (run.length() > 0)
+        {
+          if (atStart)
+          {
+            leading = run.toString();
+          }
+          runs.add(run.toString());
+          run.setLength(0);
+        }
+        atStart = false;
+      }
+    } // while
+
+    if (run.length() > 0)
+    {
+      if (atStart)
+      {
+        leading = run.toString();
+      }
+      runs.add(run.toString());
+    }
+    return leading;
+  } // getLiteralRuns
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index after the end of the escape sequence starting at the
+   * specified index.
+   * 
+   * Most escapes are two characters long, but hexadecimal, Unicode, octal,
+   * control character, named group, property and quoted escapes are longer,
+   * and the characters after them must not be mistaken for literal text.
+   * 
+   * @param regex the regular expression.
+   * @param start the index of the '\\'.
+   * @return the index after the escape sequence.
+   */
+  protected static int skipEscape(String regex, int start)
+  {
+    int length = regex.length();
+    if (start + 1 >= length)
+    {
+      return length;
+    }
+
+    int i = start + 2;
+    char c = regex.charAt(start + 1);
+    switch (c)
+    {
+      case 'x':
+        // \xhh or \x{h...h}
+        return regex.startsWith("{", i) ? skipPast(regex, i, '}')
+                                        : Math.min(length, i + 2);
+
+      case 'u':
+        // u followed by four hexadecimal digits.
+        return Math.min(length, i + 4);
+
+      case '0':
+        // \0n, \0nn or \0mnn, where m <= 3.
+        int maxDigits = (i < length && regex.charAt(i) <= '3') ? 3 : 2;
+        for (int d = 0; d < maxDigits && i < length && isOctalDigit(regex.charAt(i)); ++d)
+        {
+          ++i;
+        }
+        return i;
+
+      case 'c':
+        // \cX
+        return Math.min(length, i + 1);
+
+      case 'k':
+        // \k<name>
+        return skipPast(regex, i, '>');
+
+      case 'p':
+      case 'P':
+      case 'N':
+        // \pL or \p{Name}
+        return regex.startsWith("{", i) ? skipPast(regex, i, '}')
+                                        : Math.min(length, i + 1);
+
+      case 'Q':
+        // Quoted text up to \E.
+        int end = regex.indexOf("\\E", i);
+        return (end < 0) ? length : end + 2;
+
+      default:
+        // A back reference takes all of the following digits that could be
+        // part of a group number.
+        if (c >= '1' && c <= '9')
+        {
+          while (i < length && Character.isDigit(regex.charAt(i)))
+          {
+            ++i;
+          }
+        }
+        return i;
+    }
+  } // skipEscape
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index after the first occurrence of a character at or after the
+   * specified index, or the length of the string if there is none.
+   * 
+   * @param regex the regular expression.
+   * @param start the index at which to start searching.
+   * @param c the character.
+   * @return the index after the character.
+   */
+  protected static int skipPast(String regex, int start, char c)
+  {
+    int index = regex.indexOf(c, start);
+    return (index < 0) ? regex.length() : index + 1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the character is an octal digit.
+   * 
+   * @param c the character.
+   * @return true if the character is an octal digit.
+   */
+  protected static boolean isOctalDigit(char c)
+  {
+    return c >= '0' && c <= '7';
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index after the end of the character class starting at the
+   * specified index.
+   * 
+   * @param regex the regular expression.
+   * @param start the index of the opening '['.
+   * @return the index after the closing ']'.
+   */
+  protected static int skipClass(String regex, int start)
+  {
+    int depth = 0;
+    int i = start;
+    while (i < regex.length())
+    {
+      char c = regex.charAt(i);
+      if (c == '\\')
+      {
+        i = skipEscape(regex, i);
+        continue;
+      }
+      if (c == '[')
+      {
+        ++depth;
+        // A ']' immediately after the opening '[' or '[^' is literal.
+        if (regex.startsWith("^]", i + 1))
+        {
+          i += 2;
+        }
+        else if (regex.startsWith("]", i + 1))
+        {
+          ++i;
+        }
+      }
+      else if (c == ']' && --depth == 0)
+      {
+        return i + 1;
+      }
+      ++i;
+    }
+    return i;
+  } // skipClass
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index after the end of the group starting at the specified
+   * index.
+   * 
+   * @param regex the regular expression.
+   * @param start the index of the opening '('.
+   * @return the index after the closing ')'.
+   */
+  protected static int skipGroup(String regex, int start)
+  {
+    int depth = 0;
+    int i = start;
+    while (i < regex.length())
+    {
+      char c = regex.charAt(i);
+      if (c == '\\')
+      {
+        i += 2;
+      }
+      else if (c == '[')
+      {
+        i = skipClass(regex, i);
+      }
+      else
+      {
+        if (c == '(')
+        {
+          ++depth;
+        }
+        else if (c == ')' && --depth == 0)
+        {
+          return i + 1;
+        }
+        ++i;
+      }
+    }
+    return i;
+  } // skipGroup
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the regular expression contains an embedded flag
+   * expression, such as "(?i)", which could change the meaning of literals.
+   * 
+   * @param regex the regular expression.
+   * @return true if the regular expression contains an embedded flag
+   *         expression.
+   */
+  protected static boolean hasInlineFlags(String regex)
+  {
+    for (int i = regex.indexOf("(?"); i >= 0; i = regex.indexOf("(?", i + 1))
+    {
+      if (i + 2 < regex.length())
+      {
+        char c = regex.charAt(i + 2);
+        if (Character.isLetter(c) || c == '-')
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the literal as it should be entered in the automaton: with ASCII
+   * letters in lower case if ignoring case.
+   * 
+   * @param literal the literal.
+   * @return the literal to enter in the automaton.
+   */
+  protected String fold(String literal)
+  {
+    return _ignoreCase ? literal.toLowerCase(Locale.US) : literal;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if all characters in the string are in the automaton's
+   * alphabet.
+   * 
+   * @param s the string.
+   * @return true if all characters in the string are in the automaton's
+   *         alphabet.
+   */
+  protected static boolean isAscii(String s)
+  {
+    for (int i = 0; i < s.length(); ++i)
+    {
+      if (s.charAt(i) >= ALPHABET)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Build the Aho-Corasick automaton from the literals, as a complete state
+   * transition table.
+   * 
+   * This is called lazily by getCandidates(), but should be called explicitly
+   * before the prefilter is shared between threads.
+   */
+  public void build()
+  {
+    // Build the trie of literals.
+    ArrayList<int[]> next = new ArrayList<int[]>();
+    ArrayList<ArrayList<Literal>> outputs = new ArrayList<ArrayList<Literal>>();
+    next.add(newState());
+    outputs.add(new ArrayList<Literal>());
+    for (Literal literal : _literals)
+    {
+      int state = 0;
+      for (int i = 0; i < literal.text.length(); ++i)
+      {
+        char c = literal.text.charAt(i);
+        if (next.get(state)[c] < 0)
+        {
+          next.get(state)[c] = next.size();
+          next.add(newState());
+          outputs.add(new ArrayList<Literal>());
+        }
+        state = next.get(state)[c];
+      }
+      outputs.get(state).add(literal);
+    }
+
+    // Compute failure links breadth first, turning the trie into a DFA and
+    // merging the outputs of each state's failure state into its own.
+    int[] fail = new int[next.size()];
+    LinkedList<Integer> queue = new LinkedList<Integer>();
+    int[] root = next.get(0);
+    for (int c = 0; c < ALPHABET; ++c)
+    {
+      if (root[c] < 0)
+      {
+        root[c] = 0;
+      }
+      else
+      {
+        fail[root[c]] = 0;
+        queue.add(root[c]);
+      }
+    }
+    while (!queue.isEmpty())
+    {
+      int state = queue.removeFirst();
+      int[] transitions = next.get(state);
+      outputs.get(state).addAll(outputs.get(fail[state]));
+      for (int c = 0; c < ALPHABET; ++c)
+      {
+        int target = transitions[c];
+        if (target < 0)
+        {
+          transitions[c] = next.get(fail[state])[c];
+        }
+        else
+        {
+          fail[target] = next.get(fail[state])[c];
+          queue.add(target);
+        }
+      }
+    } // while
+
+    _outputs = new Literal[outputs.size()][];
+    for (int i = 0; i < _outputs.length; ++i)
+    {
+      _outputs[i] = outputs.get(i).toArray(new Literal[outputs.get(i).size()]);
+    }
+    _next = next.toArray(new int[next.size()][]);
+  } // build
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new trie state with no transitions.
+   * 
+   * @return a new trie state with no transitions.
+   */
+  protected static int[] newState()
+  {
+    int[] state = new int[ALPHABET];
+    Arrays.fill(state, -1);
+    return state;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A literal string that must occur in text matched by a pattern.
+   */
+  protected static final class Literal
+  {
+    /**
+     * Constructor.
+     * 
+     * @param text the literal text.
+     * @param id the pattern's index.
+     * @param leading true if the literal must be at the start of the text.
+     */
+    public Literal(String text, int id, boolean leading)
+    {
+      this.text = text;
+      this.id = id;
+      this.leading = leading;
+    }
+
+    /**
+     * The literal text.
+     */
+    public final String  text;
+
+    /**
+     * The pattern's index.
+     */
+    public final int     id;
+
+    /**
+     * True if the literal must be at the start of the text.
+     */
+    public final boolean leading;
+  } // class Literal
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of characters in the automaton's alphabet; all other characters
+   * return it to the initial state.
+   */
+  protected static final int                    ALPHABET          = 128;
+
+  /**
+   * If true, ASCII letters are matched without regard to case.
+   */
+  protected boolean                             _ignoreCase;
+
+  /**
+   * Map from pattern to index.
+   */
+  protected IdentityHashMap<Pattern, Integer>   _ids              = new IdentityHashMap<Pattern, Integer>();
+
+  /**
+   * The literals of all patterns that have one.
+   */
+  protected ArrayList<Literal>                  _literals         = new ArrayList<Literal>();
+
+  /**
+   * The indices of patterns that have no literal and so are always candidates.
+   */
+  protected BitSet                              _alwaysCandidates = new BitSet();
+
+  /**
+   * State transition table of the automaton: _next[state][c] is the state
+   * after reading c. Null if the automaton needs to be rebuilt.
+   */
+  protected int[][]                             _next;
+
+  /**
+   * The literals recognised on entering each state.
+   */
+  protected Literal[][]                         _outputs;
+} // class LiteralPrefilter
@@ -1,8 +1,5 @@
 package watson.chat;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.ChatStyle;
 import net.minecraft.util.EnumChatFormatting;
@@ -12,14 +9,21 @@ import watson.PrivateFieldsWatson;
 // ----------------------------------------------------------------------------
 /**
  * Represents Minecraft coloured text by separating out the colour escape
- * sequences and maintaining two parallel character sequences of equal length:
+ * sequences and maintaining:
  * <ol>
  * <li>The unformatted characters.</li>
- * <li>The corresponding single colour code character for each unformatted
- * character, with formatting attributes squeezed into the upper bits, as
- * dictated by {@link Format}.</li>
+ * <li>A run-length encoding of the corresponding single colour code character
+ * for each unformatted character, with formatting attributes squeezed into the
+ * upper bits, as dictated by {@link Format}. Each run records the index of its
+ * first character and its colour code.</li>
  * </ol>
  * 
+ * Both are kept in primitive arrays that are reused when the Text is
+ * {@link #set(CharSequence)} to a new value, so a Text that is kept for the
+ * purpose, such as the per-thread instance used by {@link ChatHighlighter},
+ * can highlight any number of lines without allocating anything but the
+ * result.
+ * 
  * TODO: This class could have extra methods from String, such as substring(),
  * if that proves useful.
  */
@@ -42,6 +46,17 @@ public class Text
     return (lower >= 'k' && lower <= 'o') || lower == 'r';
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * Constructs an empty Text, to be filled by {@link #set(CharSequence)}.
+   */
+  public Text()
+  {
+    // Nothing.
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Constructor.
@@ -54,8 +69,30 @@ public class Text
    */
   public Text(String text)
   {
+    set(text);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Replace the contents of this Text, reusing its storage.
+   * 
+   * As with the constructor, consecutive (redundant) colour escape sequences
+   * are collapsed down to just the last colour.
+   * 
+   * @param text the text with embedded colour escape sequences.
+   */
+  public void set(CharSequence text)
+  {
+    _length = 0;
+    _runCount = 0;
+    if (_chars.length < text.length())
+    {
+      _chars = new char[text.length()];
+    }
+
     // By default, text is white.
-    Format format = new Format(Colour.white, 0);
+    char colour = Colour.white.getCode();
+    int styles = 0;
 
     for (int i = 0; i < text.length(); ++i)
     {
@@ -71,14 +108,38 @@ public class Text
           char code = text.charAt(i);
           if (Colour.isColour(code))
           {
-            format.setColour(Colour.getByCode(code));
+            colour = Colour.getByCode(code).getCode();
             // Setting the colour disables any style attributes.
-            format.setStyles(0);
+            styles = 0;
           }
           // Note: different from Format.isAttribute()
           else if (isAttribute(code))
           {
-            format.applyStyle(code);
+            // As Format.applyStyle(), which ignores upper case codes.
+            switch (code)
+            {
+              case 'l':
+                styles |= Format.BOLD;
+                break;
+              case 'o':
+                styles |= Format.ITALIC;
+                break;
+              case 'n':
+                styles |= Format.UNDERLINE;
+                break;
+              case 'm':
+                styles |= Format.STRIKE;
+                break;
+              case 'k':
+                styles |= Format.RANDOM;
+                break;
+              case 'r':
+                styles = 0;
+                colour = Colour.white.getCode();
+                break;
+              default:
+                break;
+            }
           }
           // else: silently delete format codes we don't understand.
           // At the time of writing, no such codes exist.
@@ -87,11 +148,15 @@ public class Text
       else
       {
         // An ordinary, non-colour-escape character.
-        _unformatted.append(c);
-        _colourStyles.append(format.getColourStyle());
+        char colourStyle = (char) (colour | styles);
+        if (_runCount == 0 || _runStyles[_runCount - 1] != colourStyle)
+        {
+          insertRun(_runCount, _length, colourStyle);
+        }
+        _chars[_length++] = c;
       }
     } // for
-  } // Text
+  } // set
 
   // --------------------------------------------------------------------------
   /**
@@ -104,6 +169,17 @@ public class Text
     return toFormattedString();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of unformatted characters in the Text.
+   * 
+   * @return the number of unformatted characters in the Text.
+   */
+  public int length()
+  {
+    return _length;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return the IChatComponent representation of the Text.
@@ -112,66 +188,28 @@ public class Text
    */
   public IChatComponent toChatComponent()
   {
-    ArrayList<IChatComponent> result = new ArrayList<IChatComponent>();
-    StringBuilder text = new StringBuilder();
-
-    // Sentinel:
-    char colourStyle = Colour.white.getCode();
-    ChatStyle style = new ChatStyle();
+    ChatComponentBuilder builder = new ChatComponentBuilder();
+    appendTo(builder);
+    return builder.getResult();
+  }
 
-    for (int i = 0; i < _unformatted.length(); ++i)
+  // --------------------------------------------------------------------------
+  /**
+   * Append one component per run of characters with the same colour and style
+   * to a {@link ChatComponentBuilder}.
+   * 
+   * @param builder the builder.
+   */
+  public void appendTo(ChatComponentBuilder builder)
+  {
+    for (int run = 0; run < _runCount; ++run)
     {
-      // Detect a change in colour or style and add new component to result.
-      if (_colourStyles.charAt(i) != colourStyle)
-      {
-        // Set the new colour. This also clears the current style.
-        char newColourStyle = _colourStyles.charAt(i);
-        char colour = (char) (newColourStyle & Format.COLOUR_MASK);
-
-        // Put all of the characters accumulated so far in ChatComponentText.
-        IChatComponent sibling = new ChatComponentText(text.toString());
-        sibling.setChatStyle(style);
-        result.add(sibling);
-
-        // Reuse StringBuilder to accumulate characters for the next sibling.
-        text.setLength(0);
-
-        // Configure the style of the next sibling to be appended to result.
-        style = new ChatStyle();
-        EnumChatFormatting chatFormatting = _TO_ENUM_CHAT_FORMATTING.get(colour);
-        style.setColor(chatFormatting);
-        if ((newColourStyle & Format.BOLD) != 0)
-        {
-          style.setBold(true);
-        }
-        if ((newColourStyle & Format.ITALIC) != 0)
-        {
-          style.setItalic(true);
-        }
-        if ((newColourStyle & Format.UNDERLINE) != 0)
-        {
-          style.setUnderlined(true);
-        }
-        if ((newColourStyle & Format.STRIKE) != 0)
-        {
-          style.setStrikethrough(true);
-        }
-        if ((newColourStyle & Format.RANDOM) != 0)
-        {
-          style.setObfuscated(true);
-        }
-
-        colourStyle = newColourStyle;
-      } // colour or style changed
-
-      text.append(_unformatted.charAt(i));
-    } // for
-
-    IChatComponent sibling = new ChatComponentText(text.toString());
-    sibling.setChatStyle(style);
-    result.add(sibling);
-    return ChatComponents.toChatComponent(result);
-  } // toChatComponent
+      int start = _runStarts[run];
+      IChatComponent component = new ChatComponentText(new String(_chars, start, getRunEnd(run) - start));
+      component.setChatStyle(toChatStyle(_runStyles[run]));
+      builder.append(component);
+    }
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -184,49 +222,43 @@ public class Text
    */
   public String toFormattedString()
   {
-    StringBuilder result = new StringBuilder();
-
-    // Sentinel:
-    char colourStyle = '\0';
-    for (int i = 0; i < _unformatted.length(); ++i)
+    // Each run starts with a colour and at most 5 styles.
+    StringBuilder result = new StringBuilder(_length + 12 * _runCount);
+    for (int run = 0; run < _runCount; ++run)
     {
-      // Detect a change in colour or style and add colour escape to result.
-      if (_colourStyles.charAt(i) != colourStyle)
+      char colourStyle = _runStyles[run];
+      char colour = (char) (colourStyle & Format.COLOUR_MASK);
+      result.append(Colour.ESCAPE_CHAR);
+      result.append(colour);
+
+      if ((colourStyle & Format.BOLD) != 0)
+      {
+        result.append(Colour.ESCAPE_CHAR);
+        result.append('l');
+      }
+      if ((colourStyle & Format.ITALIC) != 0)
+      {
+        result.append(Colour.ESCAPE_CHAR);
+        result.append('o');
+      }
+      if ((colourStyle & Format.UNDERLINE) != 0)
       {
-        // Set the new colour. This also clears the current style.
-        char newColourStyle = _colourStyles.charAt(i);
-        char colour = (char) (newColourStyle & Format.COLOUR_MASK);
         result.append(Colour.ESCAPE_CHAR);
-        result.append(colour);
+        result.append('n');
+      }
+      if ((colourStyle & Format.STRIKE) != 0)
+      {
+        result.append(Colour.ESCAPE_CHAR);
+        result.append('m');
+      }
+      if ((colourStyle & Format.RANDOM) != 0)
+      {
+        result.append(Colour.ESCAPE_CHAR);
+        result.append('k');
+      }
 
-        if ((newColourStyle & Format.BOLD) != 0)
-        {
-          result.append(Colour.ESCAPE_CHAR);
-          result.append('l');
-        }
-        if ((newColourStyle & Format.ITALIC) != 0)
-        {
-          result.append(Colour.ESCAPE_CHAR);
-          result.append('o');
-        }
-        if ((newColourStyle & Format.UNDERLINE) != 0)
-        {
-          result.append(Colour.ESCAPE_CHAR);
-          result.append('n');
-        }
-        if ((newColourStyle & Format.STRIKE) != 0)
-        {
-          result.append(Colour.ESCAPE_CHAR);
-          result.append('m');
-        }
-        if ((newColourStyle & Format.RANDOM) != 0)
-        {
-          result.append(Colour.ESCAPE_CHAR);
-          result.append('k');
-        }
-        colourStyle = newColourStyle;
-      } // colour or style changed
-      result.append(_unformatted.charAt(i));
+      int start = _runStarts[run];
+      result.append(_chars, start, getRunEnd(run) - start);
     } // for
     return result.toString();
   } // toFormatttedString
@@ -239,7 +271,22 @@ public class Text
    */
   public String toUnformattedString()
   {
-    return _unformatted.toString();
+    return new String(_chars, 0, _length);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a view of the text without any colour formatting, for matching
+   * against regular expressions without copying it.
+   * 
+   * The view reflects the current contents of this Text and so must not be
+   * retained past the next call to {@link #set(CharSequence)}.
+   * 
+   * @return a view of the text without any colour formatting.
+   */
+  public CharSequence getUnformatted()
+  {
+    return _unformatted;
   }
 
   // --------------------------------------------------------------------------
@@ -257,56 +304,300 @@ public class Text
    */
   public void setFormat(int begin, int end, Format format)
   {
-    if (begin < 0 || end > _unformatted.length() || begin > end)
+    if (begin < 0 || end > _length || begin > end)
     {
       throw new IllegalArgumentException("illegal range in setColour()");
     }
+    if (begin == end)
+    {
+      return;
+    }
+
+    int first = splitRun(begin);
+    int last = splitRun(end);
 
     // Does the format have a colour set?
     if (format.getColour() != null)
     {
-      char colourStyle = format.getColourStyle();
-      for (int i = begin; i < end; ++i)
-      {
-        _colourStyles.setCharAt(i, colourStyle);
-      }
+      // Replace all of the runs in the range with one.
+      _runStyles[first] = format.getColourStyle();
+      removeRuns(first + 1, last);
     }
     else
     {
-      // No colour. Just set the style bits of the characters in the range.
-      for (int i = begin; i < end; ++i)
+      // No colour. Just set the style bits of the runs in the range.
+      for (int run = first; run < last; ++run)
       {
-        int colourStyle = (_colourStyles.charAt(i) & Format.COLOUR_MASK)
+        int colourStyle = (_runStyles[run] & Format.COLOUR_MASK)
                           | format.getStyles();
-        _colourStyles.setCharAt(i, (char) colourStyle);
+        _runStyles[run] = (char) colourStyle;
       }
     }
+    mergeRuns();
   } // setFormat
 
   // --------------------------------------------------------------------------
+  /**
+   * Return the ChatStyle corresponding to a colour code character with style
+   * bits.
+   * 
+   * @param colourStyle the colour code character and style bits.
+   * @return the ChatStyle.
+   */
+  protected static ChatStyle toChatStyle(char colourStyle)
+  {
+    ChatStyle style = new ChatStyle();
+    char colour = (char) (colourStyle & Format.COLOUR_MASK);
+    if (colour < _TO_ENUM_CHAT_FORMATTING.length)
+    {
+      style.setColor(_TO_ENUM_CHAT_FORMATTING[colour]);
+    }
+    if ((colourStyle & Format.BOLD) != 0)
+    {
+      style.setBold(true);
+    }
+    if ((colourStyle & Format.ITALIC) != 0)
+    {
+      style.setItalic(true);
+    }
+    if ((colourStyle & Format.UNDERLINE) != 0)
+    {
+      style.setUnderlined(true);
+    }
+    if ((colourStyle & Format.STRIKE) != 0)
+    {
+      style.setStrikethrough(true);
+    }
+    if ((colourStyle & Format.RANDOM) != 0)
+    {
+      style.setObfuscated(true);
+    }
+    return style;
+  } // toChatStyle
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index one past the last character of the specified run.
+   * 
+   * @param run the index of the run.
+   * @return the index one past the last character of the run.
+   */
+  protected int getRunEnd(int run)
+  {
+    return (run + 1 < _runCount) ? _runStarts[run + 1] : _length;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Ensure that a run starts at the specified character index, splitting the
+   * run that contains it if necessary, and return the index of that run.
+   * 
+   * @param index the character index, in the range [0,length()].
+   * @return the index of the run starting at index, or the number of runs if
+   *         index is length().
+   */
+  protected int splitRun(int index)
+  {
+    if (index == _length)
+    {
+      return _runCount;
+    }
+
+    // Binary search for the last run starting at or before index.
+    int low = 0;
+    int high = _runCount - 1;
+    while (low < high)
+    {
+      int mid = (low + high + 1) >>> 1;
+      if (_runStarts[mid] <= index)
+      {
+        low = mid;
+      }
+      else
+      {
+        high = mid - 1;
+      }
+    }
+
+    if (_runStarts[low] == index)
+    {
+      return low;
+    }
+    insertRun(low + 1, index, _runStyles[low]);
+    return low + 1;
+  } // splitRun
+
+  // --------------------------------------------------------------------------
+  /**
+   * Insert a run, growing the arrays if necessary.
+   * 
+   * @param run the index of the new run.
+   * @param start the index of the first character of the run.
+   * @param colourStyle the colour code character and style bits of the run.
+   */
+  protected void insertRun(int run, int start, char colourStyle)
+  {
+    if (_runCount == _runStarts.length)
+    {
+      int[] starts = new int[2 * _runCount];
+      char[] styles = new char[2 * _runCount];
+      System.arraycopy(_runStarts, 0, starts, 0, _runCount);
+      System.arraycopy(_runStyles, 0, styles, 0, _runCount);
+      _runStarts = starts;
+      _runStyles = styles;
+    }
+    System.arraycopy(_runStarts, run, _runStarts, run + 1, _runCount - run);
+    System.arraycopy(_runStyles, run, _runStyles, run + 1, _runCount - run);
+    _runStarts[run] = start;
+    _runStyles[run] = colourStyle;
+    ++_runCount;
+  } // insertRun
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove the runs in the range [from,to).
+   * 
+   * @param from the index of the first run to remove.
+   * @param to one more than the index of the last run to remove.
+   */
+  protected void removeRuns(int from, int to)
+  {
+    System.arraycopy(_runStarts, to, _runStarts, from, _runCount - to);
+    System.arraycopy(_runStyles, to, _runStyles, from, _runCount - to);
+    _runCount -= to - from;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Merge adjacent runs that have the same colour and style.
+   */
+  protected void mergeRuns()
+  {
+    int count = 0;
+    for (int run = 0; run < _runCount; ++run)
+    {
+      if (count == 0 || _runStyles[count - 1] != _runStyles[run])
+      {
+        _runStarts[count] = _runStarts[run];
+        _runStyles[count] = _runStyles[run];
+        ++count;
+      }
+    }
+    _runCount = count;
+  } // mergeRuns
+
+  // --------------------------------------------------------------------------
+  /**
+   * A view of the unformatted characters of the enclosing Text.
+   */
+  protected final class Unformatted implements CharSequence
+  {
+    /**
+     * @see java.lang.CharSequence#length()
+     */
+    @Override
+    public int length()
+    {
+      return _length;
+    }
+
+    /**
+     * @see java.lang.CharSequence#charAt(int)
+     */
+    @Override
+    public char charAt(int index)
+    {
+      if (index >= _length)
+      {
+        throw new IndexOutOfBoundsException("index: " + index);
+      }
+      return _chars[index];
+    }
+
+    /**
+     * @see java.lang.CharSequence#subSequence(int, int)
+     */
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+      if (start < 0 || end > _length || start > end)
+      {
+        throw new IndexOutOfBoundsException("range: " + start + ", " + end);
+      }
+      return new String(_chars, start, end - start);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+      return toUnformattedString();
+    }
+  } // inner class Unformatted
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial capacity of the character array.
+   */
+  protected static final int                  INITIAL_CHARS            = 64;
+
+  /**
+   * The initial capacity of the run arrays.
+   */
+  protected static final int                  INITIAL_RUNS             = 8;
+
   /**
    * Map from single character formatting code for a colour to the corresponding
-   * EnumChatFormatting instance.
+   * EnumChatFormatting instance, indexed by the code.
    */
-  protected static final HashMap<Character, EnumChatFormatting> _TO_ENUM_CHAT_FORMATTING = new HashMap<Character, EnumChatFormatting>();
+  protected static final EnumChatFormatting[] _TO_ENUM_CHAT_FORMATTING = new EnumChatFormatting[128];
   static
   {
     for (EnumChatFormatting colour : EnumChatFormatting.values())
     {
-      _TO_ENUM_CHAT_FORMATTING.put(PrivateFieldsWatson.formattingCode.get(colour), colour);
+      Character code = PrivateFieldsWatson.formattingCode.get(colour);
+      if (code != null && code < _TO_ENUM_CHAT_FORMATTING.length)
+      {
+        _TO_ENUM_CHAT_FORMATTING[code] = colour;
+      }
     }
   }
 
   /**
-   * The unformatted version of the text.
+   * The unformatted characters; only the first _length are in use.
    */
-  protected StringBuilder                                       _unformatted             = new StringBuilder();
+  protected char[]                            _chars                   = new char[INITIAL_CHARS];
 
   /**
-   * The colour code characters for each character in _unformatted.
+   * The number of unformatted characters.
+   */
+  protected int                               _length;
+
+  /**
+   * The index in _chars of the first character of each run; only the first
+   * _runCount are in use.
+   * 
+   * Invariant: _runStarts[0] == 0 if _length != 0, and the starts are strictly
+   * increasing.
+   */
+  protected int[]                             _runStarts               = new int[INITIAL_RUNS];
+
+  /**
+   * The colour code character and style bits of each run.
    * 
-   * Invariant: _unformatted.length() == _colours.length() && (c in _colours ==>
-   * c in {0-9, a-f}).
+   * Invariant: adjacent runs differ, and the colour code is one of {0-9, a-f}.
+   */
+  protected char[]                            _runStyles               = new char[INITIAL_RUNS];
+
+  /**
+   * The number of runs.
+   */
+  protected int                               _runCount;
+
+  /**
+   * The view returned by getUnformatted().
    */
-  protected StringBuilder                                       _colourStyles            = new StringBuilder();
-} // class Text
\ No newline at end of file
+  protected final Unformatted                 _unformatted             = new Unformatted();
+} // class Text
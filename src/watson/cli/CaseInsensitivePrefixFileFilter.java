@@ -7,6 +7,9 @@ import java.io.FileFilter;
 /**
  * A FileFilter information that matches readable, ordinary files whose name
  * begins with a specifed case insensitive prefix.
+ * 
+ * Hidden files, whose names begin with '.', are never matched. These include
+ * the temporary files written while saving edits.
  */
 public class CaseInsensitivePrefixFileFilter implements FileFilter
 {
@@ -32,6 +35,7 @@ public class CaseInsensitivePrefixFileFilter implements FileFilter
   {
     return file.isFile()
            && file.canRead()
+           && !file.getName().startsWith(".")
            && (_lowerPrefix.length() == 0 || file.getName().toLowerCase().startsWith(
              _lowerPrefix));
   }
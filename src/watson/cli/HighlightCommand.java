@@ -47,6 +47,11 @@ public class HighlightCommand extends WatsonCommandBase
         highlighter.listHighlights();
         return;
       }
+      else if (args[0].equals("stats"))
+      {
+        highlighter.showCacheStatistics();
+        return;
+      }
     }
     else if (args.length == 2)
     {
@@ -91,6 +96,7 @@ public class HighlightCommand extends WatsonCommandBase
     localOutput(sender, "  /hl add <colour> <pattern>");
     localOutput(sender, "  /hl list");
     localOutput(sender, "  /hl remove <number>");
+    localOutput(sender, "  /hl stats");
     localOutput(sender, "Documentation: http://github.com/totemo/watson");
   }
 } // class HighlightCommand
\ No newline at end of file
@@ -1,6 +1,8 @@
 package watson.cli;
 
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraft.command.ICommand;
@@ -14,9 +16,12 @@ import net.minecraft.util.IChatComponent;
 import watson.Configuration;
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.ViewCuller;
 import watson.analysis.ServerTime;
 import watson.db.Filters;
 import watson.db.OreDB;
+import watson.db.TimeStamp;
+import watson.db.TimeWindow;
 
 // ----------------------------------------------------------------------------
 /**
@@ -193,6 +198,14 @@ public class WatsonCommand extends WatsonCommandBase
           display.setDisplayed(false);
           return;
         }
+        else if (args[1].equals("stats"))
+        {
+          ViewCuller culler = ViewCuller.instance;
+          localOutput(sender, String.format(Locale.US,
+            "Last frame: %d primitives drawn, %d culled.",
+            culler.getDrawnCount(), culler.getCulledCount()));
+          return;
+        }
       }
     } // display
 
@@ -378,6 +391,64 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // "/w filter"
 
+    // "/w window" command.
+    if (args[0].equals("window"))
+    {
+      if (args.length == 1)
+      {
+        localOutput(sender, "Displaying edits from " + display.getTimeWindow() + ".");
+        return;
+      }
+      else if (args.length == 2 && args[1].equals("clear"))
+      {
+        display.setTimeWindow(TimeWindow.ALL);
+        return;
+      }
+      else if (args.length == 2 && args[1].equals("stats"))
+      {
+        Controller.instance.getBlockEditSet().showTimeWindowSummary(
+          display.getTimeWindow());
+        return;
+      }
+      else if (args.length == 4 || args.length == 5)
+      {
+        long start = parseTime(args[1], args[2]);
+        long end;
+        if (args.length == 4)
+        {
+          int minutes = -1;
+          try
+          {
+            minutes = Integer.parseInt(args[3]);
+          }
+          catch (NumberFormatException ex)
+          {
+            // Reported below.
+          }
+          end = (minutes > 0) ? start + minutes * 60 * 1000L : -1;
+        }
+        else
+        {
+          // The end time is inclusive, to the second.
+          end = parseTime(args[3], args[4]);
+          if (end >= 0)
+          {
+            end += 1000;
+          }
+        }
+
+        if (start < 0 || end <= start)
+        {
+          localError(sender, "The time window should be <MM-DD> <hh:mm[:ss]> followed by either a number of minutes or a later <MM-DD> <hh:mm[:ss]>.");
+        }
+        else
+        {
+          display.setTimeWindow(new TimeWindow(start, end));
+        }
+        return;
+      }
+    } // "/w window"
+
     // File commands.
     if (args.length >= 2 && args[0].equals("file"))
     {
@@ -432,16 +503,32 @@ public class WatsonCommand extends WatsonCommandBase
         Controller.instance.loadBlockEditFile(args[2]);
         return;
       }
+      else if (args[1].equals("cancel") && args.length == 2)
+      {
+        Controller.instance.cancelBlockEditFileLoad();
+        return;
+      }
       else if (args[1].equals("save"))
       {
-        if (args.length == 2)
+        // An optional format, "text" (the default) or "binary", precedes the
+        // optional file name.
+        int nameIndex = 2;
+        boolean binary = false;
+        if (args.length >= 3
+            && (args[2].equals("text") || args[2].equals("binary")))
         {
-          Controller.instance.saveBlockEditFile(null);
+          binary = args[2].equals("binary");
+          ++nameIndex;
+        }
+
+        if (args.length == nameIndex)
+        {
+          Controller.instance.saveBlockEditFile(null, binary);
           return;
         }
-        else if (args.length == 3)
+        else if (args.length == nameIndex + 1)
         {
-          Controller.instance.saveBlockEditFile(args[2]);
+          Controller.instance.saveBlockEditFile(args[nameIndex], binary);
           return;
         }
       }
@@ -987,6 +1074,112 @@ public class WatsonCommand extends WatsonCommandBase
         return true;
       }
     } // /w config recolour_query_results
+
+    // Set the distance beyond which edits are not drawn.
+    if (args[1].equals("cull_distance"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          double distance = Math.abs(Double.parseDouble(args[2]));
+          Configuration.instance.setCullDistance(distance);
+          return true;
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The distance should be a decimal number of blocks.");
+          return true;
+        }
+      }
+      else if (args.length == 2)
+      {
+        double distance = Configuration.instance.getCullDistance();
+        localOutput(sender, "Cull distance is currently set to " + distance + " blocks.");
+        return true;
+      }
+    } // /w config cull_distance
+
+    // Set the time spent running queued tasks in each tick.
+    if (args[1].equals("task_time_budget"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          int budget = Integer.parseInt(args[2]);
+          if (budget > 0)
+          {
+            Configuration.instance.setTaskTimeBudget(budget);
+            return true;
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Fall through to the error.
+        }
+        localError(sender, "The time budget should be a whole number of milliseconds, at least 1.");
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int budget = Configuration.instance.getTaskTimeBudget();
+        localOutput(sender, "Task time budget is currently set to " + budget + " ms per tick.");
+        return true;
+      }
+    } // /w config task_time_budget
+
+    // Set the queue length at which a warning is shown.
+    if (args[1].equals("task_queue_warning"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          int count = Integer.parseInt(args[2]);
+          if (count >= 0)
+          {
+            Configuration.instance.setTaskQueueWarning(count);
+            return true;
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Fall through to the error.
+        }
+        localError(sender, "The number of tasks should be a whole number, or 0 to disable the warning.");
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int count = Configuration.instance.getTaskQueueWarning();
+        localOutput(sender, "Task queue warning is currently set to " + count + " tasks.");
+        return true;
+      }
+    } // /w config task_queue_warning
+
+    // Enable or disable parsing of query results on a separate thread.
+    if (args[1].equals("chat_pipeline"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setChatPipelined(!Configuration.instance.isChatPipelined());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equals("on"))
+        {
+          Configuration.instance.setChatPipelined(true);
+          return true;
+        }
+        else if (args[2].equals("off"))
+        {
+          Configuration.instance.setChatPipelined(false);
+          return true;
+        }
+      }
+    } // /w config chat_pipeline
     
     // Help with /w config
     if (args[1].equals("help"))
@@ -1012,12 +1205,49 @@ public class WatsonCommand extends WatsonCommandBase
       localOutput(sender, "  /" + w + " config ss_date_directory [string] : set the anonymous screenshot subdirectory format speficier");
       localOutput(sender, "  /" + w + " config reformat_query_results [on/off] : enable or disable the reformatting of query results");
       localOutput(sender, "  /" + w + " config recolour_query_results [on/off] : enable or disable the recolouring of query results");
+      localOutput(sender, "  /" + w + " config cull_distance [blocks] : set the distance beyond which edits are not drawn (default 0, to draw all)");
+      localOutput(sender, "  /" + w + " config task_time_budget [ms] : set the time per tick spent processing queued results");
+      localOutput(sender, "  /" + w + " config task_queue_warning [int] : set the number of queued tasks at which to warn (0 to disable)");
+      localOutput(sender, "  /" + w + " config chat_pipeline [on/off] : enable or disable parsing of query results on a separate thread");
       return true;
     } // /w config help
     
     return false;
   } // handleConfigCommand
 
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a time in the format used in LogBlock results, as separate date and
+   * time of day arguments.
+   * 
+   * @param date the date, MM-DD.
+   * @param time the time of day, hh:mm or hh:mm:ss.
+   * @return the time in milliseconds since epoch, or -1 if the arguments are
+   *         not valid.
+   */
+  protected static long parseTime(String date, String time)
+  {
+    Matcher dateMatcher = DATE_PATTERN.matcher(date);
+    Matcher timeMatcher = TIME_PATTERN.matcher(time);
+    if (!dateMatcher.matches() || !timeMatcher.matches())
+    {
+      return -1;
+    }
+
+    int month = Integer.parseInt(dateMatcher.group(1));
+    int day = Integer.parseInt(dateMatcher.group(2));
+    int hour = Integer.parseInt(timeMatcher.group(1));
+    int minute = Integer.parseInt(timeMatcher.group(2));
+    int second = (timeMatcher.group(3) != null)
+      ? Integer.parseInt(timeMatcher.group(3)) : 0;
+    if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23
+        || minute > 59 || second > 59)
+    {
+      return -1;
+    }
+    return TimeStamp.toMillis(month, day, hour, minute, second);
+  } // parseTime
+
   // --------------------------------------------------------------------------
   /**
    * Show a help message.
@@ -1027,7 +1257,7 @@ public class WatsonCommand extends WatsonCommandBase
     String w = Configuration.instance.getWatsonPrefix();
     localOutput(sender, "Usage:");
     localOutput(sender, "  /" + w + " help");
-    localOutput(sender, "  /" + w + " display [on|off]");
+    localOutput(sender, "  /" + w + " display [on|off|stats]");
     localOutput(sender, "  /" + w + " outline [on|off]");
     localOutput(sender, "  /" + w + " anno [on|off]");
     localOutput(sender, "  /" + w + " vector [on|off]");
@@ -1044,12 +1274,15 @@ public class WatsonCommand extends WatsonCommandBase
     localOutput(sender, "  /" + w + " edits (hide|show|remove) <player> ...");
     localOutput(sender, "  /" + w + " filter [list|clear]");
     localOutput(sender, "  /" + w + " filter (add|remove) <player> ...");
+    localOutput(sender, "  /" + w + " window [clear|stats]");
+    localOutput(sender, "  /" + w + " window <MM-DD> <hh:mm[:ss]> (<minutes>|<MM-DD> <hh:mm[:ss]>)");
     localOutput(sender, "  /" + w + " servertime");
     localOutput(sender, "  /" + w + " file list [*|<playername>] [<page>]");
     localOutput(sender, "  /" + w + " file delete *|<filename>|<playername>");
     localOutput(sender, "  /" + w + " file expire <YYYY-MM-DD>");
     localOutput(sender, "  /" + w + " file load <filename>|<playername>");
-    localOutput(sender, "  /" + w + " file save [<filename>]");
+    localOutput(sender, "  /" + w + " file cancel");
+    localOutput(sender, "  /" + w + " file save [text|binary] [<filename>]");
     localOutput(sender, "  /" + w + " config <name> [<value>]");
     localOutput(sender, "  /hl help");
     localOutput(sender, "  /anno help");
@@ -1078,4 +1311,14 @@ public class WatsonCommand extends WatsonCommandBase
    * Allowable patterns of command prefixes (setCommandPrefix()).
    */
   protected static final Pattern PREFIX_PATTERN = Pattern.compile("\\w+");
+
+  /**
+   * The pattern of a date argument to "/w window": MM-DD.
+   */
+  protected static final Pattern DATE_PATTERN   = Pattern.compile("(\\d{1,2})-(\\d{1,2})");
+
+  /**
+   * The pattern of a time of day argument to "/w window": hh:mm[:ss].
+   */
+  protected static final Pattern TIME_PATTERN   = Pattern.compile("(\\d{1,2}):(\\d{2})(?::(\\d{2}))?");
 } // class WatsonCommand
@@ -0,0 +1,169 @@
+package watson.db;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// ----------------------------------------------------------------------------
+/**
+ * Constants and primitive encodings of the compact binary file format written
+ * by {@link BlockEditSet#save(java.io.File, boolean)}.
+ * 
+ * A binary file has the following layout. All integers marked "varint" are
+ * unsigned LEB128 (7 bits per byte, least significant group first) and those
+ * marked "svarint" are zig-zag encoded before being written as a varint, so
+ * that small negative numbers are also short. Strings are written with
+ * {@link DataOutput#writeUTF(String)}.
+ * 
+ * <pre>
+ * int     MAGIC
+ * varint  VERSION
+ * varint  number of block types, then for each: varint id, varint data
+ * varint  number of players, then for each player:
+ *           UTF     player name
+ *           varint  number of edits, then for each edit, in time order:
+ *             svarint  time - previous time (ms; first is relative to 0)
+ *             varint   (block type index << 1) | (1 if created)
+ *             svarint  x - previous x, y - previous y, z - previous z
+ * varint  number of annotations, then for each:
+ *           svarint x, svarint y, svarint z, UTF text
+ * </pre>
+ * 
+ * Edits are stored per player in time order, so the deltas between successive
+ * times and coordinates are almost always small.
+ */
+public class BinaryEditFormat
+{
+  // --------------------------------------------------------------------------
+  /**
+   * The first four bytes of every binary edit file: "WBE" followed by 0x1A.
+   * 
+   * The text format always begins with a digit or '#', so the two formats can
+   * be told apart from the first byte.
+   */
+  public static final int MAGIC   = 0x5742451A;
+
+  /**
+   * The current version of the binary format.
+   */
+  public static final int VERSION = 1;
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write an unsigned variable length integer.
+   * 
+   * @param out the output.
+   * @param value the value, treated as unsigned.
+   * @throws IOException if the write fails.
+   */
+  public static void writeVarLong(DataOutput out, long value)
+    throws IOException
+  {
+    while ((value & ~0x7FL) != 0)
+    {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write a signed variable length integer using zig-zag encoding.
+   * 
+   * @param out the output.
+   * @param value the value.
+   * @throws IOException if the write fails.
+   */
+  public static void writeSignedVarLong(DataOutput out, long value)
+    throws IOException
+  {
+    writeVarLong(out, (value << 1) ^ (value >> 63));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read an unsigned variable length integer.
+   * 
+   * @param in the input.
+   * @return the value.
+   * @throws IOException if the read fails or the encoding is too long.
+   */
+  public static long readVarLong(DataInput in)
+    throws IOException
+  {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7)
+    {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+      {
+        return value;
+      }
+    }
+    throw new IOException("malformed variable length integer");
+  } // readVarLong
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read a signed, zig-zag encoded variable length integer.
+   * 
+   * @param in the input.
+   * @return the value.
+   * @throws IOException if the read fails or the encoding is too long.
+   */
+  public static long readSignedVarLong(DataInput in)
+    throws IOException
+  {
+    long value = readVarLong(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read an unsigned variable length integer that must fit in an int.
+   * 
+   * @param in the input.
+   * @return the value.
+   * @throws IOException if the read fails or the value is out of range.
+   */
+  public static int readVarInt(DataInput in)
+    throws IOException
+  {
+    long value = readVarLong(in);
+    if (value < 0 || value > Integer.MAX_VALUE)
+    {
+      throw new IOException("variable length integer out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read a signed variable length integer that must fit in an int.
+   * 
+   * @param in the input.
+   * @return the value.
+   * @throws IOException if the read fails or the value is out of range.
+   */
+  public static int readSignedVarInt(DataInput in)
+    throws IOException
+  {
+    long value = readSignedVarLong(in);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+    {
+      throw new IOException("variable length integer out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor; this class only has static members.
+   */
+  private BinaryEditFormat()
+  {
+    // Nothing.
+  }
+} // class BinaryEditFormat
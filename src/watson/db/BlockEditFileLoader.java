@@ -0,0 +1,359 @@
+package watson.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+
+import watson.Controller;
+import watson.IIncrementalTask;
+import watson.SyncTaskQueue;
+import watson.chat.Chat;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Loads a {@link BlockEditSet} save file on a background thread.
+ * 
+ * The file is parsed by a {@link BlockEditFileParser} on the loader thread.
+ * Edits and annotations are collected into batches that are added to the
+ * target {@link BlockEditSet} by tasks run from the {@link SyncTaskQueue}, on
+ * the main thread, so the game stays responsive while large files load. At
+ * most {@link #MAX_PENDING_BATCHES} batches are queued at any time, which
+ * limits both memory use and the work done in a single tick.
+ * 
+ * Progress is reported in chat and the load can be cancelled with
+ * "/w file cancel". Edits added before the load was cancelled are kept.
+ */
+public class BlockEditFileLoader implements Runnable, IBlockEditFileHandler
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param file the file to load.
+   * @param edits the set to which edits and annotations are added.
+   */
+  public BlockEditFileLoader(File file, BlockEditSet edits)
+  {
+    _parser = new BlockEditFileParser(file);
+    _edits = edits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start loading the file on a new background thread.
+   */
+  public void start()
+  {
+    Thread thread = new Thread(this, "Watson file loader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Cancel the load.
+   * 
+   * No more edits are added to the {@link BlockEditSet} once this method
+   * returns. It must be called from the main thread.
+   */
+  public void cancel()
+  {
+    _parser.cancel();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the file being loaded.
+   * 
+   * @return the file being loaded.
+   */
+  public File getFile()
+  {
+    return _parser.getFile();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the file on the loader thread.
+   * 
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    String error = null;
+    try
+    {
+      _parser.parse(this);
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.SEVERE, "error loading BlockEditSet from "
+                                  + getFile(), ex);
+      error = "The file " + getFile().getName() + " could not be loaded.";
+    }
+
+    // The last batch is queued even if cancelled, to report the outcome.
+    Batch last = new Batch(_parser.getPercentComplete());
+    last._finished = true;
+    last._error = error;
+    SyncTaskQueue.instance.addTask(last);
+  } // run
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.IBlockEditFileHandler#onBlockEdit(watson.db.BlockEdit)
+   */
+  @Override
+  public void onBlockEdit(BlockEdit edit)
+  {
+    _batchEdits.add(edit);
+    if (_batchEdits.size() >= BATCH_SIZE)
+    {
+      queueBatch();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.IBlockEditFileHandler#onAnnotation(watson.db.Annotation)
+   */
+  @Override
+  public void onAnnotation(Annotation annotation)
+  {
+    _batchAnnotations.add(annotation);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Queue the edits and annotations read so far to be added on the main
+   * thread, first waiting until there is room in the queue.
+   */
+  protected void queueBatch()
+  {
+    try
+    {
+      _pendingBatches.acquire();
+    }
+    catch (InterruptedException ex)
+    {
+      _parser.cancel();
+      return;
+    }
+    SyncTaskQueue.instance.addTask(new Batch(_parser.getPercentComplete()));
+  } // queueBatch
+
+  // --------------------------------------------------------------------------
+  /**
+   * A task, run on the main thread, that adds a batch of edits and annotations
+   * to the {@link BlockEditSet} and reports progress.
+   * 
+   * The edits are added in slices, over as many ticks as it takes to stay
+   * within the {@link SyncTaskQueue} time budget.
+   */
+  protected class Batch implements IIncrementalTask
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * Takes ownership of the edits and annotations collected so far.
+     * 
+     * @param percent the percentage of the file read when the batch was made.
+     */
+    public Batch(int percent)
+    {
+      ArrayList<BlockEdit> editList = BlockEditFileLoader.this._batchEdits;
+      _editArray = editList.toArray(new BlockEdit[editList.size()]);
+      _annotationList = BlockEditFileLoader.this._batchAnnotations;
+      BlockEditFileLoader.this._batchEdits = new ArrayList<BlockEdit>(BATCH_SIZE);
+      BlockEditFileLoader.this._batchAnnotations = new ArrayList<Annotation>();
+      _percent = percent;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add the whole batch.
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+      runUntil(Long.MAX_VALUE);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see watson.IIncrementalTask#runUntil(long)
+     */
+    @Override
+    public boolean runUntil(long deadline)
+    {
+      if (!_parser.isCancelled())
+      {
+        while (_next < _editArray.length)
+        {
+          int end = Math.min(_editArray.length, _next + SLICE_SIZE);
+          _edits.addBlockEdits(_editArray, _next, end);
+          _editCount += end - _next;
+          _lastEdit = _editArray[end - 1];
+          _next = end;
+          if (_next < _editArray.length && System.nanoTime() - deadline >= 0)
+          {
+            return false;
+          }
+          if (_parser.isCancelled())
+          {
+            break;
+          }
+        }
+        if (!_parser.isCancelled())
+        {
+          _edits.getAnnotations().addAll(_annotationList);
+          _annoCount += _annotationList.size();
+        }
+      }
+
+      if (_finished)
+      {
+        String name = getFile().getName();
+        if (_lastEdit != null)
+        {
+          Controller.instance.selectBlockEdit(_lastEdit);
+        }
+
+        if (_error != null)
+        {
+          Chat.localError(_error);
+        }
+        else if (_parser.isCancelled())
+        {
+          Chat.localOutput(String.format(Locale.US,
+            "Cancelled loading %s after %d edits and %d annotations.", name,
+            _editCount, _annoCount));
+        }
+        else
+        {
+          Chat.localOutput(String.format(Locale.US,
+            "Loaded %d edits and %d annotations from %s", _editCount,
+            _annoCount, name));
+        }
+        Controller.instance.onBlockEditFileLoaderFinished(BlockEditFileLoader.this);
+      }
+      else
+      {
+        if (_percent >= _nextReportPercent)
+        {
+          Chat.localOutput(String.format(Locale.US,
+            "Loading %s: %d%% (%d edits).", getFile().getName(), _percent,
+            _editCount));
+          _nextReportPercent = (_percent / REPORT_PERCENT + 1) * REPORT_PERCENT;
+        }
+        _pendingBatches.release();
+      }
+      return true;
+    } // runUntil
+
+    /**
+     * The edits to add.
+     */
+    protected BlockEdit[]           _editArray;
+
+    /**
+     * The index of the next edit in _editArray to add.
+     */
+    protected int                   _next;
+
+    /**
+     * The annotations to add.
+     */
+    protected ArrayList<Annotation> _annotationList;
+
+    /**
+     * The percentage of the file read when the batch was made.
+     */
+    protected int                   _percent;
+
+    /**
+     * True if this is the last batch.
+     */
+    protected boolean               _finished;
+
+    /**
+     * If not null, the error message to show when the last batch is run.
+     */
+    protected String                _error;
+  } // class Batch
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of edits in each batch.
+   */
+  protected static final int      BATCH_SIZE          = 5000;
+
+  /**
+   * The number of edits added between checks of the time budget.
+   */
+  protected static final int      SLICE_SIZE          = 256;
+
+  /**
+   * The maximum number of batches waiting in the {@link SyncTaskQueue}.
+   */
+  protected static final int      MAX_PENDING_BATCHES = 2;
+
+  /**
+   * Progress is reported in chat each time this percentage of the file has
+   * been loaded.
+   */
+  protected static final int      REPORT_PERCENT      = 10;
+
+  /**
+   * The parser, which runs on the loader thread.
+   */
+  protected BlockEditFileParser   _parser;
+
+  /**
+   * The set to which edits and annotations are added.
+   */
+  protected BlockEditSet          _edits;
+
+  /**
+   * Edits read by the loader thread that have not yet been queued.
+   */
+  protected ArrayList<BlockEdit>  _batchEdits         = new ArrayList<BlockEdit>(BATCH_SIZE);
+
+  /**
+   * Annotations read by the loader thread that have not yet been queued.
+   */
+  protected ArrayList<Annotation> _batchAnnotations   = new ArrayList<Annotation>();
+
+  /**
+   * Permits for batches to be queued; released as each batch is run.
+   */
+  protected Semaphore             _pendingBatches     = new Semaphore(MAX_PENDING_BATCHES);
+
+  /**
+   * The number of edits added so far; accessed only on the main thread.
+   */
+  protected int                   _editCount;
+
+  /**
+   * The number of annotations added so far; accessed only on the main thread.
+   */
+  protected int                   _annoCount;
+
+  /**
+   * The most recently added edit; accessed only on the main thread.
+   */
+  protected BlockEdit             _lastEdit;
+
+  /**
+   * The percentage at which progress will next be reported; accessed only on
+   * the main thread.
+   */
+  protected int                   _nextReportPercent  = REPORT_PERCENT;
+} // class BlockEditFileLoader
@@ -0,0 +1,281 @@
+package watson.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// ----------------------------------------------------------------------------
+/**
+ * Reads a {@link BlockEditSet} save file in either the text format or the
+ * binary format described by {@link BinaryEditFormat}, passing each edit and
+ * annotation to an {@link IBlockEditFileHandler}.
+ * 
+ * The parser does not modify any {@link BlockEditSet} itself, so it can be run
+ * on a background thread. Parsing can be cancelled from another thread.
+ */
+public class BlockEditFileParser
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param file the file to read.
+   */
+  public BlockEditFileParser(File file)
+  {
+    _file = file;
+    _length = file.length();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the file being read.
+   * 
+   * @return the file being read.
+   */
+  public File getFile()
+  {
+    return _file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the file, detecting its format from the first bytes.
+   * 
+   * @param handler the handler that is passed each edit and annotation.
+   * @throws IOException if the file can't be read or is malformed.
+   */
+  public void parse(IBlockEditFileHandler handler)
+    throws IOException
+  {
+    FileInputStream file = new FileInputStream(_file);
+    _channel = file.getChannel();
+    BufferedInputStream in = new BufferedInputStream(file);
+    try
+    {
+      DataInputStream data = new DataInputStream(in);
+      boolean binary;
+      in.mark(4);
+      try
+      {
+        binary = (data.readInt() == BinaryEditFormat.MAGIC);
+      }
+      catch (EOFException ex)
+      {
+        binary = false;
+      }
+
+      if (binary)
+      {
+        parseBinary(data, handler);
+      }
+      else
+      {
+        in.reset();
+        parseText(new BufferedReader(new InputStreamReader(in)), handler);
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+  } // parse
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop parsing at the next edit or annotation.
+   * 
+   * This may be called from any thread.
+   */
+  public void cancel()
+  {
+    _cancelled = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if parsing has been cancelled.
+   * 
+   * @return true if parsing has been cancelled.
+   */
+  public boolean isCancelled()
+  {
+    return _cancelled;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the approximate percentage of the file that has been read.
+   * 
+   * This should be called from the thread calling parse().
+   * 
+   * @return the approximate percentage of the file that has been read, in the
+   *         range [0,100].
+   */
+  public int getPercentComplete()
+  {
+    try
+    {
+      return (_channel == null || _length == 0)
+        ? 0 : (int) Math.min(100, 100 * _channel.position() / _length);
+    }
+    catch (IOException ex)
+    {
+      return 0;
+    }
+  } // getPercentComplete
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the text format.
+   * 
+   * @param reader the source of the text.
+   * @param handler the handler that is passed each edit and annotation.
+   */
+  protected void parseText(BufferedReader reader, IBlockEditFileHandler handler)
+    throws IOException
+  {
+    Pattern editPattern = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})\\|(\\d{2}):(\\d{2}):(\\d{2})\\|(\\w+)\\|([cd])\\|(\\d+)\\|(\\d+)\\|(-?\\d+)\\|(\\d+)\\|(-?\\d+)");
+    Pattern annoPattern = Pattern.compile("#(-?\\d+)\\|(\\d+)\\|(-?\\d+)\\|(.*)");
+    Calendar time = Calendar.getInstance();
+    String line;
+    while (!_cancelled && (line = reader.readLine()) != null)
+    {
+      Matcher edit = editPattern.matcher(line);
+      if (edit.matches())
+      {
+        int year = Integer.parseInt(edit.group(1));
+        int month = Integer.parseInt(edit.group(2)) - 1;
+        int day = Integer.parseInt(edit.group(3));
+        int hour = Integer.parseInt(edit.group(4));
+        int minute = Integer.parseInt(edit.group(5));
+        int second = Integer.parseInt(edit.group(6));
+        time.set(year, month, day, hour, minute, second);
+
+        String player = edit.group(7);
+        boolean created = edit.group(8).equals("c");
+        int id = Integer.parseInt(edit.group(9));
+        int data = Integer.parseInt(edit.group(10));
+        int x = Integer.parseInt(edit.group(11));
+        int y = Integer.parseInt(edit.group(12));
+        int z = Integer.parseInt(edit.group(13));
+
+        BlockType type = BlockTypeRegistry.instance.getBlockTypeByIdData(id,
+          data);
+        handler.onBlockEdit(new BlockEdit(time.getTimeInMillis(), player,
+                                          created, x, y, z, type));
+      } // if
+      else
+      {
+        // Is the line an annotation?
+        Matcher anno = annoPattern.matcher(line);
+        if (anno.matches())
+        {
+          int x = Integer.parseInt(anno.group(1));
+          int y = Integer.parseInt(anno.group(2));
+          int z = Integer.parseInt(anno.group(3));
+          String text = anno.group(4);
+          handler.onAnnotation(new Annotation(x, y, z, text));
+        }
+      }
+    } // while
+  } // parseText
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the binary format, after the magic number has been read.
+   * 
+   * @param in the source of the data, positioned after the magic number.
+   * @param handler the handler that is passed each edit and annotation.
+   */
+  protected void parseBinary(DataInputStream in, IBlockEditFileHandler handler)
+    throws IOException
+  {
+    int version = BinaryEditFormat.readVarInt(in);
+    if (version > BinaryEditFormat.VERSION)
+    {
+      throw new IOException("unsupported binary edit file version " + version);
+    }
+
+    // Block type dictionary.
+    BlockType[] types = new BlockType[BinaryEditFormat.readVarInt(in)];
+    for (int i = 0; i < types.length; ++i)
+    {
+      int id = BinaryEditFormat.readVarInt(in);
+      int data = BinaryEditFormat.readVarInt(in);
+      types[i] = BlockTypeRegistry.instance.getBlockTypeByIdData(id, data);
+    }
+
+    // Edits, delta-encoded per player.
+    int playerCount = BinaryEditFormat.readVarInt(in);
+    for (int p = 0; p < playerCount && !_cancelled; ++p)
+    {
+      String player = in.readUTF();
+      int editCount = BinaryEditFormat.readVarInt(in);
+      long time = 0;
+      int x = 0;
+      int y = 0;
+      int z = 0;
+      for (int e = 0; e < editCount && !_cancelled; ++e)
+      {
+        time += BinaryEditFormat.readSignedVarLong(in);
+        int typeAndAction = BinaryEditFormat.readVarInt(in);
+        x += BinaryEditFormat.readSignedVarInt(in);
+        y += BinaryEditFormat.readSignedVarInt(in);
+        z += BinaryEditFormat.readSignedVarInt(in);
+
+        int typeIndex = typeAndAction >>> 1;
+        if (typeIndex >= types.length)
+        {
+          throw new IOException("invalid block type index " + typeIndex);
+        }
+        boolean created = (typeAndAction & 1) != 0;
+        handler.onBlockEdit(new BlockEdit(time, player, created, x, y, z,
+                                          types[typeIndex]));
+      }
+    } // for all players
+
+    // Annotations.
+    if (!_cancelled)
+    {
+      int annoCount = BinaryEditFormat.readVarInt(in);
+      for (int i = 0; i < annoCount; ++i)
+      {
+        int x = BinaryEditFormat.readSignedVarInt(in);
+        int y = BinaryEditFormat.readSignedVarInt(in);
+        int z = BinaryEditFormat.readSignedVarInt(in);
+        handler.onAnnotation(new Annotation(x, y, z, in.readUTF()));
+      }
+    }
+  } // parseBinary
+
+  // --------------------------------------------------------------------------
+  /**
+   * The file being read.
+   */
+  protected File             _file;
+
+  /**
+   * The length of the file in bytes, when parsing started.
+   */
+  protected long             _length;
+
+  /**
+   * The channel of the open file, used to measure progress.
+   */
+  protected FileChannel      _channel;
+
+  /**
+   * True if parsing has been cancelled.
+   */
+  protected volatile boolean _cancelled;
+} // class BlockEditFileParser
@@ -0,0 +1,397 @@
+package watson.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+import watson.SyncTaskQueue;
+import watson.chat.Chat;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Writes a snapshot of a {@link BlockEditSet} to a save file, in either the
+ * text format or the binary format described by {@link BinaryEditFormat}.
+ * 
+ * The snapshot is taken by the constructor, on the main thread, so the file
+ * can then be written on a background thread with {@link #start()} while the
+ * {@link BlockEditSet} continues to change. The file is first written to a
+ * hidden temporary file in the same directory, which is synced to disk and
+ * then renamed over the destination, so a crash part way through a save never
+ * leaves a truncated save file.
+ */
+public class BlockEditFileWriter implements Runnable
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * Takes a snapshot of the edits and annotations; this must be called from
+   * the main thread.
+   * 
+   * @param edits the edits to save.
+   * @param file the destination file.
+   * @param binary if true, write the binary format rather than text.
+   */
+  public BlockEditFileWriter(BlockEditSet edits, File file, boolean binary)
+  {
+    _file = file;
+    _binary = binary;
+    for (PlayerEditSet editsForPlayer : edits._playerEdits.values())
+    {
+      BlockEditStore store = editsForPlayer.copyOrderedStore();
+      _playerEdits.put(editsForPlayer.getPlayer(), store);
+      _editCount += store.size();
+    }
+    _annotations = new ArrayList<Annotation>(edits.getAnnotations());
+  } // BlockEditFileWriter
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits in the snapshot.
+   * 
+   * @return the number of edits in the snapshot.
+   */
+  public int getEditCount()
+  {
+    return _editCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of annotations in the snapshot.
+   * 
+   * @return the number of annotations in the snapshot.
+   */
+  public int getAnnotationCount()
+  {
+    return _annotations.size();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the file on a new background thread and report the outcome in chat,
+   * from the main thread, when done.
+   */
+  public void start()
+  {
+    // Not a daemon thread, so that quitting the game waits for the save.
+    Thread thread = new Thread(this, "Watson file writer");
+    thread.start();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the file on the writer thread.
+   * 
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    String name = _file.getName();
+    String message;
+    boolean success;
+    try
+    {
+      write();
+      message = String.format(Locale.US,
+        "Saved %d edits and %d annotations to %s", getEditCount(),
+        getAnnotationCount(), name);
+      success = true;
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.SEVERE, "error saving BlockEditSet to " + _file, ex);
+      message = "The file " + name + " could not be saved.";
+      success = false;
+    }
+
+    SyncTaskQueue.instance.addTask(new Report(message, success));
+  } // run
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the file on the calling thread.
+   * 
+   * @throws IOException if the file could not be written.
+   */
+  public void write()
+    throws IOException
+  {
+    // Each write has its own temporary file, so that two saves to the same
+    // file never write to the same temporary file. The leading '.' hides it
+    // from CaseInsensitivePrefixFileFilter.
+    File temp = File.createTempFile("." + _file.getName() + ".", ".tmp",
+      _file.getAbsoluteFile().getParentFile());
+    FileOutputStream file = new FileOutputStream(temp);
+    try
+    {
+      if (_binary)
+      {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+        writeBinary(out);
+        out.flush();
+      }
+      else
+      {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+          new BufferedOutputStream(file)));
+        writeText(writer);
+        writer.flush();
+        if (writer.checkError())
+        {
+          throw new IOException("error writing " + temp);
+        }
+      }
+
+      // Make sure the data is on disk before the rename makes it visible.
+      file.getFD().sync();
+    }
+    catch (IOException ex)
+    {
+      file.close();
+      temp.delete();
+      throw ex;
+    }
+    file.close();
+
+    // The rename is atomic where the platform supports replacing an existing
+    // file; elsewhere (Windows), the old file has to be removed first. Renames
+    // are serialised so that concurrent saves of the same file can't each
+    // delete the other's result between the two steps.
+    synchronized (BlockEditFileWriter.class)
+    {
+      if (!temp.renameTo(_file))
+      {
+        if ((_file.exists() && !_file.delete()) || !temp.renameTo(_file))
+        {
+          temp.delete();
+          throw new IOException("could not rename " + temp + " to " + _file);
+        }
+      }
+    }
+  } // write
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the snapshot in the text format.
+   * 
+   * Each line is of the form:
+   * 
+   * <pre>
+   * YYYY-MM-DD|hh:mm:ss|player|action|id|data|x|y|z
+   * </pre>
+   * 
+   * Where action is c (created) or d (destroyed) and id is the numeric block
+   * type. Annotations follow, as lines of the form:
+   * 
+   * <pre>
+   * #x|y|z|text
+   * </pre>
+   * 
+   * @param writer the destination of the text.
+   */
+  protected void writeText(PrintWriter writer)
+  {
+    Calendar calendar = Calendar.getInstance();
+    for (Map.Entry<String, BlockEditStore> entry : _playerEdits.entrySet())
+    {
+      String player = entry.getKey();
+      BlockEditStore edits = entry.getValue();
+      for (int row = 0; row < edits.size(); ++row)
+      {
+        calendar.setTimeInMillis(edits.getTime(row));
+        int year = calendar.get(Calendar.YEAR);
+        int month = calendar.get(Calendar.MONTH) + 1;
+        int day = calendar.get(Calendar.DAY_OF_MONTH);
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        int minute = calendar.get(Calendar.MINUTE);
+        int second = calendar.get(Calendar.SECOND);
+        char action = edits.isCreation(row) ? 'c' : 'd';
+        BlockType type = edits.getType(row);
+        writer.format("%4d-%02d-%02d|%02d:%02d:%02d|%s|%c|%d|%d|%d|%d|%d\n",
+          year, month, day, hour, minute, second, player, action,
+          type.getId(), type.getData(), edits.getX(row), edits.getY(row),
+          edits.getZ(row));
+      } // for
+    } // for
+
+    for (Annotation annotation : _annotations)
+    {
+      writer.format("#%d|%d|%d|%s\n", annotation.getX(), annotation.getY(),
+        annotation.getZ(), annotation.getText());
+    }
+  } // writeText
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the snapshot in the binary format.
+   * 
+   * @param out the destination of the data.
+   */
+  protected void writeBinary(DataOutputStream out)
+    throws IOException
+  {
+    out.writeInt(BinaryEditFormat.MAGIC);
+    BinaryEditFormat.writeVarLong(out, BinaryEditFormat.VERSION);
+
+    // Block type dictionary, in order of first use. dictionaryIndices maps
+    // BlockType index to position in the dictionary + 1, or 0 if not used.
+    int[] dictionaryIndices = new int[64];
+    ArrayList<BlockType> dictionary = new ArrayList<BlockType>();
+    for (BlockEditStore edits : _playerEdits.values())
+    {
+      for (int row = 0; row < edits.size(); ++row)
+      {
+        int typeIndex = edits.getTypeIndex(row);
+        if (typeIndex >= dictionaryIndices.length)
+        {
+          int[] grown = new int[Math.max(2 * dictionaryIndices.length,
+            typeIndex + 1)];
+          System.arraycopy(dictionaryIndices, 0, grown, 0,
+            dictionaryIndices.length);
+          dictionaryIndices = grown;
+        }
+        if (dictionaryIndices[typeIndex] == 0)
+        {
+          dictionary.add(edits.getType(row));
+          dictionaryIndices[typeIndex] = dictionary.size();
+        }
+      }
+    }
+    BinaryEditFormat.writeVarLong(out, dictionary.size());
+    for (BlockType type : dictionary)
+    {
+      BinaryEditFormat.writeVarLong(out, type.getId());
+      BinaryEditFormat.writeVarLong(out, type.getData());
+    }
+
+    // Edits, with times and coordinates as differences from the previous edit
+    // by the same player.
+    BinaryEditFormat.writeVarLong(out, _playerEdits.size());
+    for (Map.Entry<String, BlockEditStore> entry : _playerEdits.entrySet())
+    {
+      BlockEditStore edits = entry.getValue();
+      out.writeUTF(entry.getKey());
+      BinaryEditFormat.writeVarLong(out, edits.size());
+      long time = 0;
+      int x = 0;
+      int y = 0;
+      int z = 0;
+      for (int row = 0; row < edits.size(); ++row)
+      {
+        long editTime = edits.getTime(row);
+        int editX = edits.getX(row);
+        int editY = edits.getY(row);
+        int editZ = edits.getZ(row);
+        int typeIndex = dictionaryIndices[edits.getTypeIndex(row)] - 1;
+        BinaryEditFormat.writeSignedVarLong(out, editTime - time);
+        BinaryEditFormat.writeVarLong(out, (typeIndex << 1)
+                                           | (edits.isCreation(row) ? 1 : 0));
+        BinaryEditFormat.writeSignedVarLong(out, editX - x);
+        BinaryEditFormat.writeSignedVarLong(out, editY - y);
+        BinaryEditFormat.writeSignedVarLong(out, editZ - z);
+        time = editTime;
+        x = editX;
+        y = editY;
+        z = editZ;
+      }
+    } // for all players
+
+    // Annotations.
+    BinaryEditFormat.writeVarLong(out, _annotations.size());
+    for (Annotation annotation : _annotations)
+    {
+      BinaryEditFormat.writeSignedVarLong(out, annotation.getX());
+      BinaryEditFormat.writeSignedVarLong(out, annotation.getY());
+      BinaryEditFormat.writeSignedVarLong(out, annotation.getZ());
+      out.writeUTF(annotation.getText());
+    }
+  } // writeBinary
+
+  // --------------------------------------------------------------------------
+  /**
+   * A task, run on the main thread, that reports the outcome of a background
+   * save in chat.
+   */
+  protected static class Report implements Runnable
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param message the message to show.
+     * @param success true if the save succeeded.
+     */
+    public Report(String message, boolean success)
+    {
+      _message = message;
+      _success = success;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+      if (_success)
+      {
+        Chat.localOutput(_message);
+      }
+      else
+      {
+        Chat.localError(_message);
+      }
+    }
+
+    /**
+     * The message to show.
+     */
+    protected String  _message;
+
+    /**
+     * True if the save succeeded.
+     */
+    protected boolean _success;
+  } // class Report
+
+  // --------------------------------------------------------------------------
+  /**
+   * The destination file.
+   */
+  protected File                                  _file;
+
+  /**
+   * If true, write the binary format rather than text.
+   */
+  protected boolean                               _binary;
+
+  /**
+   * Map from player name to a copy of that player's edits, in which the rows
+   * are in time order.
+   */
+  protected LinkedHashMap<String, BlockEditStore> _playerEdits = new LinkedHashMap<String, BlockEditStore>();
+
+  /**
+   * A copy of the annotations.
+   */
+  protected ArrayList<Annotation>                 _annotations;
+
+  /**
+   * The total number of edits in the snapshot.
+   */
+  protected int                                   _editCount;
+} // class BlockEditFileWriter
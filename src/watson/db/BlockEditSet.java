@@ -1,18 +1,11 @@
 package watson.db;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.ScaledResolution;
@@ -22,6 +15,7 @@ import org.lwjgl.opengl.GL11;
 import watson.Configuration;
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.ViewCuller;
 import watson.chat.Chat;
 import watson.model.ARGB;
 
@@ -45,121 +39,63 @@ public class BlockEditSet
   /**
    * Load additional entries from the specified file.
    * 
+   * The file may be in either the text format or the binary format described
+   * by {@link BinaryEditFormat}. This method reads the whole file on the
+   * calling thread; {@link BlockEditFileLoader} loads files in the background.
+   * 
    * @param file the file to load.
    * @return the number of edits loaded.
    */
   public int load(File file)
     throws Exception
   {
-    BufferedReader reader = new BufferedReader(new FileReader(file));
-
-    try
+    final BlockEdit[] lastEdit = new BlockEdit[1];
+    final int[] edits = new int[1];
+    new BlockEditFileParser(file).parse(new IBlockEditFileHandler()
     {
-      Pattern editPattern = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})\\|(\\d{2}):(\\d{2}):(\\d{2})\\|(\\w+)\\|([cd])\\|(\\d+)\\|(\\d+)\\|(-?\\d+)\\|(\\d+)\\|(-?\\d+)");
-      Pattern annoPattern = Pattern.compile("#(-?\\d+)\\|(\\d+)\\|(-?\\d+)\\|(.*)");
-      Calendar time = Calendar.getInstance();
-      String line;
-      int edits = 0;
-      BlockEdit blockEdit = null;
-      while ((line = reader.readLine()) != null)
+      @Override
+      public void onBlockEdit(BlockEdit edit)
       {
-        Matcher edit = editPattern.matcher(line);
-        if (edit.matches())
-        {
-          int year = Integer.parseInt(edit.group(1));
-          int month = Integer.parseInt(edit.group(2)) - 1;
-          int day = Integer.parseInt(edit.group(3));
-          int hour = Integer.parseInt(edit.group(4));
-          int minute = Integer.parseInt(edit.group(5));
-          int second = Integer.parseInt(edit.group(6));
-          time.set(year, month, day, hour, minute, second);
-
-          String player = edit.group(7);
-          boolean created = edit.group(8).equals("c");
-          int id = Integer.parseInt(edit.group(9));
-          int data = Integer.parseInt(edit.group(10));
-          int x = Integer.parseInt(edit.group(11));
-          int y = Integer.parseInt(edit.group(12));
-          int z = Integer.parseInt(edit.group(13));
-
-          BlockType type = BlockTypeRegistry.instance.getBlockTypeByIdData(id,
-            data);
-          blockEdit = new BlockEdit(time.getTimeInMillis(), player, created, x,
-                                    y, z, type);
-          addBlockEdit(blockEdit);
-          ++edits;
-        } // if
-        else
-        {
-          // Is the line an annotation?
-          Matcher anno = annoPattern.matcher(line);
-          if (anno.matches())
-          {
-            int x = Integer.parseInt(anno.group(1));
-            int y = Integer.parseInt(anno.group(2));
-            int z = Integer.parseInt(anno.group(3));
-            String text = anno.group(4);
-            _annotations.add(new Annotation(x, y, z, text));
-          }
-        }
-      } // while
+        addBlockEdit(edit);
+        lastEdit[0] = edit;
+        ++edits[0];
+      }
 
-      // If there was at least one BlockEdit, select it.
-      if (blockEdit != null)
+      @Override
+      public void onAnnotation(Annotation annotation)
       {
-        Controller.instance.selectBlockEdit(blockEdit);
+        _annotations.add(annotation);
       }
-      return edits;
-    }
-    finally
+    });
+
+    // If there was at least one BlockEdit, select it.
+    if (lastEdit[0] != null)
     {
-      reader.close();
+      Controller.instance.selectBlockEdit(lastEdit[0]);
     }
+    return edits[0];
   } // load
 
   // --------------------------------------------------------------------------
   /**
-   * Save all {@link BlockEdit}s to the specified file.
+   * Save all {@link BlockEdit}s and annotations to the specified file, on the
+   * calling thread.
    * 
-   * Each line is of the form:
-   * 
-   * <pre>
-   * YYYY-MM-DD|hh:mm:ss|action|id|data|x|y|z
-   * </pre>
-   * 
-   * Where action is c (created) or d (destroyed) and id is the numeric block
-   * type.
+   * Use {@link BlockEditFileWriter#start()} to save in the background.
    * 
    * @param file the file to save.
+   * @param binary if true, the file is written in the binary format described
+   *          by {@link BinaryEditFormat}; otherwise it is written in the text
+   *          format.
    * @return the number of edits saved.
    */
-  public int save(File file)
+  public int save(File file, boolean binary)
     throws IOException
   {
-    PrintWriter writer = new PrintWriter(new BufferedWriter(
-                                                            new FileWriter(file)));
-    try
-    {
-      // Save edits.
-      int editCount = 0;
-      for (PlayerEditSet editsForPlayer : _playerEdits.values())
-      {
-        editCount += editsForPlayer.save(writer);
-      }
-
-      // Save annotations.
-      for (Annotation annotation : _annotations)
-      {
-        writer.format("#%d|%d|%d|%s\n", annotation.getX(), annotation.getY(),
-          annotation.getZ(), annotation.getText());
-      }
-      return editCount;
-    }
-    finally
-    {
-      writer.close();
-    }
-  } // save
+    BlockEditFileWriter writer = new BlockEditFileWriter(this, file, binary);
+    writer.write();
+    return writer.getEditCount();
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -167,7 +103,13 @@ public class BlockEditSet
    */
   public void clear()
   {
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      editsForPlayer.releaseOutlines();
+    }
     _playerEdits.clear();
+    _playerEditsById.clear();
+    _coordIndex.clear();
     _annotations.clear();
     _oreDB.clear();
   }
@@ -176,6 +118,9 @@ public class BlockEditSet
   /**
    * Find an edit with the specified coordinates and, optionally, player.
    * 
+   * If there are multiple edits at the coordinates, the oldest one is returned.
+   * When the player is not specified, that is the oldest edit by any player.
+   * 
    * @param x the x coordinate of the block
    * @param y the y coordinate of the block
    * @param z the z coordinate of the block
@@ -192,15 +137,8 @@ public class BlockEditSet
     else
     {
       // Player is null (wildcard).
-      for (PlayerEditSet editsForPlayer : _playerEdits.values())
-      {
-        BlockEdit edit = editsForPlayer.findEdit(x, y, z);
-        if (edit != null)
-        {
-          return edit;
-        }
-      }
-      return null;
+      PlayerEditSet editsForPlayer = getPlayerEditSetById(_coordIndex.get(IntCoord.pack(x, y, z)));
+      return (editsForPlayer != null) ? editsForPlayer.findEdit(x, y, z) : null;
     }
   } // findEdit
 
@@ -235,33 +173,130 @@ public class BlockEditSet
       {
         Controller.instance.selectBlockEdit(edit);
       }
+      storeBlockEdit(edit, getPlayerEditSet(edit.player), isGroupingOres());
+      return true;
+    }
+    else
+    {
+      return false;
+    }
+  } // addBlockEdit
 
-      // Add a new PlayerEditSet if there isn't one for this player.
-      String lowerName = edit.player.toLowerCase();
-      PlayerEditSet editsForPlayer = _playerEdits.get(lowerName);
-      if (editsForPlayer == null)
+  // --------------------------------------------------------------------------
+  /**
+   * Add a batch of edits to the list, without updating the state variables.
+   * 
+   * This is equivalent to calling addBlockEdit(edit, false) for each edit in
+   * turn, but the filters are only evaluated once for each run of edits by the
+   * same player and the game mode is only checked once per batch.
+   * 
+   * @param edits the array containing the edits to add.
+   * @param start the index of the first edit to add.
+   * @param end the index after the last edit to add.
+   * @return the number of edits that passed the currently set filters.
+   */
+  public int addBlockEdits(BlockEdit[] edits, int start, int end)
+  {
+    Filters filters = Controller.instance.getFilters();
+    boolean groupOres = isGroupingOres();
+    String player = null;
+    boolean accepted = false;
+    PlayerEditSet editsForPlayer = null;
+    int acceptedCount = 0;
+    for (int i = start; i < end; ++i)
+    {
+      BlockEdit edit = edits[i];
+      if (!edit.player.equals(player))
       {
-        editsForPlayer = new PlayerEditSet(edit.player);
-        _playerEdits.put(lowerName, editsForPlayer);
+        player = edit.player;
+        accepted = filters.isAcceptedPlayer(player);
+        editsForPlayer = accepted ? getPlayerEditSet(player) : null;
       }
-      editsForPlayer.addBlockEdit(edit);
 
-      // Only cluster edits into ore deposits on non-creative (survival,
-      // adventure) games. I assume this will not stuff up for admins etc whose
-      // gamemode is creative, but just in case, allow a configuration override.
-      Minecraft mc = Minecraft.getMinecraft();
-      if (!mc.theWorld.getWorldInfo().getGameType().isCreative()
-          || Configuration.instance.isGroupingOresInCreative())
+      if (accepted)
       {
-        _oreDB.addBlockEdit(edit);
+        storeBlockEdit(edit, editsForPlayer, groupOres);
+        ++acceptedCount;
       }
-      return true;
+    } // for
+    return acceptedCount;
+  } // addBlockEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link PlayerEditSet} for the specified player, adding a new one
+   * if there isn't one for that player.
+   * 
+   * @param player the player name (case insensitive).
+   * @return the {@link PlayerEditSet}.
+   */
+  protected PlayerEditSet getPlayerEditSet(String player)
+  {
+    String lowerName = player.toLowerCase();
+    PlayerEditSet editsForPlayer = _playerEdits.get(lowerName);
+    if (editsForPlayer == null)
+    {
+      // Identifiers are not reused when a player's edits are removed, so that
+      // stale entries in _coordIndex never refer to another player.
+      editsForPlayer = new PlayerEditSet(player, _playerEditsById.size());
+      _playerEdits.put(lowerName, editsForPlayer);
+      _playerEditsById.add(editsForPlayer);
     }
-    else
+    return editsForPlayer;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link PlayerEditSet} of the player with the specified
+   * identifier.
+   * 
+   * @param id the identifier, as returned by
+   *          {@link PlayerEditSet#getPlayerId()}.
+   * @return the {@link PlayerEditSet}, or null if there is none.
+   */
+  protected PlayerEditSet getPlayerEditSetById(int id)
+  {
+    return (id >= 0 && id < _playerEditsById.size()) ? _playerEditsById.get(id)
+                                                     : null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Store an edit that has passed the filters.
+   * 
+   * @param edit the edit.
+   * @param editsForPlayer the {@link PlayerEditSet} of the edit's player.
+   * @param groupOres if true, the edit is also added to the {@link OreDB}.
+   */
+  protected void storeBlockEdit(BlockEdit edit, PlayerEditSet editsForPlayer,
+                                boolean groupOres)
+  {
+    if (editsForPlayer.addBlockEdit(edit))
     {
-      return false;
+      indexCoord(IntCoord.pack(edit.x, edit.y, edit.z), editsForPlayer);
     }
-  } // addBlockEdit
+    if (groupOres)
+    {
+      _oreDB.addBlockEdit(edit);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if edits should be clustered into ore deposits.
+   * 
+   * Only cluster edits into ore deposits on non-creative (survival, adventure)
+   * games. I assume this will not stuff up for admins etc whose gamemode is
+   * creative, but just in case, allow a configuration override.
+   * 
+   * @return true if edits should be clustered into ore deposits.
+   */
+  protected static boolean isGroupingOres()
+  {
+    Minecraft mc = Minecraft.getMinecraft();
+    return !mc.theWorld.getWorldInfo().getGameType().isCreative()
+           || Configuration.instance.isGroupingOresInCreative();
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -287,6 +322,74 @@ public class BlockEditSet
     }
   } // listEdits
 
+  // --------------------------------------------------------------------------
+  /**
+   * Show the number of edits in the specified time window, in total, by
+   * player and by block type.
+   * 
+   * Each player's edits are in time order, so only the edits in the window
+   * are visited.
+   * 
+   * @param window the time window.
+   */
+  public void showTimeWindowSummary(TimeWindow window)
+  {
+    int[] typeCounts = new int[BlockTypeRegistry.instance.getIndexCount()];
+    int[] playerCounts = new int[_playerEdits.size()];
+    int total = 0;
+    int p = 0;
+    for (PlayerEditSet editsByPlayer : _playerEdits.values())
+    {
+      playerCounts[p] = editsByPlayer.countEdits(window, typeCounts);
+      total += playerCounts[p++];
+    }
+
+    Chat.localOutput(String.format(Locale.US, "%d edits from %s.", total,
+      window));
+    if (total == 0)
+    {
+      return;
+    }
+
+    Chat.localOutput("By player:");
+    p = 0;
+    for (PlayerEditSet editsByPlayer : _playerEdits.values())
+    {
+      if (playerCounts[p] != 0)
+      {
+        Chat.localOutput(String.format(Locale.US, "  %s - %d edits",
+          editsByPlayer.getPlayer(), playerCounts[p]));
+      }
+      ++p;
+    }
+
+    // Sort the types by descending count: (count << 32) | index, reversed.
+    long[] keys = new long[typeCounts.length];
+    int typeCount = 0;
+    for (int i = 0; i < typeCounts.length; ++i)
+    {
+      if (typeCounts[i] != 0)
+      {
+        keys[typeCount++] = ((long) typeCounts[i] << 32) | i;
+      }
+    }
+    Arrays.sort(keys, 0, typeCount);
+
+    Chat.localOutput("By block type:");
+    int shown = Math.min(typeCount, MAX_SUMMARY_TYPES);
+    for (int i = typeCount - 1; i >= typeCount - shown; --i)
+    {
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByIndex((int) keys[i]);
+      Chat.localOutput(String.format(Locale.US, "  %s - %d edits",
+        type.getName(0), (int) (keys[i] >>> 32)));
+    }
+    if (typeCount > shown)
+    {
+      Chat.localOutput(String.format(Locale.US, "  (%d more types)",
+        typeCount - shown));
+    }
+  } // showTimeWindowSummary
+
   // --------------------------------------------------------------------------
   /**
    * Set the visibility of the edits for the specified player.
@@ -324,6 +427,9 @@ public class BlockEditSet
     if (editsByPlayer != null)
     {
       _playerEdits.remove(player.toLowerCase());
+      _playerEditsById.set(editsByPlayer.getPlayerId(), null);
+      editsByPlayer.releaseOutlines();
+      rebuildCoordIndex();
       getOreDB().removeDeposits(player);
       Chat.localOutput(String.format(Locale.US,
         "%d edits by %s were removed.", editsByPlayer.getBlockEditCount(),
@@ -380,7 +486,11 @@ public class BlockEditSet
     {
       for (Annotation annotation : _annotations)
       {
-        annotation.draw();
+        if (ViewCuller.instance.isBlockVisible(annotation.getX(),
+          annotation.getY(), annotation.getZ()))
+        {
+          annotation.draw();
+        }
       }
     } // if drawing annotations
   } // drawAnnotations
@@ -437,34 +547,101 @@ public class BlockEditSet
     // Set cursor in _edits to oldest edit position.
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Record the specified player's edits at the specified coordinates in the
+   * coordinate index if the oldest of them is the oldest edit at those
+   * coordinates.
+   * 
+   * @param key the coordinates, packed by {@link IntCoord#pack(int, int, int)}.
+   * @param editsForPlayer the player's edits, which include at least one at
+   *          those coordinates.
+   */
+  protected void indexCoord(long key, PlayerEditSet editsForPlayer)
+  {
+    int existingId = _coordIndex.get(key);
+    if (existingId != editsForPlayer.getPlayerId())
+    {
+      PlayerEditSet existing = getPlayerEditSetById(existingId);
+      if (existing == null
+          || BlockEditStore.compare(
+            editsForPlayer.getStore(), editsForPlayer.getCoordIndex().get(key),
+            existing.getStore(), existing.getCoordIndex().get(key)) < 0)
+      {
+        _coordIndex.put(key, editsForPlayer.getPlayerId());
+      }
+    }
+  } // indexCoord
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rebuild the coordinate index from the per-player indices, after removal of
+   * a player's edits.
+   */
+  protected void rebuildCoordIndex()
+  {
+    _coordIndex.clear();
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      LongIntHashMap playerIndex = editsForPlayer.getCoordIndex();
+      for (int slot = 0; slot < playerIndex.getCapacity(); ++slot)
+      {
+        if (playerIndex.getValueAt(slot) != LongIntHashMap.NO_VALUE)
+        {
+          indexCoord(playerIndex.getKeyAt(slot), editsForPlayer);
+        }
+      }
+    }
+  } // rebuildCoordIndex
+
   // --------------------------------------------------------------------------
   /**
    * A map from lowercase player name to {@link PlayerEditSet} containing that
    * player's edits, iterated in the order that the individual players were
    * first encountered in query results.
    */
-  protected LinkedHashMap<String, PlayerEditSet> _playerEdits   = new LinkedHashMap<String, PlayerEditSet>();
+  protected LinkedHashMap<String, PlayerEditSet> _playerEdits      = new LinkedHashMap<String, PlayerEditSet>();
+
+  /**
+   * The values of _playerEdits indexed by {@link PlayerEditSet#getPlayerId()},
+   * with null for players whose edits have been removed. The index of the next
+   * PlayerEditSet is the size of this list, so identifiers start again from 0
+   * when the set is cleared.
+   */
+  protected ArrayList<PlayerEditSet>             _playerEditsById  = new ArrayList<PlayerEditSet>();
+
+  /**
+   * Map from coordinates packed by {@link IntCoord#pack(int, int, int)} to the
+   * {@link PlayerEditSet#getPlayerId()} of the player with the oldest edit at
+   * those coordinates.
+   */
+  protected LongIntHashMap                       _coordIndex       = new LongIntHashMap();
 
   /**
    * The list of Annotations associated with this set of edits.
    */
-  protected ArrayList<Annotation>                _annotations   = new ArrayList<Annotation>();
+  protected ArrayList<Annotation>                _annotations      = new ArrayList<Annotation>();
 
   /**
    * The spatial database indexing the edits.
    */
-  protected OreDB                                _oreDB         = new OreDB();
+  protected OreDB                                _oreDB            = new OreDB();
+
+  /**
+   * The maximum number of block types listed by showTimeWindowSummary().
+   */
+  protected static final int                     MAX_SUMMARY_TYPES = 10;
 
   /**
    * The cycle of colours used to draw vectors for different players.
    */
-  protected static final ARGB[]                  _vectorColours = {
-                                                                // Formatters...
+  protected static final ARGB[]                  _vectorColours    = {
+                                                                   // Formatters...
     new ARGB(204, 255, 255, 140), // Pale yellow.
     new ARGB(204, 140, 158, 255), // Light blue.
     new ARGB(204, 255, 140, 140), // Salmon.
     new ARGB(204, 121, 255, 140), // Mint.
     new ARGB(204, 255, 140, 255), // Pink.
     new ARGB(204, 192, 192, 192), // Old fashioned grey.
-                                                                };
+                                                                   };
 } // class BlockEditList
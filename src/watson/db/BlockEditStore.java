@@ -0,0 +1,328 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * Stores the attributes of edits in primitive arrays (columns), one element
+ * per edit, rather than as one {@link BlockEdit} object per edit.
+ * 
+ * Each edit is identified by its row: the index of its elements in the
+ * columns, assigned in the order the edits are added. Rows do not change
+ * until the store is discarded, so other structures can refer to edits by row.
+ * 
+ * Stored per edit are the time, the coordinates packed by
+ * {@link IntCoord#pack(int, int, int)}, the {@link BlockType} index and the
+ * creation flag; 19 bytes in all. The player is not stored, since all edits in
+ * a store are by the player of the {@link PlayerEditSet} that owns it.
+ * 
+ * Use a {@link BlockEditView} to read an edit through an object.
+ */
+public class BlockEditStore
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Compare two edits in the same order as {@link BlockEditComparator}: by
+   * time, then action (destruction before creation), then x, y and z
+   * coordinates.
+   * 
+   * @param l the store containing the left edit.
+   * @param lRow the row of the left edit.
+   * @param r the store containing the right edit.
+   * @param rRow the row of the right edit.
+   * @return +ve if (l > r); -ve if (l < r); 0 if (l == r)
+   */
+  public static int compare(BlockEditStore l, int lRow, BlockEditStore r, int rRow)
+  {
+    long lTime = l._times[lRow];
+    long rTime = r._times[rRow];
+    if (lTime != rTime)
+    {
+      return (lTime < rTime) ? -1 : +1;
+    }
+
+    boolean lCreation = l.isCreation(lRow);
+    if (lCreation != r.isCreation(rRow))
+    {
+      // false < true
+      return lCreation ? +1 : -1;
+    }
+
+    long lCoords = l._coords[lRow];
+    long rCoords = r._coords[rRow];
+    int dx = IntCoord.unpackX(lCoords) - IntCoord.unpackX(rCoords);
+    if (dx != 0)
+    {
+      return dx;
+    }
+    int dy = IntCoord.unpackY(lCoords) - IntCoord.unpackY(rCoords);
+    if (dy != 0)
+    {
+      return dy;
+    }
+    return IntCoord.unpackZ(lCoords) - IntCoord.unpackZ(rCoords);
+  } // compare
+
+  // --------------------------------------------------------------------------
+  /**
+   * Default constructor.
+   */
+  public BlockEditStore()
+  {
+    this(INITIAL_CAPACITY);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param capacity the initial number of edits that can be stored without
+   *          growing the columns.
+   */
+  public BlockEditStore(int capacity)
+  {
+    capacity = Math.max(capacity, 1);
+    _times = new long[capacity];
+    _coords = new long[capacity];
+    _types = new short[capacity];
+    _flags = new byte[capacity];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit.
+   * 
+   * @param edit the edit.
+   * @return the row of the edit.
+   */
+  public int add(BlockEdit edit)
+  {
+    if (_size == _times.length)
+    {
+      grow();
+    }
+
+    int row = _size++;
+    _times[row] = edit.time;
+    _coords[row] = IntCoord.pack(edit.x, edit.y, edit.z);
+    _types[row] = (short) edit.type.getIndex();
+    _flags[row] = edit.creation ? CREATION : 0;
+    return row;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a copy of an edit in another store.
+   * 
+   * @param store the other store.
+   * @param otherRow the row of the edit in the other store.
+   * @return the row of the edit in this store.
+   */
+  public int add(BlockEditStore store, int otherRow)
+  {
+    if (_size == _times.length)
+    {
+      grow();
+    }
+
+    int row = _size++;
+    _times[row] = store._times[otherRow];
+    _coords[row] = store._coords[otherRow];
+    _types[row] = store._types[otherRow];
+    _flags[row] = store._flags[otherRow];
+    return row;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove the most recently added edit, for example when it turns out to be
+   * a duplicate.
+   */
+  public void removeLast()
+  {
+    --_size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits stored.
+   * 
+   * @return the number of edits stored.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time stamp of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @return the time stamp.
+   */
+  public long getTime(int row)
+  {
+    return _times[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the coordinates of the specified edit, packed by
+   * {@link IntCoord#pack(int, int, int)}.
+   * 
+   * @param row the row of the edit.
+   * @return the packed coordinates.
+   */
+  public long getCoords(int row)
+  {
+    return _coords[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the x coordinate of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @return the x coordinate.
+   */
+  public int getX(int row)
+  {
+    return IntCoord.unpackX(_coords[row]);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the y coordinate of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @return the y coordinate.
+   */
+  public int getY(int row)
+  {
+    return IntCoord.unpackY(_coords[row]);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the z coordinate of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @return the z coordinate.
+   */
+  public int getZ(int row)
+  {
+    return IntCoord.unpackZ(_coords[row]);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link BlockType} index of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @return the index, as returned by {@link BlockType#getIndex()}.
+   */
+  public int getTypeIndex(int row)
+  {
+    return _types[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link BlockType} of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @return the type.
+   */
+  public BlockType getType(int row)
+  {
+    return BlockTypeRegistry.instance.getBlockTypeByIndex(_types[row]);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified edit was the creation of a block.
+   * 
+   * @param row the row of the edit.
+   * @return true for creation, false for destruction.
+   */
+  public boolean isCreation(int row)
+  {
+    return (_flags[row] & CREATION) != 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new {@link BlockEdit} with the attributes of the specified edit.
+   * 
+   * @param row the row of the edit.
+   * @param player the name of the player who made the edit.
+   * @return the new {@link BlockEdit}.
+   */
+  public BlockEdit getBlockEdit(int row, String player)
+  {
+    long coords = _coords[row];
+    return new BlockEdit(_times[row], player, isCreation(row),
+      IntCoord.unpackX(coords), IntCoord.unpackY(coords),
+      IntCoord.unpackZ(coords), getType(row));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Double the capacity of all columns.
+   */
+  protected void grow()
+  {
+    int capacity = 2 * _times.length;
+
+    long[] times = new long[capacity];
+    System.arraycopy(_times, 0, times, 0, _size);
+    _times = times;
+
+    long[] coords = new long[capacity];
+    System.arraycopy(_coords, 0, coords, 0, _size);
+    _coords = coords;
+
+    short[] types = new short[capacity];
+    System.arraycopy(_types, 0, types, 0, _size);
+    _types = types;
+
+    byte[] flags = new byte[capacity];
+    System.arraycopy(_flags, 0, flags, 0, _size);
+    _flags = flags;
+  } // grow
+
+  // --------------------------------------------------------------------------
+  /**
+   * The bit in _flags that is set for creation of a block.
+   */
+  protected static final byte CREATION         = 1;
+
+  /**
+   * The initial capacity of the columns.
+   */
+  protected static final int  INITIAL_CAPACITY = 16;
+
+  /**
+   * The time stamp of each edit.
+   */
+  protected long[]            _times;
+
+  /**
+   * The packed coordinates of each edit.
+   */
+  protected long[]            _coords;
+
+  /**
+   * The {@link BlockType} index of each edit; at most 4096.
+   */
+  protected short[]           _types;
+
+  /**
+   * Flag bits of each edit: CREATION.
+   */
+  protected byte[]            _flags;
+
+  /**
+   * The number of edits stored.
+   */
+  protected int               _size;
+} // class BlockEditStore
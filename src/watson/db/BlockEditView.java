@@ -0,0 +1,167 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * A flyweight that presents one edit in a {@link PlayerEditSet} through the
+ * same attributes as a {@link BlockEdit}, without creating one.
+ * 
+ * A single view can be moved from edit to edit with {@link #setRow(int)}, for
+ * example while iterating over the edits in time order with
+ * {@link PlayerEditSet#getOrderedRows()}.
+ */
+public class BlockEditView
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param editsForPlayer the set of edits to view.
+   */
+  public BlockEditView(PlayerEditSet editsForPlayer)
+  {
+    _playerEditSet = editsForPlayer;
+    _store = editsForPlayer.getStore();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move to the specified edit.
+   * 
+   * @param row the row of the edit in the {@link BlockEditStore}.
+   * @return this view.
+   */
+  public BlockEditView setRow(int row)
+  {
+    _row = row;
+    return this;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the row of the current edit.
+   * 
+   * @return the row of the current edit.
+   */
+  public int getRow()
+  {
+    return _row;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time stamp of the edit.
+   * 
+   * @return the time stamp of the edit.
+   */
+  public long getTime()
+  {
+    return _store.getTime(_row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the name of the player who performed the edit.
+   * 
+   * @return the name of the player who performed the edit.
+   */
+  public String getPlayer()
+  {
+    return _playerEditSet.getPlayer();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the edit was creation of a block, false if destruction.
+   * 
+   * @return true if the edit was creation of a block, false if destruction.
+   */
+  public boolean isCreation()
+  {
+    return _store.isCreation(_row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the x coordinate of the block.
+   * 
+   * @return the x coordinate of the block.
+   */
+  public int getX()
+  {
+    return _store.getX(_row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the y coordinate of the block.
+   * 
+   * @return the y coordinate of the block.
+   */
+  public int getY()
+  {
+    return _store.getY(_row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the z coordinate of the block.
+   * 
+   * @return the z coordinate of the block.
+   */
+  public int getZ()
+  {
+    return _store.getZ(_row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the type of the block.
+   * 
+   * @return the type of the block.
+   */
+  public BlockType getType()
+  {
+    return _store.getType(_row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link PlayerEditSet} that contains the edit.
+   * 
+   * @return the {@link PlayerEditSet} that contains the edit.
+   */
+  public PlayerEditSet getPlayerEditSet()
+  {
+    return _playerEditSet;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new {@link BlockEdit} with the attributes of the edit, for use
+   * where the edit must outlive this view.
+   * 
+   * @return a new {@link BlockEdit}.
+   */
+  public BlockEdit toBlockEdit()
+  {
+    BlockEdit edit = _store.getBlockEdit(_row, getPlayer());
+    edit.playerEditSet = _playerEditSet;
+    return edit;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The set of edits viewed.
+   */
+  protected PlayerEditSet  _playerEditSet;
+
+  /**
+   * The columns of _playerEditSet.
+   */
+  protected BlockEditStore _store;
+
+  /**
+   * The row of the current edit.
+   */
+  protected int            _row;
+} // class BlockEditView
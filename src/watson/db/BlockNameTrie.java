@@ -0,0 +1,255 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * A map from block names to {@link BlockType}s that ignores case, spaces and
+ * underscores, so that "diamond ore", "DiamondOre" and "diamond_ore" are the
+ * same name.
+ * 
+ * Names are stored in a trie of normalised characters. Lookups walk a region
+ * of a CharSequence directly, normalising each character as it goes, so that
+ * a name can be looked up in a line of chat without making a substring or a
+ * lower case copy of it.
+ * 
+ * The edges of the trie are held in a single open addressing hash table keyed
+ * on the parent node and character, so that each character of a lookup costs
+ * one probe, usually, whatever the number of children of the node.
+ */
+public class BlockNameTrie
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * Creates an empty trie containing just the root node.
+   */
+  public BlockNameTrie()
+  {
+    // Do nothing.
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Register a name for a BlockType.
+   * 
+   * Where two names are the same once normalised, the BlockType with the lower
+   * index keeps the name, so that where BlockTypes are registered using a list
+   * of data values, only the lowest data value gets the name.
+   * 
+   * @param name the name.
+   * @param blockType the BlockType.
+   */
+  public void add(CharSequence name, BlockType blockType)
+  {
+    int node = 0;
+    for (int i = 0; i < name.length(); ++i)
+    {
+      char c = normalise(name.charAt(i));
+      if (c != 0)
+      {
+        int child = findChild(node, c);
+        node = (child < 0) ? addChild(node, c) : child;
+      }
+    }
+
+    BlockType oldBlockType = _types[node];
+    if (oldBlockType == null || blockType.getIndex() < oldBlockType.getIndex())
+    {
+      _types[node] = blockType;
+    }
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the BlockType with the name in the specified region of the text.
+   * 
+   * @param text the text containing the name.
+   * @param start the start of the name.
+   * @param end the end of the name (exclusive).
+   * @return the BlockType, or null if the name is not registered.
+   */
+  public BlockType get(CharSequence text, int start, int end)
+  {
+    int node = 0;
+    for (int i = start; i < end; ++i)
+    {
+      char c = normalise(text.charAt(i));
+      if (c != 0)
+      {
+        node = findChild(node, c);
+        if (node < 0)
+        {
+          return null;
+        }
+      }
+    }
+    return _types[node];
+  } // get
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the normalised form of a character of a name.
+   * 
+   * @param c the character.
+   * @return the lower case character, or 0 if it is a separator and should be
+   *         ignored.
+   */
+  protected static char normalise(char c)
+  {
+    if (c >= 'A' && c <= 'Z')
+    {
+      return (char) (c + ('a' - 'A'));
+    }
+    else if (c == ' ' || c == '_')
+    {
+      return 0;
+    }
+    else if (c < 128)
+    {
+      return c;
+    }
+    else
+    {
+      return Character.toLowerCase(c);
+    }
+  } // normalise
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the child of a node that is reached by the specified character.
+   * 
+   * @param node the parent node.
+   * @param c the normalised character.
+   * @return the child node, or -1 if there is none.
+   */
+  protected int findChild(int node, char c)
+  {
+    long key = edgeKey(node, c);
+    int mask = _edgeKeys.length - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask)
+    {
+      long slotKey = _edgeKeys[slot];
+      if (slotKey == key)
+      {
+        return _edgeChildren[slot];
+      }
+      else if (slotKey == 0)
+      {
+        return -1;
+      }
+    }
+  } // findChild
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a child node reached by the specified character.
+   * 
+   * @param node the parent node.
+   * @param c the normalised character.
+   * @return the new child node.
+   */
+  protected int addChild(int node, char c)
+  {
+    if (_nodeCount == _types.length)
+    {
+      BlockType[] types = new BlockType[2 * _nodeCount];
+      System.arraycopy(_types, 0, types, 0, _nodeCount);
+      _types = types;
+    }
+    int child = _nodeCount++;
+
+    // Keep the table at most half full.
+    if (2 * _nodeCount > _edgeKeys.length)
+    {
+      long[] oldKeys = _edgeKeys;
+      int[] oldChildren = _edgeChildren;
+      _edgeKeys = new long[2 * oldKeys.length];
+      _edgeChildren = new int[2 * oldKeys.length];
+      for (int i = 0; i < oldKeys.length; ++i)
+      {
+        if (oldKeys[i] != 0)
+        {
+          putEdge(oldKeys[i], oldChildren[i]);
+        }
+      }
+    }
+    putEdge(edgeKey(node, c), child);
+    return child;
+  } // addChild
+
+  // --------------------------------------------------------------------------
+  /**
+   * Store an edge in the first free slot of the hash table for its key.
+   * 
+   * @param key the key of the edge, which is not already in the table.
+   * @param child the child node.
+   */
+  protected void putEdge(long key, int child)
+  {
+    int mask = _edgeKeys.length - 1;
+    int slot = hash(key) & mask;
+    while (_edgeKeys[slot] != 0)
+    {
+      slot = (slot + 1) & mask;
+    }
+    _edgeKeys[slot] = key;
+    _edgeChildren[slot] = child;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the hash table key of an edge.
+   * 
+   * Since normalised characters are never 0, no key is 0, which marks an empty
+   * slot.
+   * 
+   * @param node the parent node.
+   * @param c the normalised character.
+   * @return the key.
+   */
+  protected static long edgeKey(int node, char c)
+  {
+    return ((long) node << 16) | c;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the hash of an edge key.
+   * 
+   * @param key the key.
+   * @return the hash, whose high bits are as well mixed as its low bits.
+   */
+  protected static int hash(long key)
+  {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial number of nodes allocated; enough for the default
+   * "blocks.yml".
+   */
+  protected static final int INITIAL_CAPACITY = 4096;
+
+  /**
+   * The BlockType with the name that ends at each node, or null.
+   */
+  protected BlockType[]      _types           = new BlockType[INITIAL_CAPACITY];
+
+  /**
+   * The number of nodes; node 0 is the root.
+   */
+  protected int              _nodeCount       = 1;
+
+  /**
+   * The keys of the edges (see edgeKey()) in an open addressing hash table with
+   * linear probing; 0 marks an empty slot. The length is a power of two.
+   */
+  protected long[]           _edgeKeys        = new long[2 * INITIAL_CAPACITY];
+
+  /**
+   * The child node of the edge in the corresponding slot of _edgeKeys.
+   */
+  protected int[]            _edgeChildren    = new int[2 * INITIAL_CAPACITY];
+} // class BlockNameTrie
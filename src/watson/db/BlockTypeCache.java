@@ -0,0 +1,279 @@
+package watson.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import watson.model.ARGB;
+import watson.model.BlockModel;
+import watson.model.BlockModelRegistry;
+
+// ----------------------------------------------------------------------------
+/**
+ * A binary snapshot of the {@link BlockType}s built from "blocks.yml", which
+ * {@link BlockTypeRegistry} loads at startup instead of parsing the YAML when
+ * the YAML has not changed since the snapshot was written.
+ * 
+ * The file is keyed by the SHA-1 hash of the YAML, so editing "blocks.yml" (or
+ * installing a new version of the mod with a different default) invalidates
+ * it. Integers marked "varint" use the encodings of {@link BinaryEditFormat}.
+ * 
+ * <pre>
+ * int     MAGIC
+ * varint  VERSION
+ * varint  length of hash, then the hash bytes
+ * varlong time taken to parse the YAML when this file was written (us)
+ * varint  number of block types, then for each, in index order:
+ *           varint  index
+ *           varint  number of names, then each name as UTF
+ *           float   line width
+ *           int     ARGB colour
+ *           UTF     model name
+ *           float   x1, y1, z1, x2, y2, z2 bounds
+ * </pre>
+ */
+public class BlockTypeCache
+{
+  // --------------------------------------------------------------------------
+  /**
+   * The first four bytes of the file: "WBTC".
+   */
+  public static final int MAGIC           = 0x57425443;
+
+  /**
+   * The current version of the file format. Increment this whenever the format
+   * or the interpretation of "blocks.yml" changes, so that old snapshots are
+   * ignored.
+   */
+  public static final int VERSION         = 1;
+
+  /**
+   * The largest hash length accepted when reading; more than any digest.
+   */
+  public static final int MAX_HASH_LENGTH = 64;
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the hash of the YAML source that keys the snapshot.
+   * 
+   * @param source the bytes of the YAML file.
+   * @return the SHA-1 hash.
+   * @throws IOException if the hash algorithm is not available.
+   */
+  public static byte[] hash(byte[] source)
+    throws IOException
+  {
+    try
+    {
+      return MessageDigest.getInstance("SHA-1").digest(source);
+    }
+    catch (NoSuchAlgorithmException ex)
+    {
+      throw new IOException("SHA-1 is not available", ex);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param file the snapshot file.
+   */
+  public BlockTypeCache(File file)
+  {
+    _file = file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the block types from the snapshot file, if it exists and was written
+   * from YAML with the specified hash.
+   * 
+   * Lengths and indices are checked as they are read, so that a damaged file
+   * is reported as malformed before any of its block types are used.
+   * 
+   * @param hash the hash of the current YAML.
+   * @param maxIndex the largest valid block type index, which is that of the
+   *          "unknown" block type; the snapshot must define it.
+   * @return the block types, in index order, or null if there is no usable
+   *         snapshot.
+   * @throws IOException if the file can't be read or is malformed.
+   */
+  public ArrayList<BlockType> read(byte[] hash, int maxIndex)
+    throws IOException
+  {
+    if (!_file.canRead())
+    {
+      return null;
+    }
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+      new FileInputStream(_file)));
+    try
+    {
+      if (in.readInt() != MAGIC
+          || BinaryEditFormat.readVarInt(in) != VERSION)
+      {
+        return null;
+      }
+      int hashLength = BinaryEditFormat.readVarInt(in);
+      if (hashLength > MAX_HASH_LENGTH)
+      {
+        throw new IOException("bad hash length: " + hashLength);
+      }
+      byte[] fileHash = new byte[hashLength];
+      in.readFully(fileHash);
+      if (!Arrays.equals(fileHash, hash))
+      {
+        return null;
+      }
+      _parseMicros = BinaryEditFormat.readVarLong(in);
+
+      int count = BinaryEditFormat.readVarInt(in);
+      if (count > maxIndex + 1)
+      {
+        throw new IOException("bad block type count: " + count);
+      }
+      ArrayList<BlockType> blockTypes = new ArrayList<BlockType>(count);
+      boolean hasUnknown = false;
+      for (int i = 0; i < count; ++i)
+      {
+        BlockType blockType = new BlockType();
+        int index = BinaryEditFormat.readVarInt(in);
+        if (index > maxIndex)
+        {
+          throw new IOException("bad block type index: " + index);
+        }
+        hasUnknown |= (index == maxIndex);
+        blockType.setIndex(index);
+        int nameCount = BinaryEditFormat.readVarInt(in);
+        for (int n = 0; n < nameCount; ++n)
+        {
+          blockType.addName(in.readUTF());
+        }
+        blockType.setLineWidth(in.readFloat());
+        blockType.setARGB(new ARGB(in.readInt()));
+
+        String modelName = in.readUTF();
+        BlockModel model = BlockModelRegistry.instance.getBlockModel(modelName);
+        if (model == null)
+        {
+          model = BlockModelRegistry.instance.getBlockModel("cuboid");
+        }
+        blockType.setBlockModel(model);
+        blockType.setBounds(in.readFloat(), in.readFloat(), in.readFloat(),
+          in.readFloat(), in.readFloat(), in.readFloat());
+        blockTypes.add(blockType);
+      }
+
+      if (!hasUnknown)
+      {
+        throw new IOException("no unknown block type");
+      }
+      return blockTypes;
+    }
+    finally
+    {
+      in.close();
+    }
+  } // read
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the snapshot file.
+   * 
+   * The file is written under a temporary name and renamed into place, so that
+   * an interrupted write never leaves a truncated snapshot.
+   * 
+   * @param hash the hash of the YAML that the block types were built from.
+   * @param parseMicros the time taken to parse the YAML, in microseconds.
+   * @param blockTypes the block types, in index order.
+   * @throws IOException if the file could not be written.
+   */
+  public void write(byte[] hash, long parseMicros, List<BlockType> blockTypes)
+    throws IOException
+  {
+    File temp = new File(_file.getParentFile(), "." + _file.getName() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(temp)));
+    try
+    {
+      out.writeInt(MAGIC);
+      BinaryEditFormat.writeVarLong(out, VERSION);
+      BinaryEditFormat.writeVarLong(out, hash.length);
+      out.write(hash);
+      BinaryEditFormat.writeVarLong(out, parseMicros);
+
+      BinaryEditFormat.writeVarLong(out, blockTypes.size());
+      for (BlockType blockType : blockTypes)
+      {
+        BinaryEditFormat.writeVarLong(out, blockType.getIndex());
+        BinaryEditFormat.writeVarLong(out, blockType.getNameCount());
+        for (int n = 0; n < blockType.getNameCount(); ++n)
+        {
+          out.writeUTF(blockType.getName(n));
+        }
+        out.writeFloat(blockType.getLineWidth());
+        out.writeInt(blockType.getARGB().getValue());
+        out.writeUTF(blockType.getBlockModel().getName());
+        out.writeFloat(blockType.getX1());
+        out.writeFloat(blockType.getY1());
+        out.writeFloat(blockType.getZ1());
+        out.writeFloat(blockType.getX2());
+        out.writeFloat(blockType.getY2());
+        out.writeFloat(blockType.getZ2());
+      }
+      out.close();
+    }
+    catch (IOException ex)
+    {
+      out.close();
+      temp.delete();
+      throw ex;
+    }
+
+    // As in BlockEditFileWriter.write(), Windows can't rename over a file.
+    if (!temp.renameTo(_file))
+    {
+      if (!_file.delete() || !temp.renameTo(_file))
+      {
+        temp.delete();
+        throw new IOException("could not rename " + temp + " to " + _file);
+      }
+    }
+  } // write
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time that it took to parse the YAML when the snapshot was
+   * written, after a successful {@link #read(byte[], int)}.
+   * 
+   * @return the time in microseconds.
+   */
+  public long getParseMicros()
+  {
+    return _parseMicros;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The snapshot file.
+   */
+  protected File _file;
+
+  /**
+   * The time taken to parse the YAML when the snapshot that was read was
+   * written, in microseconds.
+   */
+  protected long _parseMicros;
+} // class BlockTypeCache
@@ -1,9 +1,14 @@
 package watson.db;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
@@ -22,12 +27,9 @@ import watson.model.BlockModelRegistry;
  * Allow block types to be looked up by ID, (ID,data) tuple or name (from a
  * LogBlock query result).
  * 
- * Where a block is listed with a name containing spaces, synonyms are
- * automatically generated for the same name:
- * <ul>
- * <li>with the spaces removed.</li>
- * <li>with the spaces replaced by underscores.</li>
- * </ul>
+ * Names are matched ignoring case, spaces and underscores, so a name listed as
+ * "birch log" is also recognised as "birchlog" or "birch_log". See
+ * {@link BlockNameTrie}.
  */
 public final class BlockTypeRegistry
 {
@@ -44,22 +46,76 @@ public final class BlockTypeRegistry
   /**
    * Load the BlockType instances from a configuration file or resource in the
    * minecraft.jar file.
+   * 
+   * Parsing the YAML is slow, so the BlockTypes are also saved in a
+   * {@link BlockTypeCache} file, which is loaded instead on subsequent starts
+   * for as long as the YAML is unchanged.
    */
   public void loadBlockTypes()
   {
     try
     {
-      BlockTypeRegistry registry = BlockTypeRegistry.instance;
+      byte[] yaml;
       InputStream in = Controller.getConfigurationStream(BLOCK_TYPES_FILE);
+      if (in == null)
+      {
+        throw new IOException("could not open " + BLOCK_TYPES_FILE);
+      }
       try
       {
-        registry.loadBlockTypes(in);
+        yaml = readFully(in);
       }
       finally
       {
-        if (in != null)
+        in.close();
+      }
+
+      byte[] hash = BlockTypeCache.hash(yaml);
+      BlockTypeCache cache = new BlockTypeCache(new File(
+        Controller.getModDirectory(), BLOCK_TYPES_CACHE_FILE));
+      long start = System.nanoTime();
+      ArrayList<BlockType> cached = null;
+      try
+      {
+        cached = cache.read(hash, MAX_INDEX);
+      }
+      catch (Exception ex)
+      {
+        // Fall back on parsing the YAML, which will also replace the file.
+        Log.exception(Level.WARNING, "error reading block type cache: ", ex);
+      }
+
+      if (cached != null)
+      {
+        for (BlockType blockType : cached)
         {
-          in.close();
+          addBlockType(blockType);
+        }
+        setUnknownBlockTypes();
+        long micros = (System.nanoTime() - start) / 1000;
+        Log.info(String.format(Locale.US,
+          "Loaded block types from cache in %.1f ms, saving %.1f ms of parsing \"%s\".",
+          micros / 1000.0, (cache.getParseMicros() - micros) / 1000.0,
+          BLOCK_TYPES_FILE));
+      }
+      else
+      {
+        loadBlockTypes(new ByteArrayInputStream(yaml));
+        long micros = (System.nanoTime() - start) / 1000;
+        Log.info(String.format(Locale.US, "Parsed \"%s\" in %.1f ms.",
+          BLOCK_TYPES_FILE, micros / 1000.0));
+
+        // Don't cache the results of a malformed file.
+        if (_byIndex[MAX_INDEX] != null)
+        {
+          try
+          {
+            cache.write(hash, micros, getDistinctBlockTypes());
+          }
+          catch (IOException ex)
+          {
+            Log.exception(Level.WARNING, "error writing block type cache: ", ex);
+          }
         }
       }
     }
@@ -105,17 +161,70 @@ public final class BlockTypeRegistry
         addBlockType(unknown);
       }
 
-      // Note: array size is MAX_INDEX+1.
-      for (int i = 0; i < MAX_INDEX; ++i)
-      {
-        if (_byIndex[i] == null)
-        {
-          _byIndex[i] = unknown;
-        }
-      }
+      setUnknownBlockTypes();
     } // (blocks != null)
   } // loadBlockTypes
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set all uninitialised BlockType entries to reference the "unknown" block
+   * type, which must have been added.
+   */
+  private void setUnknownBlockTypes()
+  {
+    BlockType unknown = _byIndex[MAX_INDEX];
+
+    // Note: array size is MAX_INDEX+1.
+    for (int i = 0; i < MAX_INDEX; ++i)
+    {
+      if (_byIndex[i] == null)
+      {
+        _byIndex[i] = unknown;
+      }
+    }
+  } // setUnknownBlockTypes
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the BlockTypes that were added, excluding the references to the
+   * "unknown" block type that fill the gaps between them.
+   * 
+   * @return the BlockTypes, in index order.
+   */
+  private ArrayList<BlockType> getDistinctBlockTypes()
+  {
+    ArrayList<BlockType> blockTypes = new ArrayList<BlockType>();
+    for (int i = 0; i < _byIndex.length; ++i)
+    {
+      if (_byIndex[i] != null && _byIndex[i].getIndex() == i)
+      {
+        blockTypes.add(_byIndex[i]);
+      }
+    }
+    return blockTypes;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the whole of a stream.
+   * 
+   * @param in the stream.
+   * @return the bytes read.
+   * @throws IOException if the stream can't be read.
+   */
+  private static byte[] readFully(InputStream in)
+    throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) > 0)
+    {
+      bytes.write(buffer, 0, count);
+    }
+    return bytes.toByteArray();
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Load a BlockType instance from a YAML map node.
@@ -384,42 +493,12 @@ public final class BlockTypeRegistry
     _byIndex[blockType.getIndex()] = blockType;
     for (int i = 0; i < blockType.getNameCount(); ++i)
     {
-      String name = blockType.getName(i);
-      addBlockTypeName(name, blockType);
-
-      // Where a name contains spaces, add a synonym with the spaces omitted.
-      // Where synonyms are explicitly listed anyway, the map will collapse
-      // duplicates.
-      String noSpaces = name.replaceAll(" ", "");
-      if (!name.equals(noSpaces))
-      {
-        addBlockTypeName(noSpaces, blockType);
-      }
-      String underscores = name.replaceAll(" ", "_");
-      addBlockTypeName(underscores, blockType);
-    } // for
-  } // addBlockType
-
-  // --------------------------------------------------------------------------
-  /**
-   * Register the mapping from name to BlockType.
-   * 
-   * The mapping is only added if there is no pre-existing mapping from the name
-   * to a BlockType, or if the new BlockType has a lower index value than the
-   * pre-existing mapping. This ensures that where BlockTyeps are registered
-   * using a list of data values, only the lowest data value gets the name.
-   * 
-   * @param name the name to register under.
-   * @param blockType the new BlockType.
-   */
-  private void addBlockTypeName(String name, BlockType blockType)
-  {
-    BlockType oldBlockType = _byName.get(name);
-    if (oldBlockType == null || blockType.getIndex() < oldBlockType.getIndex())
-    {
-      _byName.put(name, blockType);
+      // Spaced, unspaced and underscored variants of the name are the same
+      // name to the trie. Where the name is already registered, only the
+      // BlockType with the lowest index keeps it.
+      _byName.add(blockType.getName(i), blockType);
     }
-  }
+  } // addBlockType
 
   // --------------------------------------------------------------------------
   /**
@@ -448,6 +527,18 @@ public final class BlockTypeRegistry
     return _byIndex[(id << 4) | (data & 0x0000000F)];
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of distinct BlockType indices, for sizing arrays indexed
+   * by {@link BlockType#getIndex()}.
+   * 
+   * @return one more than the greatest index.
+   */
+  public int getIndexCount()
+  {
+    return _byIndex.length;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return the BlockType with the specified index.
@@ -473,7 +564,22 @@ public final class BlockTypeRegistry
    */
   public BlockType getBlockTypeByName(String name)
   {
-    BlockType result = _byName.get(name.toLowerCase());
+    return getBlockTypeByName(name, 0, name.length());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the block type whose name is in the specified region of some text
+   * (case insensitive), without copying the name out of the text.
+   * 
+   * @param text the text containing the name, such as a line of chat.
+   * @param start the start of the name.
+   * @param end the end of the name (exclusive).
+   * @return the {@link BlockType}.
+   */
+  public BlockType getBlockTypeByName(CharSequence text, int start, int end)
+  {
+    BlockType result = _byName.get(text, start, end);
     if (result == null)
     {
       // Return the "unknown" BlockType.
@@ -495,7 +601,22 @@ public final class BlockTypeRegistry
    */
   public BlockType getBlockKillTypeByName(String name)
   {
-    BlockType result = _byName.get(name.toLowerCase());
+    return getBlockKillTypeByName(name, 0, name.length());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the block (kill) type whose name is in the specified region of some
+   * text (case insensitive), without copying the name out of the text.
+   * 
+   * @param text the text containing the name, such as a line of chat.
+   * @param start the start of the name.
+   * @param end the end of the name (exclusive).
+   * @return the {@link BlockType}.
+   */
+  public BlockType getBlockKillTypeByName(CharSequence text, int start, int end)
+  {
+    BlockType result = _byName.get(text, start, end);
     if (result == null)
     {
       // Return the "player" BlockKillType.
@@ -556,13 +677,19 @@ public final class BlockTypeRegistry
    * The basename of the file containing the YAML descriptions of all BlockType
    * instances.
    */
-  private static final String            BLOCK_TYPES_FILE   = "blocks.yml";
+  private static final String            BLOCK_TYPES_FILE       = "blocks.yml";
+
+  /**
+   * The basename of the file in the mod directory that caches the BlockTypes
+   * loaded from BLOCK_TYPES_FILE.
+   */
+  private static final String            BLOCK_TYPES_CACHE_FILE = "blocks.cache";
 
   /**
    * The pattern of an all-numeric block type (with optional data value) when
    * parsed by getBlockTypeByName().
    */
-  private static final Pattern           NUMERIC_BLOCK_TYPE = Pattern.compile("(\\d+)(?::(\\d+))?");
+  private static final Pattern           NUMERIC_BLOCK_TYPE     = Pattern.compile("(\\d+)(?::(\\d+))?");
 
   // --------------------------------------------------------------------------
   /**
@@ -572,25 +699,25 @@ public final class BlockTypeRegistry
    * elements that are still null after reading in "blocks.yml" are set to
    * reference this element.
    */
-  private static final int               MAX_INDEX          = 4096;
+  private static final int               MAX_INDEX              = 4096;
 
   /**
    * Default alpha colour component if not specified in "blocks.yml".
    */
-  private static final int               DEFAULT_ALPHA      = (int) (0.8 * 255);
+  private static final int               DEFAULT_ALPHA          = (int) (0.8 * 255);
 
   /**
    * Default cuboid bounds when loaded from "blocks.yml".
    */
-  private static final ArrayList<Number> DEFAULT_BOUNDS     = new ArrayList<Number>(Arrays.asList(
-                                                              0.005, 0.005, 0.005, 0.995, 0.995, 0.995));
+  private static final ArrayList<Number> DEFAULT_BOUNDS         = new ArrayList<Number>(Arrays.asList(
+                                                                  0.005, 0.005, 0.005, 0.995, 0.995, 0.995));
   /**
    * An array of BlockType instances accessed by index.
    */
-  private BlockType[]                    _byIndex           = new BlockType[MAX_INDEX + 1];
+  private BlockType[]                    _byIndex               = new BlockType[MAX_INDEX + 1];
 
   /**
    * A map from name (primary or alias) to BlockType instance.
    */
-  private Map<String, BlockType>         _byName            = new HashMap<String, BlockType>();
+  private BlockNameTrie                  _byName                = new BlockNameTrie();
 } // class BlockTypeRegistry
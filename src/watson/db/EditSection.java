@@ -0,0 +1,256 @@
+package watson.db;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import net.minecraft.client.renderer.GLAllocation;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldRenderer;
+
+import org.lwjgl.opengl.GL11;
+
+import watson.Controller;
+import watson.ViewCuller;
+import watson.model.ARGB;
+import watson.model.BlockModel;
+
+// ----------------------------------------------------------------------------
+/**
+ * The edits by one player that fall within a single 16x16x16 block section of
+ * the world, together with a display list containing their compiled outlines.
+ * 
+ * {@link PlayerEditSet} buckets its edits into sections so that outlines can be
+ * culled a whole section at a time, and so that adding an edit only requires
+ * the outlines of one section to be recompiled. The edits are referred to by
+ * their rows in the {@link BlockEditStore} of the {@link PlayerEditSet}.
+ */
+public class EditSection
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param store the store containing the edits.
+   * @param sectionX the x coordinate of the section (block x >> 4).
+   * @param sectionY the y coordinate of the section (block y >> 4).
+   * @param sectionZ the z coordinate of the section (block z >> 4).
+   */
+  public EditSection(BlockEditStore store, int sectionX, int sectionY,
+                     int sectionZ)
+  {
+    _store = store;
+    _minX = sectionX << 4;
+    _minY = sectionY << 4;
+    _minZ = sectionZ << 4;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the key identifying the section containing the specified block.
+   * 
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @return the key identifying the section containing the specified block.
+   */
+  public static long getKey(int x, int y, int z)
+  {
+    return IntCoord.pack(x >> 4, y >> 4, z >> 4);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to this section.
+   * 
+   * @param row the row of the edit in the store, which must lie within the
+   *          section.
+   */
+  public void addBlockEdit(int row)
+  {
+    if (_count == _rows.length)
+    {
+      int[] rows = new int[2 * _count];
+      System.arraycopy(_rows, 0, rows, 0, _count);
+      _rows = rows;
+    }
+    _rows[_count++] = row;
+    _dirty = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the outlines of all edits in this section that are in the current
+   * time window, unless the section is culled.
+   */
+  public void drawOutlines()
+  {
+    // Outlines can extend slightly beyond the block (e.g. enlarged cuboids),
+    // so pad the bounds by a block.
+    if (ViewCuller.instance.isBoxVisible(_minX - 1, _minY - 1, _minZ - 1,
+      _minX + 17, _minY + 17, _minZ + 17, _count))
+    {
+      TimeWindow window = Controller.instance.getDisplaySettings().getTimeWindow();
+      if (_dirty || window != _compiledWindow)
+      {
+        compileOutlines(window);
+      }
+      GL11.glCallList(_displayList);
+    }
+  } // drawOutlines
+
+  // --------------------------------------------------------------------------
+  /**
+   * Free the display list holding the compiled outlines.
+   * 
+   * This must be called, from the render thread, when the section is
+   * discarded.
+   */
+  public void releaseOutlines()
+  {
+    if (_displayList != 0)
+    {
+      GLAllocation.deleteDisplayLists(_displayList);
+      _displayList = 0;
+    }
+    _dirty = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Compile the wireframe outlines of all edits in the specified time window
+   * into the display list.
+   * 
+   * The edits are grouped by line width, so that there is one GL_LINES batch
+   * per distinct line width. Within a batch, blocks of the same type (and
+   * hence colour) are emitted consecutively.
+   * 
+   * @param window the time window.
+   */
+  protected void compileOutlines(TimeWindow window)
+  {
+    // Select the rows in the window.
+    int[] rows = new int[_count];
+    int count = 0;
+    for (int i = 0; i < _count; ++i)
+    {
+      if (window.contains(_store.getTime(_rows[i])))
+      {
+        rows[count++] = _rows[i];
+      }
+    }
+
+    // Rank the distinct line widths in ascending order.
+    TreeMap<Float, Integer> widthRanks = new TreeMap<Float, Integer>();
+    for (int i = 0; i < count; ++i)
+    {
+      widthRanks.put(_store.getType(rows[i]).getLineWidth(), 0);
+    }
+    int rank = 0;
+    for (Float width : widthRanks.keySet())
+    {
+      widthRanks.put(width, rank++);
+    }
+
+    // Sort the rows by line width rank, then type index.
+    long[] keys = new long[count];
+    for (int i = 0; i < count; ++i)
+    {
+      int row = rows[i];
+      int typeIndex = _store.getTypeIndex(row);
+      long widthRank = widthRanks.get(_store.getType(row).getLineWidth());
+      keys[i] = (widthRank << 48) | ((long) typeIndex << 32) | row;
+    }
+    Arrays.sort(keys);
+
+    if (_displayList == 0)
+    {
+      _displayList = GLAllocation.generateDisplayLists(1);
+    }
+
+    final Tessellator tess = Tessellator.getInstance();
+    final WorldRenderer wr = tess.getWorldRenderer();
+    GL11.glNewList(_displayList, GL11.GL_COMPILE);
+    int i = 0;
+    while (i < count)
+    {
+      // Start a batch of all types with the same line width.
+      long widthRank = keys[i] >>> 48;
+      BlockType type = _store.getType((int) keys[i]);
+      GL11.glLineWidth(type.getLineWidth());
+      wr.startDrawing(GL11.GL_LINES);
+      while (i < count && (keys[i] >>> 48) == widthRank)
+      {
+        // Emit all blocks of the same type.
+        long typeKey = keys[i] >>> 32;
+        type = _store.getType((int) keys[i]);
+        ARGB colour = type.getARGB();
+        wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
+          colour.getAlpha());
+        BlockModel model = type.getBlockModel();
+        while (i < count && (keys[i] >>> 32) == typeKey)
+        {
+          int row = (int) keys[i];
+          model.addOutline(wr, type, _store.getX(row), _store.getY(row),
+            _store.getZ(row));
+          ++i;
+        }
+      } // while same line width
+      tess.draw();
+    } // while there are edits
+    GL11.glEndList();
+    _dirty = false;
+    _compiledWindow = window;
+  } // compileOutlines
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial capacity of _rows.
+   */
+  protected static final int INITIAL_CAPACITY = 8;
+
+  /**
+   * The store containing the edits.
+   */
+  protected BlockEditStore   _store;
+
+  /**
+   * The minimum x coordinate of blocks in this section.
+   */
+  protected int              _minX;
+
+  /**
+   * The minimum y coordinate of blocks in this section.
+   */
+  protected int              _minY;
+
+  /**
+   * The minimum z coordinate of blocks in this section.
+   */
+  protected int              _minZ;
+
+  /**
+   * The rows of the edits in this section, in the order they were added.
+   */
+  protected int[]            _rows            = new int[INITIAL_CAPACITY];
+
+  /**
+   * The number of edits in this section.
+   */
+  protected int              _count;
+
+  /**
+   * The name of the display list containing the compiled outlines of all
+   * edits, or 0 if not yet allocated.
+   */
+  protected int              _displayList;
+
+  /**
+   * True if the display list needs to be recompiled before it is drawn.
+   */
+  protected boolean          _dirty           = true;
+
+  /**
+   * The time window of the edits in the display list.
+   */
+  protected TimeWindow       _compiledWindow;
+} // class EditSection
@@ -0,0 +1,25 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * Receives the {@link BlockEdit}s and {@link Annotation}s read from a save file
+ * by {@link BlockEditFileParser}, in the order that they appear in the file.
+ */
+public interface IBlockEditFileHandler
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Called when an edit has been read.
+   * 
+   * @param edit the edit.
+   */
+  public void onBlockEdit(BlockEdit edit);
+
+  // --------------------------------------------------------------------------
+  /**
+   * Called when an annotation has been read.
+   * 
+   * @param annotation the annotation.
+   */
+  public void onAnnotation(Annotation annotation);
+}
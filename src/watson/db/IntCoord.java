@@ -150,6 +150,65 @@ public class IntCoord
     return (_y << 24) ^ _x ^ (_z << 15);
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Pack the specified block coordinates into a single long, suitable for use
+   * as a hash key without allocating an {@link IntCoord}.
+   * 
+   * The layout matches that used by Minecraft for block positions: 26 bits of
+   * x, 12 bits of y and 26 bits of z, which covers the full extent of the
+   * world (+/-30 million blocks horizontally).
+   * 
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
+   * @return the packed coordinates.
+   */
+  public static long pack(int x, int y, int z)
+  {
+    return ((x & PACKED_XZ_MASK) << 38) | ((y & PACKED_Y_MASK) << 26)
+           | (z & PACKED_XZ_MASK);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the x coordinate from coordinates packed by
+   * {@link #pack(int, int, int)}.
+   * 
+   * @param packed the packed coordinates.
+   * @return the x coordinate.
+   */
+  public static int unpackX(long packed)
+  {
+    return (int) (packed >> 38);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the y coordinate from coordinates packed by
+   * {@link #pack(int, int, int)}.
+   * 
+   * @param packed the packed coordinates.
+   * @return the y coordinate.
+   */
+  public static int unpackY(long packed)
+  {
+    return (int) ((packed << 26) >> 52);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the z coordinate from coordinates packed by
+   * {@link #pack(int, int, int)}.
+   * 
+   * @param packed the packed coordinates.
+   * @return the z coordinate.
+   */
+  public static int unpackZ(long packed)
+  {
+    return (int) ((packed << 38) >> 38);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * @see java.lang.Object#toString()
@@ -161,6 +220,16 @@ public class IntCoord
   }
 
   // --------------------------------------------------------------------------
+  /**
+   * Mask of the bits of the x and z coordinates retained by pack().
+   */
+  protected static final long PACKED_XZ_MASK = (1L << 26) - 1;
+
+  /**
+   * Mask of the bits of the y coordinate retained by pack().
+   */
+  protected static final long PACKED_Y_MASK  = (1L << 12) - 1;
+
   /**
    * The x coordinate.
    */
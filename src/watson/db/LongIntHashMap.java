@@ -0,0 +1,212 @@
+package watson.db;
+
+import java.util.Arrays;
+
+// ----------------------------------------------------------------------------
+/**
+ * A hash map from long keys to non-negative int values, stored in primitive
+ * arrays with open addressing, so that no object is allocated per entry.
+ * 
+ * This is used to index edits by their coordinates, packed by
+ * {@link IntCoord#pack(int, int, int)}, where a HashMap&lt;Long, ...&gt; would
+ * spend around 60 bytes on each entry.
+ * 
+ * Entries cannot be removed individually; use {@link #clear()}.
+ */
+public class LongIntHashMap
+{
+  // --------------------------------------------------------------------------
+  /**
+   * The value returned by {@link #get(long)} when there is no entry.
+   */
+  public static final int NO_VALUE = -1;
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   */
+  public LongIntHashMap()
+  {
+    Arrays.fill(_values, NO_VALUE);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the value associated with the specified key.
+   * 
+   * @param key the key.
+   * @return the value, or NO_VALUE if there is none.
+   */
+  public int get(long key)
+  {
+    int mask = _keys.length - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask)
+    {
+      int value = _values[slot];
+      if (value == NO_VALUE || _keys[slot] == key)
+      {
+        return value;
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Associate a value with the specified key, replacing any previous value.
+   * 
+   * @param key the key.
+   * @param value the value, which must not be negative.
+   */
+  public void put(long key, int value)
+  {
+    if (value < 0)
+    {
+      throw new IllegalArgumentException("negative value: " + value);
+    }
+
+    int mask = _keys.length - 1;
+    int slot = hash(key) & mask;
+    while (_values[slot] != NO_VALUE && _keys[slot] != key)
+    {
+      slot = (slot + 1) & mask;
+    }
+
+    if (_values[slot] == NO_VALUE)
+    {
+      ++_size;
+    }
+    _keys[slot] = key;
+    _values[slot] = value;
+
+    // Keep the load factor at or below 1/2.
+    if (2 * _size > _keys.length)
+    {
+      rehash(2 * _keys.length);
+    }
+  } // put
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of entries.
+   * 
+   * @return the number of entries.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all entries, keeping the current capacity.
+   */
+  public void clear()
+  {
+    Arrays.fill(_values, NO_VALUE);
+    _size = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of slots, for iterating over the entries with
+   * {@link #getKeyAt(int)} and {@link #getValueAt(int)}.
+   * 
+   * @return the number of slots.
+   */
+  public int getCapacity()
+  {
+    return _keys.length;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the key in the specified slot, which is only meaningful if
+   * {@link #getValueAt(int)} is not NO_VALUE.
+   * 
+   * @param slot the slot, in the range [0,getCapacity()).
+   * @return the key.
+   */
+  public long getKeyAt(int slot)
+  {
+    return _keys[slot];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the value in the specified slot.
+   * 
+   * @param slot the slot, in the range [0,getCapacity()).
+   * @return the value, or NO_VALUE if the slot is empty.
+   */
+  public int getValueAt(int slot)
+  {
+    return _values[slot];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the hash of a key.
+   * 
+   * Packed coordinates differ mostly in their low bits, so the bits are mixed
+   * before being masked to a slot.
+   * 
+   * @param key the key.
+   * @return the hash.
+   */
+  protected static int hash(long key)
+  {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move all entries into new arrays with the specified number of slots.
+   * 
+   * @param capacity the new number of slots, a power of 2.
+   */
+  protected void rehash(int capacity)
+  {
+    long[] keys = _keys;
+    int[] values = _values;
+    _keys = new long[capacity];
+    _values = new int[capacity];
+    Arrays.fill(_values, NO_VALUE);
+
+    int mask = capacity - 1;
+    for (int i = 0; i < keys.length; ++i)
+    {
+      if (values[i] != NO_VALUE)
+      {
+        int slot = hash(keys[i]) & mask;
+        while (_values[slot] != NO_VALUE)
+        {
+          slot = (slot + 1) & mask;
+        }
+        _keys[slot] = keys[i];
+        _values[slot] = values[i];
+      }
+    }
+  } // rehash
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial number of slots; a power of 2.
+   */
+  protected static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The key in each slot.
+   */
+  protected long[]           _keys            = new long[INITIAL_CAPACITY];
+
+  /**
+   * The value in each slot, or NO_VALUE if the slot is empty.
+   */
+  protected int[]            _values          = new int[INITIAL_CAPACITY];
+
+  /**
+   * The number of entries.
+   */
+  protected int              _size;
+} // class LongIntHashMap
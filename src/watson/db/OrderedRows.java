@@ -0,0 +1,373 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * The rows of the edits in a {@link BlockEditStore}, kept in ascending order
+ * by {@link BlockEditStore#compare(BlockEditStore, int, BlockEditStore, int)}
+ * with no two edits equal.
+ * 
+ * The rows are held in a list of fixed size chunks, like the leaves of a
+ * B+-tree: a chunk is found by binary search on the last row of each chunk
+ * and only the rows of that one chunk are moved on insertion. A full chunk is
+ * split in two, except when the row goes before the first or after the last
+ * row, in which case a new chunk is started. LogBlock results arrive in
+ * descending order within a page and mostly in one direction from page to
+ * page, so nearly all insertions are at one end and take constant time.
+ * 
+ * Iterate over the rows in order with nested loops over
+ * {@link #getChunkCount()} and {@link #getChunkSize(int)}. Since the rows are
+ * in time order, the position of the first edit at or after a given time is
+ * found by binary search with {@link #findChunkByTime(long)} and
+ * {@link #findIndexByTime(int, long)}.
+ */
+public class OrderedRows
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param store the store containing the edits, which is used to compare
+   *          them.
+   */
+  public OrderedRows(BlockEditStore store)
+  {
+    _store = store;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Insert a row in order, unless an equal edit is already present.
+   * 
+   * @param row the row of the edit in the store.
+   * @return true if the row was inserted, or false if an equal edit was
+   *         already present.
+   */
+  public boolean add(int row)
+  {
+    if (_size == 0)
+    {
+      insertChunk(0);
+      insertIntoChunk(0, 0, row);
+      return true;
+    }
+
+    // Fast path: after the most recent edit.
+    int last = _chunkCount - 1;
+    int cmp = compare(row, _chunks[last][_chunkSizes[last] - 1]);
+    if (cmp >= 0)
+    {
+      if (cmp == 0)
+      {
+        return false;
+      }
+      if (_chunkSizes[last] == CHUNK_CAPACITY)
+      {
+        insertChunk(++last);
+      }
+      insertIntoChunk(last, _chunkSizes[last], row);
+      return true;
+    }
+
+    int chunk = findChunk(row);
+    int index = findInChunk(chunk, row);
+    if (index >= 0)
+    {
+      return false;
+    }
+    index = -(index + 1);
+
+    if (_chunkSizes[chunk] == CHUNK_CAPACITY)
+    {
+      if (index == 0)
+      {
+        // Goes between the previous chunk and this one; start a new chunk
+        // rather than splitting, so that runs of descending rows fill it.
+        insertChunk(chunk);
+      }
+      else
+      {
+        splitChunk(chunk);
+        int size = _chunkSizes[chunk];
+        if (index > size)
+        {
+          ++chunk;
+          index -= size;
+        }
+      }
+    }
+    insertIntoChunk(chunk, index, row);
+    return true;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of rows.
+   * 
+   * @return the number of rows.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of chunks.
+   * 
+   * @return the number of chunks.
+   */
+  public int getChunkCount()
+  {
+    return _chunkCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the specified chunk of rows.
+   * 
+   * Only the first {@link #getChunkSize(int)} elements are rows. Consider the
+   * returned array immutable.
+   * 
+   * @param chunk the index of the chunk, in the range [0,getChunkCount()).
+   * @return the rows in the chunk.
+   */
+  public int[] getChunk(int chunk)
+  {
+    return _chunks[chunk];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of rows in the specified chunk.
+   * 
+   * @param chunk the index of the chunk, in the range [0,getChunkCount()).
+   * @return the number of rows in the chunk; never 0.
+   */
+  public int getChunkSize(int chunk)
+  {
+    return _chunkSizes[chunk];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index of the first chunk containing an edit at or after the
+   * specified time.
+   * 
+   * @param time the time in milliseconds since epoch.
+   * @return the index of the chunk, or getChunkCount() if all edits are before
+   *         the time.
+   */
+  public int findChunkByTime(long time)
+  {
+    int low = 0;
+    int high = _chunkCount;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (_store.getTime(_chunks[mid][_chunkSizes[mid] - 1]) < time)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  } // findChunkByTime
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the position in the specified chunk of the first edit at or after
+   * the specified time.
+   * 
+   * @param chunk the index of the chunk, in the range [0,getChunkCount()).
+   * @param time the time in milliseconds since epoch.
+   * @return the position in the chunk, or getChunkSize(chunk) if all edits in
+   *         the chunk are before the time.
+   */
+  public int findIndexByTime(int chunk, long time)
+  {
+    int[] rows = _chunks[chunk];
+    int low = 0;
+    int high = _chunkSizes[chunk];
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (_store.getTime(rows[mid]) < time)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  } // findIndexByTime
+
+  // --------------------------------------------------------------------------
+  /**
+   * Compare the edits in two rows of the store.
+   * 
+   * @param lRow the left row.
+   * @param rRow the right row.
+   * @return +ve if (l > r); -ve if (l < r); 0 if (l == r)
+   */
+  protected int compare(int lRow, int rRow)
+  {
+    return BlockEditStore.compare(_store, lRow, _store, rRow);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index of the first chunk whose last row is not less than the
+   * specified row.
+   * 
+   * @param row the row; must not be greater than the last row of the last
+   *          chunk.
+   * @return the index of the chunk.
+   */
+  protected int findChunk(int row)
+  {
+    int low = 0;
+    int high = _chunkCount - 1;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (compare(_chunks[mid][_chunkSizes[mid] - 1], row) < 0)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  } // findChunk
+
+  // --------------------------------------------------------------------------
+  /**
+   * Find the position of an edit equal to the specified row in a chunk.
+   * 
+   * @param chunk the index of the chunk.
+   * @param row the row.
+   * @return the position of an equal edit if there is one; otherwise, -(the
+   *         insertion position) - 1.
+   */
+  protected int findInChunk(int chunk, int row)
+  {
+    int[] rows = _chunks[chunk];
+    int low = 0;
+    int high = _chunkSizes[chunk] - 1;
+    while (low <= high)
+    {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(rows[mid], row);
+      if (cmp < 0)
+      {
+        low = mid + 1;
+      }
+      else if (cmp > 0)
+      {
+        high = mid - 1;
+      }
+      else
+      {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  } // findInChunk
+
+  // --------------------------------------------------------------------------
+  /**
+   * Insert a row at the specified position in a chunk that is not full.
+   * 
+   * @param chunk the index of the chunk.
+   * @param index the position in the chunk.
+   * @param row the row.
+   */
+  protected void insertIntoChunk(int chunk, int index, int row)
+  {
+    int[] rows = _chunks[chunk];
+    System.arraycopy(rows, index, rows, index + 1, _chunkSizes[chunk] - index);
+    rows[index] = row;
+    ++_chunkSizes[chunk];
+    ++_size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Insert a new, empty chunk at the specified index.
+   * 
+   * @param chunk the index of the new chunk.
+   */
+  protected void insertChunk(int chunk)
+  {
+    if (_chunkCount == _chunks.length)
+    {
+      int[][] chunks = new int[2 * _chunkCount][];
+      System.arraycopy(_chunks, 0, chunks, 0, _chunkCount);
+      _chunks = chunks;
+
+      int[] chunkSizes = new int[2 * _chunkCount];
+      System.arraycopy(_chunkSizes, 0, chunkSizes, 0, _chunkCount);
+      _chunkSizes = chunkSizes;
+    }
+    System.arraycopy(_chunks, chunk, _chunks, chunk + 1, _chunkCount - chunk);
+    System.arraycopy(_chunkSizes, chunk, _chunkSizes, chunk + 1, _chunkCount
+                                                                 - chunk);
+    _chunks[chunk] = new int[CHUNK_CAPACITY];
+    _chunkSizes[chunk] = 0;
+    ++_chunkCount;
+  } // insertChunk
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move the upper half of the rows in a full chunk to a new chunk after it.
+   * 
+   * @param chunk the index of the chunk.
+   */
+  protected void splitChunk(int chunk)
+  {
+    insertChunk(chunk + 1);
+    int half = CHUNK_CAPACITY / 2;
+    System.arraycopy(_chunks[chunk], half, _chunks[chunk + 1], 0,
+      CHUNK_CAPACITY - half);
+    _chunkSizes[chunk] = half;
+    _chunkSizes[chunk + 1] = CHUNK_CAPACITY - half;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum number of rows in a chunk; 2KB of rows.
+   */
+  protected static final int CHUNK_CAPACITY = 512;
+
+  /**
+   * The store containing the edits.
+   */
+  protected BlockEditStore   _store;
+
+  /**
+   * The chunks of rows, in order; only the first _chunkCount are used.
+   */
+  protected int[][]          _chunks        = new int[4][];
+
+  /**
+   * The number of rows in each chunk.
+   */
+  protected int[]            _chunkSizes    = new int[4];
+
+  /**
+   * The number of chunks.
+   */
+  protected int              _chunkCount;
+
+  /**
+   * The total number of rows.
+   */
+  protected int              _size;
+} // class OrderedRows
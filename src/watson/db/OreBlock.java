@@ -77,13 +77,39 @@ public class OreBlock implements Comparable<OreBlock>
   /**
    * Return the {@link OreDeposit} that includes this block.
    * 
+   * If the deposit to which this block was added has since been merged into
+   * another, the root of the merged deposit is returned and remembered.
+   * 
    * @return the {@link OreDeposit} that includes this block.
    */
   public OreDeposit getDeposit()
   {
+    _deposit = _deposit.find();
     return _deposit;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set the next block in the circular list of blocks in the same deposit.
+   * 
+   * @param next the next block.
+   */
+  protected void setNextInDeposit(OreBlock next)
+  {
+    _nextInDeposit = next;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the next block in the circular list of blocks in the same deposit.
+   * 
+   * @return the next block in the circular list of blocks in the same deposit.
+   */
+  protected OreBlock getNextInDeposit()
+  {
+    return _nextInDeposit;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * @see java.lang.Comparable#compareTo(java.lang.Object)
@@ -138,4 +164,9 @@ public class OreBlock implements Comparable<OreBlock>
    */
   protected OreDeposit _deposit;
 
+  /**
+   * The next block in the circular list of blocks in the same deposit.
+   */
+  protected OreBlock   _nextInDeposit;
+
 } // class OreBlock
\ No newline at end of file
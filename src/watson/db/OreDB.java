@@ -8,6 +8,7 @@ import java.util.logging.Level;
 import watson.Configuration;
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.ViewCuller;
 import watson.analysis.ServerTime;
 import watson.chat.Chat;
 import watson.chat.Colour;
@@ -111,38 +112,32 @@ public class OreDB
             "There are %d ore deposits.", depositCount));
         }
 
-        // Most of the time, there is only a single page of deposits and it is
-        // more efficient therefore to iterate linearly to skip pages.
-        int id = 1;
+        // Look up each deposit on the page by rank, rather than iterating over
+        // all of the deposits on preceding pages.
         int start = 1 + (page - 1) * Controller.PAGE_LINES;
-        int end = start + Controller.PAGE_LINES;
-        outer: for (TypedOreDB db : _db.values())
+        int end = Math.min(start + Controller.PAGE_LINES, depositCount + 1);
+        int id = 1;
+        for (TypedOreDB db : _db.values())
         {
-          for (OreDeposit deposit : db.getOreDeposits())
+          int count = db.getOreDepositCount();
+          for (int i = Math.max(start, id); i < end && i < id + count; ++i)
           {
-            if (id >= start && id < end)
-            {
-              long time = deposit.getTimeStamp();
-              OreBlock block = deposit.getKeyOreBlock();
-              BlockEdit edit = block.getEdit();
-              BlockType type = edit.type;
-              String player = edit.player;
-              String strike = edit.playerEditSet.isVisible() ? "" : "\247m";
-              String line = String.format(Locale.US,
-                "\247%c%s(%3d) %s (% 5d % 3d % 5d) %2d [%2d] %s",
-                _chatColours.get(type).getCode(), strike, id,
-                TimeStamp.formatMonthDayTime(time), block.getLocation().getX(),
-                block.getLocation().getY(), block.getLocation().getZ(),
-                type.getId(), deposit.getBlockCount(), player);
-              Chat.localChat(line);
-            }
-
-            ++id;
-            if (id >= end)
-            {
-              break outer;
-            }
-          } // for all deposits of this ore type
+            OreDeposit deposit = db.getOreDeposits().get(i - id);
+            long time = deposit.getTimeStamp();
+            OreBlock block = deposit.getKeyOreBlock();
+            BlockEdit edit = block.getEdit();
+            BlockType type = edit.type;
+            String player = edit.player;
+            String strike = edit.playerEditSet.isVisible() ? "" : "\247m";
+            String line = String.format(Locale.US,
+              "\247%c%s(%3d) %s (% 5d % 3d % 5d) %2d [%2d] %s",
+              _chatColours.get(type).getCode(), strike, i,
+              TimeStamp.formatMonthDayTime(time), block.getLocation().getX(),
+              block.getLocation().getY(), block.getLocation().getZ(),
+              type.getId(), deposit.getBlockCount(), player);
+            Chat.localChat(line);
+          }
+          id += count;
         } // for all types of deposits
 
         if (page < pages)
@@ -186,16 +181,19 @@ public class OreDB
    */
   public OreDeposit getOreDeposit(int index)
   {
+    // There are a fixed, small number of ore types, so the cost is dominated
+    // by the O(log n) lookup in the TypedOreDB.
     index = limitOreDepositIndex(index);
     for (TypedOreDB db : _db.values())
     {
-      if (index <= db.getOreDepositCount())
+      int count = db.getOreDepositCount();
+      if (index <= count)
       {
-        return db.getOreDeposit(index);
+        return db.getOreDeposits().get(index - 1);
       }
       else
       {
-        index -= db.getOreDepositCount();
+        index -= count;
       }
     } // for
     throw new IllegalStateException("shouldn't happen");
@@ -406,15 +404,19 @@ public class OreDB
         for (OreDeposit deposit : db.getOreDeposits())
         {
           OreBlock block = deposit.getKeyOreBlock();
-          if (block.getEdit().playerEditSet.isVisible())
+          IntCoord loc = block.getLocation();
+          if (block.getEdit().playerEditSet.isVisible()
+              && settings.getTimeWindow().contains(block.getEdit().time)
+              && ViewCuller.instance.isBlockVisible(loc.getX(), loc.getY(),
+                loc.getZ()))
           {
             label.setLength(0);
             label.ensureCapacity(4);
             label.append(id);
             Annotation.drawBillboard(
-              block.getLocation().getX(),
-              block.getLocation().getY(),
-              block.getLocation().getZ(),
+              loc.getX(),
+              loc.getY(),
+              loc.getZ(),
               Configuration.instance.getBillboardBackground(),
               Configuration.instance.getBillboardForeground(),
               0.03,
@@ -506,11 +508,12 @@ public class OreDB
    */
   protected int limitOreDepositIndex(int index)
   {
+    int count = getOreDepositCount();
     if (index < 1)
     {
-      return getOreDepositCount();
+      return count;
     }
-    else if (index > getOreDepositCount())
+    else if (index > count)
     {
       return 1;
     }
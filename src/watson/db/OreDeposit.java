@@ -1,6 +1,6 @@
 package watson.db;
 
-import java.util.TreeSet;
+import java.util.ArrayList;
 
 
 // --------------------------------------------------------------------------
@@ -19,23 +19,134 @@ import java.util.TreeSet;
  * diamond, redstone, and emerald. Note that redstone can appear as two block
  * IDs: glowing and non-glowing redstone ore.
  * 
- * Invariant: an OreDeposit will always have at least one {@link BlockEdit} in
- * its set, and they will be sorted in ascending order by Y coordinate, and then
- * by timestamp.
+ * OreDeposits are the sets of a disjoint-set (union-find) forest. When two
+ * deposits are merged by {@link #union(OreDeposit, OreDeposit)}, the smaller
+ * one is attached beneath the larger one and the merged deposit is represented
+ * by the root. Only root deposits are stored in {@link TypedOreDB}; the
+ * aggregate properties (key block, earliest and latest edits, block count) are
+ * only meaningful for a root. {@link OreBlock#getDeposit()} always returns the
+ * root.
+ * 
+ * Invariant: an OreDeposit will always have at least one {@link OreBlock}, and
+ * its key block is the least block in the order defined by
+ * {@link OreBlock#compareTo(OreBlock)}, i.e. ascending by Y coordinate, and
+ * then by timestamp.
  */
 public class OreDeposit implements Comparable<OreDeposit>
 {
   // ---------------------------------------------------------------------------
   /**
-   * Add the specified {@link OreBlock} to this deposit.
+   * Add the specified {@link OreBlock} to this deposit, which must be a root.
+   * 
+   * If the block would become the new key block, the timestamp, and therefore
+   * the sort order, of this deposit will change; the caller is responsible for
+   * reindexing the deposit in that case.
    * 
    * @param block the block.
    */
   public void addOreBlock(OreBlock block)
   {
     block.setDeposit(this);
-    _oreBlocks.add(block);
-  }
+    if (_keyBlock == null)
+    {
+      block.setNextInDeposit(block);
+      _keyBlock = block;
+      _earliestEdit = _latestEdit = block.getEdit();
+    }
+    else
+    {
+      // Splice the block into the circular list after the key block.
+      block.setNextInDeposit(_keyBlock.getNextInDeposit());
+      _keyBlock.setNextInDeposit(block);
+
+      if (block.compareTo(_keyBlock) < 0)
+      {
+        _keyBlock = block;
+      }
+      if (block.getEdit().time < _earliestEdit.time)
+      {
+        _earliestEdit = block.getEdit();
+      }
+      if (block.getEdit().time > _latestEdit.time)
+      {
+        _latestEdit = block.getEdit();
+      }
+    }
+    ++_size;
+  } // addOreBlock
+
+  // ---------------------------------------------------------------------------
+  /**
+   * Merge two root deposits, using union by size, and return the root of the
+   * merged deposit.
+   * 
+   * The aggregate properties of the two deposits are combined in constant time
+   * and their lists of blocks are spliced together, so no blocks are copied.
+   * 
+   * @param a a root deposit.
+   * @param b another root deposit.
+   * @return the root of the merged deposit; this will be either a or b.
+   */
+  public static OreDeposit union(OreDeposit a, OreDeposit b)
+  {
+    if (a == b)
+    {
+      return a;
+    }
+
+    OreDeposit root = (a._size >= b._size) ? a : b;
+    OreDeposit child = (root == a) ? b : a;
+    child._parent = root;
+    root._size += child._size;
+
+    // Splice the two circular lists of blocks.
+    OreBlock rootNext = root._keyBlock.getNextInDeposit();
+    root._keyBlock.setNextInDeposit(child._keyBlock.getNextInDeposit());
+    child._keyBlock.setNextInDeposit(rootNext);
+
+    if (child._keyBlock.compareTo(root._keyBlock) < 0)
+    {
+      root._keyBlock = child._keyBlock;
+    }
+    if (child._earliestEdit.time < root._earliestEdit.time)
+    {
+      root._earliestEdit = child._earliestEdit;
+    }
+    if (child._latestEdit.time > root._latestEdit.time)
+    {
+      root._latestEdit = child._latestEdit;
+    }
+    return root;
+  } // union
+
+  // ---------------------------------------------------------------------------
+  /**
+   * Return the root of the deposit that this deposit has been merged into, or
+   * this deposit if it is a root.
+   * 
+   * The path from this deposit to the root is compressed so that subsequent
+   * lookups take near-constant time.
+   * 
+   * @return the root deposit.
+   */
+  public OreDeposit find()
+  {
+    OreDeposit root = this;
+    while (root._parent != null)
+    {
+      root = root._parent;
+    }
+
+    // Path compression.
+    OreDeposit deposit = this;
+    while (deposit != root)
+    {
+      OreDeposit next = deposit._parent;
+      deposit._parent = root;
+      deposit = next;
+    }
+    return root;
+  } // find
 
   // ---------------------------------------------------------------------------
   /**
@@ -54,21 +165,20 @@ public class OreDeposit implements Comparable<OreDeposit>
    * ore.
    * 
    * The corresponding edit will have the earliest timestamp of all edits with
-   * the least Y coordinate in the deposit. Since {@link OreBlock}s within a
-   * deposit are indexed into ascending order by Y and then timestamp, this is
-   * just the first element in the collection.
+   * the least Y coordinate in the deposit. This is maintained incrementally as
+   * blocks are added and deposits are merged.
    * 
    * @return the OreBlock that will act as a teleport target when heading to
    *         this ore.
    */
   public OreBlock getKeyOreBlock()
   {
-    return _oreBlocks.first();
+    return _keyBlock;
   }
 
   // ---------------------------------------------------------------------------
   /**
-   * Scan through all edits and return the earliest edit in the deposit.
+   * Return the earliest edit in the deposit.
    * 
    * This is not the same as the key deposit, which is the earliest of those
    * edits with the lowest Y coordinate.
@@ -77,49 +187,19 @@ public class OreDeposit implements Comparable<OreDeposit>
    */
   public BlockEdit getEarliestEdit()
   {
-    BlockEdit edit = null;
-    for (OreBlock block : _oreBlocks)
-    {
-      if (edit == null)
-      {
-        edit = block.getEdit();
-      }
-      else
-      {
-        if (block.getEdit().time < edit.time)
-        {
-          edit = block.getEdit();
-        }
-      }
-    } // for
-    return edit;
-  } // getEarliestEdit
+    return _earliestEdit;
+  }
 
   // ---------------------------------------------------------------------------
   /**
-   * Scan through all edits and return the latest edit in the deposit.
+   * Return the latest edit in the deposit.
    * 
    * @return the latest edit in the deposit.
    */
   public BlockEdit getLatestEdit()
   {
-    BlockEdit edit = null;
-    for (OreBlock block : _oreBlocks)
-    {
-      if (edit == null)
-      {
-        edit = block.getEdit();
-      }
-      else
-      {
-        if (block.getEdit().time > edit.time)
-        {
-          edit = block.getEdit();
-        }
-      }
-    } // for
-    return edit;
-  } // getLatestEdit
+    return _latestEdit;
+  }
 
   // ---------------------------------------------------------------------------
   /**
@@ -140,38 +220,71 @@ public class OreDeposit implements Comparable<OreDeposit>
    */
   public int getBlockCount()
   {
-    return _oreBlocks.size();
+    return _size;
   }
 
   // ---------------------------------------------------------------------------
   /**
-   * Return a reference to the collection of {@link OreBlocks}.
+   * Return a new list of the {@link OreBlock}s in this deposit, in no
+   * particular order.
    * 
-   * @return a reference to the collection of {@link OreBlocks}.
+   * @return a new list of the {@link OreBlock}s in this deposit.
    */
-  protected TreeSet<OreBlock> getOreBlocks()
+  protected ArrayList<OreBlock> getOreBlocks()
   {
-    return _oreBlocks;
-  }
+    ArrayList<OreBlock> blocks = new ArrayList<OreBlock>(_size);
+    OreBlock block = _keyBlock;
+    do
+    {
+      blocks.add(block);
+      block = block.getNextInDeposit();
+    } while (block != _keyBlock);
+    return blocks;
+  } // getOreBlocks
 
   // --------------------------------------------------------------------------
   /**
    * @see java.lang.Comparable#compareTo(java.lang.Object)
    * 
-   *      Since OreDeposits are compared on the basis of the timestamp of their
-   *      key OreBlock, they should not be compared (added to TreeSet<>, etc)
-   *      when no OreBlocks have been added to the deposit.
+   *      OreDeposits are compared on the basis of the timestamp of their key
+   *      OreBlock, and then by the key OreBlocks themselves so that distinct
+   *      deposits with the same timestamp are never considered equal. They
+   *      should not be compared (added to TreeSet<>, etc) when no OreBlocks
+   *      have been added to the deposit.
    */
   @Override
   public int compareTo(OreDeposit other)
   {
-    return Long.signum(getTimeStamp() - other.getTimeStamp());
+    int result = Long.signum(getTimeStamp() - other.getTimeStamp());
+    return (result != 0) ? result
+                        : getKeyOreBlock().compareTo(other.getKeyOreBlock());
   }
 
   // ---------------------------------------------------------------------------
   /**
-   * The set of {@link OreBlock}s making up this deposit, in ascending order by
-   * edit timestamp.
+   * The deposit that this deposit was merged into, or null if this is a root.
+   */
+  protected OreDeposit _parent;
+
+  /**
+   * The number of {@link OreBlock}s in this deposit (including all deposits
+   * merged into it).
+   */
+  protected int        _size;
+
+  /**
+   * The least {@link OreBlock} in the deposit; also the head of the circular
+   * list of blocks linked by {@link OreBlock#getNextInDeposit()}.
+   */
+  protected OreBlock   _keyBlock;
+
+  /**
+   * The edit with the earliest timestamp.
+   */
+  protected BlockEdit  _earliestEdit;
+
+  /**
+   * The edit with the latest timestamp.
    */
-  protected TreeSet<OreBlock> _oreBlocks = new TreeSet<OreBlock>();
-} // class OreDeposit
\ No newline at end of file
+  protected BlockEdit  _latestEdit;
+} // class OreDeposit
@@ -1,9 +1,6 @@
 package watson.db;
 
-import java.io.PrintWriter;
-import java.util.Calendar;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.HashMap;
 
 import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.client.renderer.WorldRenderer;
@@ -13,12 +10,17 @@ import org.lwjgl.opengl.GL11;
 
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.ViewCuller;
 import watson.model.ARGB;
 
 // ----------------------------------------------------------------------------
 /**
- * Maintains a time-ordered list of all of the BlockEdit instances corresponding
- * to LogBlock results for one player only, ordered from oldest to most recent.
+ * Maintains a time-ordered list of all of the edits corresponding to LogBlock
+ * results for one player only, ordered from oldest to most recent.
+ * 
+ * The edits are kept in a {@link BlockEditStore}, rather than as
+ * {@link BlockEdit} instances, and are referred to by their row in the store.
+ * A {@link BlockEditView} reads them without creating a {@link BlockEdit}.
  */
 public class PlayerEditSet
 {
@@ -27,10 +29,13 @@ public class PlayerEditSet
    * Constructor.
    * 
    * @param player name of the player who did these edits.
+   * @param playerId the identifier of the player within the
+   *          {@link BlockEditSet} that contains these edits.
    */
-  public PlayerEditSet(String player)
+  public PlayerEditSet(String player, int playerId)
   {
     _player = player;
+    _playerId = playerId;
   }
 
   // --------------------------------------------------------------------------
@@ -46,13 +51,23 @@ public class PlayerEditSet
 
   // --------------------------------------------------------------------------
   /**
-   * Find an edit with the specified coordinates.
+   * Return the identifier of the player who did these edits, as assigned by
+   * the {@link BlockEditSet} that contains them.
    * 
-   * Currently, this method does an inefficient linear search, walking, on
-   * average, half the collection. The edits are searched from oldest to newest,
-   * meaning that the oldest edit at that coordinate will be retrieved.
+   * @return the identifier of the player.
+   */
+  public int getPlayerId()
+  {
+    return _playerId;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Find an edit with the specified coordinates.
    * 
-   * TODO: implement an efficient spatial search.
+   * The edits are indexed by their packed coordinates, so this is a constant
+   * time lookup. Where there are multiple edits at the same coordinates, the
+   * oldest edit at that coordinate will be retrieved.
    * 
    * @param x the x coordinate of the block
    * @param y the y coordinate of the block
@@ -61,29 +76,121 @@ public class PlayerEditSet
    */
   public BlockEdit findEdit(int x, int y, int z)
   {
-    // Warning: O(N) algorithm. Avert your delicate eyes.
-    for (BlockEdit edit : _edits)
-    {
-      if (edit.x == x && edit.y == y && edit.z == z)
-      {
-        return edit;
-      }
-    }
-    return null;
+    int row = _coordIndex.get(IntCoord.pack(x, y, z));
+    return (row == LongIntHashMap.NO_VALUE) ? null : getBlockEdit(row);
   }
 
   // --------------------------------------------------------------------------
   /**
    * Add the specified edit to the list.
    * 
+   * Only the attributes of the edit are stored; the {@link BlockEdit} instance
+   * itself is not retained.
+   * 
    * @param edit the BlockEdit describing an edit to add.
+   * @return true if the edit was added, or false if an identical edit was
+   *         already stored.
    */
-  public void addBlockEdit(BlockEdit edit)
+  public boolean addBlockEdit(BlockEdit edit)
   {
-    _edits.add(edit);
-
     // Reference container for fast visibility toggling of ore deposit labels.
+    // Set even for a duplicate, since the caller may still add the edit to the
+    // OreDB, which requires it.
     edit.playerEditSet = this;
+
+    // Share this set's copy of the name, rather than one per line of chat,
+    // since edits added to the OreDB are kept.
+    if (edit.player != _player && edit.player.equals(_player))
+    {
+      edit.player = _player;
+    }
+
+    int row = _store.add(edit);
+    if (!_order.add(row))
+    {
+      _store.removeLast();
+      return false;
+    }
+
+    Long sectionKey = EditSection.getKey(edit.x, edit.y, edit.z);
+    EditSection section = _sections.get(sectionKey);
+    if (section == null)
+    {
+      section = new EditSection(_store, edit.x >> 4, edit.y >> 4, edit.z >> 4);
+      _sections.put(sectionKey, section);
+    }
+    section.addBlockEdit(row);
+
+    // Keep only the oldest edit at each coordinate in the index.
+    long key = _store.getCoords(row);
+    int existing = _coordIndex.get(key);
+    if (existing == LongIntHashMap.NO_VALUE
+        || BlockEditStore.compare(_store, row, _store, existing) < 0)
+    {
+      _coordIndex.put(key, row);
+    }
+    return true;
+  } // addBlockEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the store containing the edits.
+   * 
+   * @return the store containing the edits.
+   */
+  public BlockEditStore getStore()
+  {
+    return _store;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the rows of the edits in the store, in ascending order by time.
+   * 
+   * Consider the returned reference immutable.
+   * 
+   * @return the rows of the edits in the store, in ascending order by time.
+   */
+  public OrderedRows getOrderedRows()
+  {
+    return _order;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new {@link BlockEdit} with the attributes of the edit in the
+   * specified row.
+   * 
+   * @param row the row of the edit in the store.
+   * @return a new {@link BlockEdit}.
+   */
+  public BlockEdit getBlockEdit(int row)
+  {
+    BlockEdit edit = _store.getBlockEdit(row, _player);
+    edit.playerEditSet = this;
+
+    // Share this set's copy of the name, rather than one per line of chat,
+    // since edits added to the OreDB are kept.
+    if (edit.player != _player && edit.player.equals(_player))
+    {
+      edit.player = _player;
+    }
+    return edit;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the map from packed coordinates to the row of the oldest edit at
+   * those coordinates.
+   * 
+   * Consider the returned reference immutable.
+   * 
+   * @return the map from packed coordinates to the row of the oldest edit at
+   *         those coordinates.
+   */
+  LongIntHashMap getCoordIndex()
+  {
+    return _coordIndex;
   }
 
   // --------------------------------------------------------------------------
@@ -94,7 +201,7 @@ public class PlayerEditSet
    */
   int getBlockEditCount()
   {
-    return _edits.size();
+    return _order.size();
   }
 
   // --------------------------------------------------------------------------
@@ -125,6 +232,10 @@ public class PlayerEditSet
   // --------------------------------------------------------------------------
   /**
    * Draw wireframe outlines of all blocks.
+   * 
+   * The outlines of each section of the world are compiled into a display list
+   * that is only rebuilt when edits are added to that section, and sections
+   * that are not in view are culled.
    */
   public void drawOutlines()
   {
@@ -132,14 +243,29 @@ public class PlayerEditSet
     {
       if (Controller.instance.getDisplaySettings().isOutlineShown())
       {
-        for (BlockEdit edit : _edits)
+        for (EditSection section : _sections.values())
         {
-          edit.drawOutline();
+          section.drawOutlines();
         }
       }
     }
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Free the display lists holding the compiled outlines.
+   * 
+   * This must be called, from the render thread, when this PlayerEditSet is
+   * discarded.
+   */
+  public void releaseOutlines()
+  {
+    for (EditSection section : _sections.values())
+    {
+      section.releaseOutlines();
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Draw direction vectors indicating motion of the miner.
@@ -149,7 +275,7 @@ public class PlayerEditSet
   public void drawVectors(ARGB colour)
   {
     DisplaySettings settings = Controller.instance.getDisplaySettings();
-    if (settings.areVectorsShown() && isVisible() && !_edits.isEmpty())
+    if (settings.areVectorsShown() && isVisible() && _order.size() > 1)
     {
       final Tessellator tess = Tessellator.getInstance();
         final WorldRenderer wr = tess.getWorldRenderer();
@@ -159,151 +285,240 @@ public class PlayerEditSet
         wr.setColorRGBA_I(colour.getRGB(), colour.getAlpha());
       GL11.glLineWidth(0.5f);
 
+      ViewCuller culler = ViewCuller.instance;
+
       // Unit X and Y vectors used for cross products to get arrow axes.
       Vec3 unitX = new Vec3(1, 0, 0);
       Vec3 unitY = new Vec3(0, 1, 0);
 
-      // We only need to draw vectors if there are at least 2 edits.
-      Iterator<BlockEdit> it = _edits.iterator();
-      if (it.hasNext())
+      // Only the edits in the time window are linked. The rows are visited
+      // chunk by chunk, in order, from the first edit in the window to the
+      // last. We only need to draw vectors if there are at least 2 edits.
+      TimeWindow window = settings.getTimeWindow();
+      int chunkCount = _order.getChunkCount();
+      int firstChunk = _order.findChunkByTime(window.getStart());
+      int endChunk = _order.findChunkByTime(window.getEnd());
+      BlockEditView prev = new BlockEditView(this).setRow(-1);
+      BlockEditView next = new BlockEditView(this);
+      for (int c = firstChunk; c < chunkCount && c <= endChunk; ++c)
       {
-        BlockEdit prev = it.next();
-        while (it.hasNext())
+        int[] rows = _order.getChunk(c);
+        int start = (c == firstChunk)
+          ? _order.findIndexByTime(c, window.getStart()) : 0;
+        int end = (c == endChunk)
+          ? _order.findIndexByTime(c, window.getEnd()) : _order.getChunkSize(c);
+        for (int i = start; i < end; ++i)
         {
-          BlockEdit next = it.next();
+          if (prev.getRow() < 0)
+          {
+            prev.setRow(rows[i]);
+            continue;
+          }
+          next.setRow(rows[i]);
 
           // Work out whether to link edits with vectors.
-          boolean show = (next.creation && settings.isLinkedCreations())
-                         || (!next.creation && settings.isLinkedDestructions());
+          boolean creation = next.isCreation();
+          boolean show = (creation && settings.isLinkedCreations())
+                         || (!creation && settings.isLinkedDestructions());
           if (show)
           {
-            Vec3 pPos = new Vec3(0.5 + prev.x, 0.5 + prev.y, 0.5 + prev.z);
-            Vec3 nPos = new Vec3(0.5 + next.x, 0.5 + next.y, 0.5 + next.z);
-            // Vector difference, from prev to next.
-            Vec3 diff = nPos.subtract(pPos);
-
-            // Compute length. We want to scale the arrow heads by the length,
-            // so can't avoid the sqrt() here.
-            double length = diff.lengthVector();
-            if (length >= settings.getMinVectorLength())
+            int px = prev.getX();
+            int py = prev.getY();
+            int pz = prev.getZ();
+            int nx = next.getX();
+            int ny = next.getY();
+            int nz = next.getZ();
+
+            // Skip vectors that are out of view before doing any vector math.
+            if (culler.isBoxVisible(Math.min(px, nx), Math.min(py, ny),
+              Math.min(pz, nz), Math.max(px, nx) + 1, Math.max(py, ny) + 1,
+              Math.max(pz, nz) + 1, 1))
             {
-              // Draw the vector.
-                wr.addVertex(pPos.xCoord, pPos.yCoord, pPos.zCoord);
-                wr.addVertex(nPos.xCoord, nPos.yCoord, nPos.zCoord);
-
-              // Length from arrow tip to midpoint of vector as a fraction of
-              // the total vector length. Scale the arrow in proportion to the
-              // square root of the length up to a maximum size.
-              double arrowSize = UNIT_VECTOR_ARROW_SIZE * Math.sqrt(length);
-              if (arrowSize > MAX_ARROW_SIZE)
-              {
-                arrowSize = MAX_ARROW_SIZE;
-              }
-              double arrowScale = arrowSize / length;
-
-              // Position of the tip and tail of the arrow, sitting in the
-              // middle of the vector.
-              Vec3 tip = new Vec3(
-                pPos.xCoord * (0.5 - arrowScale) + nPos.xCoord
-                  * (0.5 + arrowScale), pPos.yCoord * (0.5 - arrowScale)
-                                        + nPos.yCoord * (0.5 + arrowScale),
-                pPos.zCoord * (0.5 - arrowScale) + nPos.zCoord
-                  * (0.5 + arrowScale));
-              Vec3 tail = new Vec3(
-                pPos.xCoord * (0.5 + arrowScale) + nPos.xCoord * (0.5 - arrowScale),
-                pPos.yCoord * (0.5 + arrowScale) + nPos.yCoord * (0.5 - arrowScale),
-                pPos.zCoord * (0.5 + arrowScale) + nPos.zCoord * (0.5 - arrowScale));
-
-              // Fin axes, perpendicular to vector. Scale by vector length.
-              // If the vector is colinear with the Y axis, use the X axis for
-              // the cross products to derive the fin directions.
-              Vec3 fin1;
-              if (Math.abs(unitY.dotProduct(diff)) > 0.9 * length)
-              {
-                fin1 = unitX.crossProduct(diff).normalize();
-              }
-              else
+              Vec3 pPos = new Vec3(0.5 + px, 0.5 + py, 0.5 + pz);
+              Vec3 nPos = new Vec3(0.5 + nx, 0.5 + ny, 0.5 + nz);
+              // Vector difference, from prev to next.
+              Vec3 diff = nPos.subtract(pPos);
+
+              // Compute length. We want to scale the arrow heads by the length,
+              // so can't avoid the sqrt() here.
+              double length = diff.lengthVector();
+              if (length >= settings.getMinVectorLength())
               {
-                fin1 = unitY.crossProduct(diff).normalize();
-              }
-
-              Vec3 fin2 = fin1.crossProduct(diff).normalize();
-
-                Vec3 draw1 = new Vec3(fin1.xCoord * arrowScale * length, fin1.yCoord * arrowScale * length, fin1.zCoord * arrowScale * length);
-                Vec3 draw2 = new Vec3(fin2.xCoord * arrowScale * length, fin2.yCoord * arrowScale * length, fin2.zCoord * arrowScale * length);
-
-              // Draw four fins.
-                wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-                wr.addVertex(tail.xCoord + draw1.xCoord, tail.yCoord + draw1.yCoord, tail.zCoord + draw1.zCoord);
-                wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-                wr.addVertex(tail.xCoord - draw1.xCoord, tail.yCoord - draw1.yCoord, tail.zCoord - draw1.zCoord);
-                wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-                wr.addVertex(tail.xCoord + draw2.xCoord, tail.yCoord + draw2.yCoord, tail.zCoord + draw2.zCoord);
-                wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-                wr.addVertex(tail.xCoord - draw2.xCoord, tail.yCoord - draw2.yCoord, tail.zCoord - draw2.zCoord);
-            } // if we are drawing this vector
-            prev = next;
+                // Draw the vector.
+                  wr.addVertex(pPos.xCoord, pPos.yCoord, pPos.zCoord);
+                  wr.addVertex(nPos.xCoord, nPos.yCoord, nPos.zCoord);
+
+                // Length from arrow tip to midpoint of vector as a fraction of
+                // the total vector length. Scale the arrow in proportion to the
+                // square root of the length up to a maximum size.
+                double arrowSize = UNIT_VECTOR_ARROW_SIZE * Math.sqrt(length);
+                if (arrowSize > MAX_ARROW_SIZE)
+                {
+                  arrowSize = MAX_ARROW_SIZE;
+                }
+                double arrowScale = arrowSize / length;
+
+                // Position of the tip and tail of the arrow, sitting in the
+                // middle of the vector.
+                Vec3 tip = new Vec3(
+                  pPos.xCoord * (0.5 - arrowScale) + nPos.xCoord
+                    * (0.5 + arrowScale), pPos.yCoord * (0.5 - arrowScale)
+                                          + nPos.yCoord * (0.5 + arrowScale),
+                  pPos.zCoord * (0.5 - arrowScale) + nPos.zCoord
+                    * (0.5 + arrowScale));
+                Vec3 tail = new Vec3(
+                  pPos.xCoord * (0.5 + arrowScale) + nPos.xCoord * (0.5 - arrowScale),
+                  pPos.yCoord * (0.5 + arrowScale) + nPos.yCoord * (0.5 - arrowScale),
+                  pPos.zCoord * (0.5 + arrowScale) + nPos.zCoord * (0.5 - arrowScale));
+
+                // Fin axes, perpendicular to vector. Scale by vector length.
+                // If the vector is colinear with the Y axis, use the X axis for
+                // the cross products to derive the fin directions.
+                Vec3 fin1;
+                if (Math.abs(unitY.dotProduct(diff)) > 0.9 * length)
+                {
+                  fin1 = unitX.crossProduct(diff).normalize();
+                }
+                else
+                {
+                  fin1 = unitY.crossProduct(diff).normalize();
+                }
+
+                Vec3 fin2 = fin1.crossProduct(diff).normalize();
+
+                  Vec3 draw1 = new Vec3(fin1.xCoord * arrowScale * length, fin1.yCoord * arrowScale * length, fin1.zCoord * arrowScale * length);
+                  Vec3 draw2 = new Vec3(fin2.xCoord * arrowScale * length, fin2.yCoord * arrowScale * length, fin2.zCoord * arrowScale * length);
+
+                // Draw four fins.
+                  wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
+                  wr.addVertex(tail.xCoord + draw1.xCoord, tail.yCoord + draw1.yCoord, tail.zCoord + draw1.zCoord);
+                  wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
+                  wr.addVertex(tail.xCoord - draw1.xCoord, tail.yCoord - draw1.yCoord, tail.zCoord - draw1.zCoord);
+                  wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
+                  wr.addVertex(tail.xCoord + draw2.xCoord, tail.yCoord + draw2.yCoord, tail.zCoord + draw2.zCoord);
+                  wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
+                  wr.addVertex(tail.xCoord - draw2.xCoord, tail.yCoord - draw2.yCoord, tail.zCoord - draw2.zCoord);
+              } // if we are drawing this vector
+            } // if visible
+            prev.setRow(next.getRow());
           } // if
-        } // while
-        tess.draw();
-      } // if
+        } // for rows in chunk
+      } // for chunks
+      tess.draw();
     } // if drawing
   } // drawVectors
 
   // --------------------------------------------------------------------------
   /**
-   * Write the edits for this player to the specified PrintWriter.
+   * Count the edits in the specified time window.
+   * 
+   * The first edit in the window is found by binary search, and only the
+   * edits in the window are visited.
    * 
-   * @param writer the PrintWriter.
-   * @return the number of edits saved.
+   * @param window the time window.
+   * @param typeCounts if not null, the element at the {@link BlockType} index
+   *          of each edit is incremented; it must have
+   *          {@link BlockTypeRegistry#getIndexCount()} elements.
+   * @return the number of edits in the window.
    */
-  public int save(PrintWriter writer)
+  public int countEdits(TimeWindow window, int[] typeCounts)
   {
-    Calendar calendar = Calendar.getInstance();
-    int editCount = 0;
-    for (BlockEdit edit : _edits)
+    int count = 0;
+    int chunkCount = _order.getChunkCount();
+    int firstChunk = _order.findChunkByTime(window.getStart());
+    int endChunk = _order.findChunkByTime(window.getEnd());
+    for (int c = firstChunk; c < chunkCount && c <= endChunk; ++c)
     {
-      calendar.setTimeInMillis(edit.time);
-      int year = calendar.get(Calendar.YEAR);
-      int month = calendar.get(Calendar.MONTH) + 1;
-      int day = calendar.get(Calendar.DAY_OF_MONTH);
-      int hour = calendar.get(Calendar.HOUR_OF_DAY);
-      int minute = calendar.get(Calendar.MINUTE);
-      int second = calendar.get(Calendar.SECOND);
-      char action = edit.creation ? 'c' : 'd';
-      writer.format("%4d-%02d-%02d|%02d:%02d:%02d|%s|%c|%d|%d|%d|%d|%d\n",
-        year, month, day, hour, minute, second, edit.player, action,
-        edit.type.getId(), edit.type.getData(), edit.x, edit.y, edit.z);
-      ++editCount;
-    } // for
-    return editCount;
-  } // save
+      int[] rows = _order.getChunk(c);
+      int start = (c == firstChunk)
+        ? _order.findIndexByTime(c, window.getStart()) : 0;
+      int end = (c == endChunk)
+        ? _order.findIndexByTime(c, window.getEnd()) : _order.getChunkSize(c);
+      count += end - start;
+      if (typeCounts != null)
+      {
+        for (int i = start; i < end; ++i)
+        {
+          ++typeCounts[_store.getTypeIndex(rows[i])];
+        }
+      }
+    }
+    return count;
+  } // countEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new {@link BlockEditStore} containing a copy of this player's
+   * edits, in which the rows are in ascending order by time.
+   * 
+   * The copy takes 19 bytes per edit and can be read sequentially, for
+   * example by another thread, while this set continues to change.
+   * 
+   * @return the copy.
+   */
+  public BlockEditStore copyOrderedStore()
+  {
+    BlockEditStore copy = new BlockEditStore(_order.size());
+    int chunkCount = _order.getChunkCount();
+    for (int c = 0; c < chunkCount; ++c)
+    {
+      int[] rows = _order.getChunk(c);
+      int size = _order.getChunkSize(c);
+      for (int i = 0; i < size; ++i)
+      {
+        copy.add(_store, rows[i]);
+      }
+    }
+    return copy;
+  } // copyOrderedStore
 
   // --------------------------------------------------------------------------
   /**
    * The name of the player who did these edits.
    */
-  protected String              _player;
+  protected String                     _player;
+
+  /**
+   * The identifier of _player, assigned by the containing
+   * {@link BlockEditSet}.
+   */
+  protected int                        _playerId;
+
+  /**
+   * The attributes of the edits, in the order they were added.
+   */
+  protected BlockEditStore             _store                 = new BlockEditStore();
+
+  /**
+   * The rows of the edits in _store, ordered from oldest to most recent as
+   * defined by {@link BlockEditComparator}, with no two edits equal.
+   */
+  protected OrderedRows                _order                 = new OrderedRows(_store);
+
+  /**
+   * Map from coordinates packed by {@link IntCoord#pack(int, int, int)} to the
+   * row of the oldest edit in _store at those coordinates.
+   */
+  protected LongIntHashMap             _coordIndex            = new LongIntHashMap();
 
   /**
-   * A set of BlockEdit instances, ordered from oldest (lowest time value) to
-   * most recent.
+   * Map from the key of each 16x16x16 section of the world (as computed by
+   * {@link EditSection#getKey(int, int, int)}) to the edits in that section.
    */
-  protected TreeSet<BlockEdit>  _edits                 = new TreeSet<BlockEdit>(
-                                                                                new BlockEditComparator());
+  protected HashMap<Long, EditSection> _sections              = new HashMap<Long, EditSection>();
 
   /**
    * True if this player's edits are visible.
    */
-  protected boolean             _visible               = true;
+  protected boolean                    _visible               = true;
 
   /**
    * Size of the arrow on a unit length vector.
    */
-  protected static final double UNIT_VECTOR_ARROW_SIZE = 0.025;
+  protected static final double        UNIT_VECTOR_ARROW_SIZE = 0.025;
 
   /**
    * Maximum size of an arrow in world units.
    */
-  protected static final double MAX_ARROW_SIZE         = 0.5;
+  protected static final double        MAX_ARROW_SIZE         = 0.5;
 } // class PlayerEditSet
\ No newline at end of file
@@ -0,0 +1,502 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// ----------------------------------------------------------------------------
+/**
+ * A sorted set that can also look up elements by their position (rank) in the
+ * sorted order.
+ * 
+ * The set is an AVL tree in which every node records the size of its subtree,
+ * so that insertion, removal, lookup by index and computation of the index of
+ * an element all take O(log n) time. Elements are ordered by their natural
+ * ordering, which must be consistent with the identity of the elements while
+ * they are in the set.
+ * 
+ * {@link TypedOreDB} uses this class to find ore deposits by number without
+ * walking all of the deposits that precede them.
+ * 
+ * @param <E> the type of the elements.
+ */
+public class RankedSet<E extends Comparable<? super E>> implements Iterable<E>
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Add the specified element to the set, if it is not already present.
+   * 
+   * @param element the element.
+   * @return true if the set did not already contain the element.
+   */
+  public boolean add(E element)
+  {
+    int oldSize = size();
+    _root = insert(_root, element);
+    return size() != oldSize;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove the specified element from the set, if present.
+   * 
+   * @param element the element.
+   * @return true if the set contained the element.
+   */
+  public boolean remove(E element)
+  {
+    int oldSize = size();
+    _root = delete(_root, element);
+    return size() != oldSize;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all elements from the set.
+   */
+  public void clear()
+  {
+    _root = null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of elements in the set.
+   * 
+   * @return the number of elements in the set.
+   */
+  public int size()
+  {
+    return size(_root);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the set is empty.
+   * 
+   * @return true if the set is empty.
+   */
+  public boolean isEmpty()
+  {
+    return _root == null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the element with the specified 0-based index in the sorted order.
+   * 
+   * @param index the index, in the range [0,size()-1].
+   * @return the element with the specified index.
+   * @throws IndexOutOfBoundsException if the index is out of range.
+   */
+  public E get(int index)
+  {
+    if (index < 0 || index >= size())
+    {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: "
+                                          + size());
+    }
+
+    Node<E> node = _root;
+    for (;;)
+    {
+      int leftSize = size(node.left);
+      if (index < leftSize)
+      {
+        node = node.left;
+      }
+      else if (index == leftSize)
+      {
+        return node.element;
+      }
+      else
+      {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  } // get
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the 0-based index of the specified element in the sorted order, or
+   * -1 if it is not in the set.
+   * 
+   * @param element the element.
+   * @return the index of the element, or -1 if not found.
+   */
+  public int indexOf(E element)
+  {
+    int index = 0;
+    Node<E> node = _root;
+    while (node != null)
+    {
+      int cmp = element.compareTo(node.element);
+      if (cmp < 0)
+      {
+        node = node.left;
+      }
+      else if (cmp > 0)
+      {
+        index += size(node.left) + 1;
+        node = node.right;
+      }
+      else
+      {
+        return index + size(node.left);
+      }
+    }
+    return -1;
+  } // indexOf
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the least element in the set.
+   * 
+   * @return the least element in the set.
+   * @throws NoSuchElementException if the set is empty.
+   */
+  public E first()
+  {
+    if (_root == null)
+    {
+      throw new NoSuchElementException();
+    }
+    Node<E> node = _root;
+    while (node.left != null)
+    {
+      node = node.left;
+    }
+    return node.element;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the greatest element in the set.
+   * 
+   * @return the greatest element in the set.
+   * @throws NoSuchElementException if the set is empty.
+   */
+  public E last()
+  {
+    if (_root == null)
+    {
+      throw new NoSuchElementException();
+    }
+    Node<E> node = _root;
+    while (node.right != null)
+    {
+      node = node.right;
+    }
+    return node.element;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return an iterator over the elements in ascending order.
+   * 
+   * The iterator does not support removal, and the set must not be modified
+   * while it is in use.
+   * 
+   * @return an iterator over the elements in ascending order.
+   */
+  @Override
+  public Iterator<E> iterator()
+  {
+    return new Iterator<E>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        return !_path.isEmpty();
+      }
+
+      @Override
+      public E next()
+      {
+        if (_path.isEmpty())
+        {
+          throw new NoSuchElementException();
+        }
+        Node<E> node = _path.remove(_path.size() - 1);
+        pushLeft(node.right);
+        return node.element;
+      }
+
+      @Override
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      /**
+       * Push the specified node and all of its left descendants onto the path.
+       */
+      private void pushLeft(Node<E> node)
+      {
+        while (node != null)
+        {
+          _path.add(node);
+          node = node.left;
+        }
+      }
+
+      /**
+       * Ancestors of the next node yet to be visited, and that node, at the
+       * end.
+       */
+      private ArrayList<Node<E>> _path = new ArrayList<Node<E>>();
+
+      {
+        pushLeft(_root);
+      }
+    };
+  } // iterator
+
+  // --------------------------------------------------------------------------
+  /**
+   * Insert an element into the subtree rooted at node.
+   * 
+   * @param node the subtree root, or null.
+   * @param element the element.
+   * @return the new root of the subtree.
+   */
+  protected Node<E> insert(Node<E> node, E element)
+  {
+    if (node == null)
+    {
+      return new Node<E>(element);
+    }
+
+    int cmp = element.compareTo(node.element);
+    if (cmp < 0)
+    {
+      node.left = insert(node.left, element);
+    }
+    else if (cmp > 0)
+    {
+      node.right = insert(node.right, element);
+    }
+    else
+    {
+      return node;
+    }
+    return rebalance(node);
+  } // insert
+
+  // --------------------------------------------------------------------------
+  /**
+   * Delete an element from the subtree rooted at node.
+   * 
+   * @param node the subtree root, or null.
+   * @param element the element.
+   * @return the new root of the subtree.
+   */
+  protected Node<E> delete(Node<E> node, E element)
+  {
+    if (node == null)
+    {
+      return null;
+    }
+
+    int cmp = element.compareTo(node.element);
+    if (cmp < 0)
+    {
+      node.left = delete(node.left, element);
+    }
+    else if (cmp > 0)
+    {
+      node.right = delete(node.right, element);
+    }
+    else if (node.left == null)
+    {
+      return node.right;
+    }
+    else if (node.right == null)
+    {
+      return node.left;
+    }
+    else
+    {
+      // Replace the element with its successor and delete that instead.
+      Node<E> successor = node.right;
+      while (successor.left != null)
+      {
+        successor = successor.left;
+      }
+      node.element = successor.element;
+      node.right = deleteFirst(node.right);
+    }
+    return rebalance(node);
+  } // delete
+
+  // --------------------------------------------------------------------------
+  /**
+   * Delete the least element from the subtree rooted at node.
+   * 
+   * @param node the subtree root; must not be null.
+   * @return the new root of the subtree.
+   */
+  protected Node<E> deleteFirst(Node<E> node)
+  {
+    if (node.left == null)
+    {
+      return node.right;
+    }
+    node.left = deleteFirst(node.left);
+    return rebalance(node);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Update the height and size of the specified node after its children have
+   * changed, and perform any rotations necessary to restore the AVL balance
+   * condition.
+   * 
+   * @param node the node.
+   * @return the new root of the subtree formerly rooted at node.
+   */
+  protected Node<E> rebalance(Node<E> node)
+  {
+    update(node);
+    int balance = height(node.left) - height(node.right);
+    if (balance > 1)
+    {
+      if (height(node.left.left) < height(node.left.right))
+      {
+        node.left = rotateLeft(node.left);
+      }
+      return rotateRight(node);
+    }
+    else if (balance < -1)
+    {
+      if (height(node.right.right) < height(node.right.left))
+      {
+        node.right = rotateRight(node.right);
+      }
+      return rotateLeft(node);
+    }
+    else
+    {
+      return node;
+    }
+  } // rebalance
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rotate the subtree rooted at node to the left.
+   * 
+   * @param node the subtree root.
+   * @return the new subtree root.
+   */
+  protected Node<E> rotateLeft(Node<E> node)
+  {
+    Node<E> right = node.right;
+    node.right = right.left;
+    right.left = node;
+    update(node);
+    update(right);
+    return right;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rotate the subtree rooted at node to the right.
+   * 
+   * @param node the subtree root.
+   * @return the new subtree root.
+   */
+  protected Node<E> rotateRight(Node<E> node)
+  {
+    Node<E> left = node.left;
+    node.left = left.right;
+    left.right = node;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Recompute the height and size of a node from those of its children.
+   * 
+   * @param node the node.
+   */
+  protected static <E> void update(Node<E> node)
+  {
+    node.height = 1 + Math.max(height(node.left), height(node.right));
+    node.size = 1 + size(node.left) + size(node.right);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the height of a possibly null subtree.
+   * 
+   * @param node the subtree root, or null.
+   * @return the height of the subtree; 0 if empty.
+   */
+  protected static <E> int height(Node<E> node)
+  {
+    return (node == null) ? 0 : node.height;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of elements in a possibly null subtree.
+   * 
+   * @param node the subtree root, or null.
+   * @return the number of elements in the subtree.
+   */
+  protected static <E> int size(Node<E> node)
+  {
+    return (node == null) ? 0 : node.size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A node of the AVL tree.
+   */
+  protected static class Node<E>
+  {
+    /**
+     * Constructor.
+     * 
+     * @param element the element stored in the node.
+     */
+    public Node(E element)
+    {
+      this.element = element;
+    }
+
+    /**
+     * The element stored in this node.
+     */
+    public E       element;
+
+    /**
+     * The subtree of lesser elements.
+     */
+    public Node<E> left;
+
+    /**
+     * The subtree of greater elements.
+     */
+    public Node<E> right;
+
+    /**
+     * The height of the subtree rooted at this node.
+     */
+    public int     height = 1;
+
+    /**
+     * The number of elements in the subtree rooted at this node.
+     */
+    public int     size   = 1;
+  } // class Node
+
+  // --------------------------------------------------------------------------
+  /**
+   * The root of the tree, or null if the set is empty.
+   */
+  protected Node<E> _root;
+} // class RankedSet
@@ -1,12 +1,18 @@
 package watson.db;
 
 import java.util.Calendar;
-import java.util.Locale;
+import java.util.TimeZone;
 
 // ----------------------------------------------------------------------------
 /**
  * Centralises common code for time parsing and deals intelligently with the
  * lack of a year on timestamps in LogBlock output.
+ * 
+ * Time stamps are interpreted in the local time zone, as by a Calendar, but
+ * without one: dates are converted to day numbers with integer arithmetic and
+ * the time of local midnight of each day is cached. All methods may be called
+ * from any thread; the only shared state is the immutable time zone and
+ * reference time and a cache of immutable {@link Day} entries.
  */
 public class TimeStamp
 {
@@ -30,17 +36,17 @@ public class TimeStamp
                               int second)
   {
     // Try assuming that the year is the same as the reference.
-    _time.set(_reference.get(Calendar.YEAR), month - 1, dayOfMonth, hour,
-      minute, second);
+    long days = toDays(REFERENCE_YEAR, month, dayOfMonth);
+    long millis = toMillis(days, hour, minute, second);
 
     // If the resulting time is more into the future than the reference, then
     // we guessed the wrong year (assuming the LogBlock retention is NOT 51
     // weeks).
-    if (_time.getTimeInMillis() > _reference.getTimeInMillis())
+    if (millis > REFERENCE_MILLIS)
     {
-      _time.add(Calendar.YEAR, -1);
+      millis = toMillis(toSameDayOfPreviousYear(days), hour, minute, second);
     }
-    return _time.getTimeInMillis();
+    return millis;
   } // toMillis
 
   // --------------------------------------------------------------------------
@@ -63,8 +69,7 @@ public class TimeStamp
   public static long toMillis(int year, int month, int dayOfMonth, int hour,
                               int minute, int second)
   {
-    _time.set(year, month - 1, dayOfMonth, hour, minute, second);
-    return _time.getTimeInMillis();
+    return toMillis(toDays(year, month, dayOfMonth), hour, minute, second);
   }
 
   // --------------------------------------------------------------------------
@@ -77,11 +82,30 @@ public class TimeStamp
    */
   public static String formatMonthDayTime(long millis)
   {
-    _time.setTimeInMillis(millis);
-    return String.format(Locale.US, "%02d-%02d %02d:%02d:%02d",
-      _time.get(Calendar.MONTH) + 1, _time.get(Calendar.DAY_OF_MONTH),
-      _time.get(Calendar.HOUR_OF_DAY), _time.get(Calendar.MINUTE),
-      _time.get(Calendar.SECOND));
+    char[] buffer = _buffer.get();
+    return new String(buffer, 0, formatMonthDayTime(millis, buffer, 0));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Format a millisecond time into the "MM-DD hh:mm:ss" format typically used
+   * in LogBlock query results in chat, in the specified buffer.
+   * 
+   * @param millis a timestamp in the form of milliseconds since epoch.
+   * @param buffer the buffer, with room for 14 characters after offset.
+   * @param offset the index in buffer of the first character written.
+   * @return the index in buffer after the last character written.
+   */
+  public static int formatMonthDayTime(long millis, char[] buffer, int offset)
+  {
+    long wall = millis + ZONE.getOffset(millis);
+    int date = toDate(floorDiv(wall, DAY_MILLIS));
+    int seconds = (int) (floorMod(wall, DAY_MILLIS) / 1000);
+    offset = appendTwoDigits(buffer, offset, (date >> 5) & 0xF);
+    buffer[offset++] = '-';
+    offset = appendTwoDigits(buffer, offset, date & 0x1F);
+    buffer[offset++] = ' ';
+    return appendTimeOfDay(buffer, offset, seconds);
   }
 
   // --------------------------------------------------------------------------
@@ -89,34 +113,340 @@ public class TimeStamp
    * Format a millisecond time into the format "DD.MM.YYYY hh:mm:ss" so that it
    * can be used as a "since" or "before" parameter value in LogBlock queries.
    * 
+   * Day and month are not padded with zeroes.
+   * 
    * @param millis a timestamp in the form of milliseconds since epoch.
    * @return a the formatted time.
    */
   public static String formatQueryTime(long millis)
   {
-    _time.setTimeInMillis(millis);
-    return String.format(Locale.US, "%d.%d.%d %02d:%02d:%02d",
-      _time.get(Calendar.DAY_OF_MONTH), _time.get(Calendar.MONTH) + 1,
-      _time.get(Calendar.YEAR), _time.get(Calendar.HOUR_OF_DAY),
-      _time.get(Calendar.MINUTE), _time.get(Calendar.SECOND));
+    long wall = millis + ZONE.getOffset(millis);
+    int date = toDate(floorDiv(wall, DAY_MILLIS));
+    int seconds = (int) (floorMod(wall, DAY_MILLIS) / 1000);
+
+    char[] buffer = _buffer.get();
+    int offset = appendNumber(buffer, 0, date & 0x1F);
+    buffer[offset++] = '.';
+    offset = appendNumber(buffer, offset, (date >> 5) & 0xF);
+    buffer[offset++] = '.';
+    offset = appendNumber(buffer, offset, date >> 9);
+    buffer[offset++] = ' ';
+    offset = appendTimeOfDay(buffer, offset, seconds);
+    return new String(buffer, 0, offset);
+  } // formatQueryTime
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time in milliseconds since epoch of a local time of day on the
+   * specified day.
+   * 
+   * @param days the day, as days since 1970-01-01.
+   * @param hour the hour of the day.
+   * @param minute the minute.
+   * @param second the second.
+   * @return the time in milliseconds since epoch.
+   */
+  protected static long toMillis(long days, int hour, int minute, int second)
+  {
+    int slot = (int) days & (DAY_CACHE_SIZE - 1);
+    Day day = _days[slot];
+    if (day == null || day._days != days)
+    {
+      day = new Day(days);
+      _days[slot] = day;
+    }
+
+    if (day._uniform)
+    {
+      return day._midnight + 1000L * (3600L * hour + 60 * minute + second);
+    }
+    else
+    {
+      // The UTC offset changes during this day. Let Calendar decide how the
+      // skipped or repeated hour is interpreted.
+      int date = toDate(days);
+      Calendar calendar = _calendar.get();
+      calendar.clear();
+      calendar.set(date >> 9, ((date >> 5) & 0xF) - 1, date & 0x1F, hour,
+        minute, second);
+      return calendar.getTimeInMillis();
+    }
+  } // toMillis
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of days since 1970-01-01 of the specified date in the
+   * proleptic Gregorian calendar.
+   * 
+   * As with a lenient Calendar, out of range months and days roll over into
+   * the following or previous year or month.
+   * 
+   * @param year the year.
+   * @param month the month, from 1 to 12.
+   * @param dayOfMonth the day of the month, from 1 to 31.
+   * @return the number of days since 1970-01-01.
+   */
+  protected static long toDays(int year, int month, int dayOfMonth)
+  {
+    long y = year + floorDiv(month - 1, 12);
+    int m = (int) floorMod(month - 1, 12) + 1;
+
+    // Count years from March, so that February 29 is the last day of a year.
+    if (m <= 2)
+    {
+      --y;
+    }
+    long era = floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+                    + dayOfYear;
+    return era * 146097 + dayOfEra - 719468 + (dayOfMonth - 1);
+  } // toDays
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the date of the specified day in the proleptic Gregorian calendar,
+   * packed as (year << 9) | (month << 5) | dayOfMonth.
+   * 
+   * @param days the number of days since 1970-01-01.
+   * @return the packed date, with month from 1 to 12 and day of the month from
+   *         1 to 31.
+   */
+  protected static int toDate(long days)
+  {
+    long z = days + 719468;
+    long era = floorDiv(z, 146097);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                     - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra
+                    - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int dayOfMonth = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = (mp < 10) ? mp + 3 : mp - 9;
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+    return (year << 9) | (month << 5) | dayOfMonth;
+  } // toDate
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the same day of the month in the previous year; February 29 becomes
+   * February 28, as with Calendar.add(Calendar.YEAR, -1).
+   * 
+   * @param days the day, as days since 1970-01-01.
+   * @return the day in the previous year, as days since 1970-01-01.
+   */
+  protected static long toSameDayOfPreviousYear(long days)
+  {
+    int date = toDate(days);
+    int year = (date >> 9) - 1;
+    int month = (date >> 5) & 0xF;
+    int dayOfMonth = date & 0x1F;
+    if (month == 2 && dayOfMonth == 29
+        && toDays(year, 3, 1) - toDays(year, 2, 1) == 28)
+    {
+      dayOfMonth = 28;
+    }
+    return toDays(year, month, dayOfMonth);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write a time of day as hh:mm:ss.
+   * 
+   * @param buffer the destination.
+   * @param offset the index of the first character written.
+   * @param seconds the number of seconds since midnight.
+   * @return the index after the last character written.
+   */
+  protected static int appendTimeOfDay(char[] buffer, int offset, int seconds)
+  {
+    offset = appendTwoDigits(buffer, offset, seconds / 3600);
+    buffer[offset++] = ':';
+    offset = appendTwoDigits(buffer, offset, (seconds / 60) % 60);
+    buffer[offset++] = ':';
+    return appendTwoDigits(buffer, offset, seconds % 60);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write a number from 0 to 99 as two digits.
+   * 
+   * @param buffer the destination.
+   * @param offset the index of the first character written.
+   * @param value the number.
+   * @return the index after the last character written.
+   */
+  protected static int appendTwoDigits(char[] buffer, int offset, int value)
+  {
+    buffer[offset] = (char) ('0' + value / 10);
+    buffer[offset + 1] = (char) ('0' + value % 10);
+    return offset + 2;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write a non-negative number without padding.
+   * 
+   * @param buffer the destination.
+   * @param offset the index of the first character written.
+   * @param value the number.
+   * @return the index after the last character written.
+   */
+  protected static int appendNumber(char[] buffer, int offset, int value)
+  {
+    int end = offset;
+    for (int v = value; v >= 10; v /= 10)
+    {
+      ++end;
+    }
+    for (int i = end; i >= offset; --i)
+    {
+      buffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return end + 1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the largest integer less than or equal to x / y.
+   * 
+   * @param x the dividend.
+   * @param y the divisor, which must be positive.
+   * @return the quotient, rounded towards negative infinity.
+   */
+  protected static long floorDiv(long x, long y)
+  {
+    long q = x / y;
+    return (x % y < 0) ? q - 1 : q;
   }
 
   // --------------------------------------------------------------------------
   /**
-   * A reusable Calendar instance used to interpret any time stamps found in
-   * LogBlock results.
+   * Return x - floorDiv(x, y) * y.
+   * 
+   * @param x the dividend.
+   * @param y the divisor, which must be positive.
+   * @return the remainder, from 0 to y - 1.
    */
-  protected static Calendar _time = Calendar.getInstance();
+  protected static long floorMod(long x, long y)
+  {
+    long r = x % y;
+    return (r < 0) ? r + y : r;
+  }
 
+  // --------------------------------------------------------------------------
   /**
-   * Used to infer the implicit (absent) year in LogBlock timestamps.
+   * The time of local midnight at the start of one day, and whether the UTC
+   * offset is the same throughout the day.
+   * 
+   * Instances are immutable, so they can be shared between threads through the
+   * cache without locking.
    */
-  protected static Calendar _reference;
+  protected static final class Day
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param days the day, as days since 1970-01-01.
+     */
+    public Day(long days)
+    {
+      _days = days;
+      long wall = days * DAY_MILLIS;
+      int offset = ZONE.getOffset(wall - ZONE.getRawOffset());
+      long start = wall - offset;
+
+      // Where the offset at this midnight and the next agrees with the one
+      // assumed, midnight is exact and every time of day is a fixed offset
+      // from it (assuming the offset never changes twice in a day). A change
+      // at the next midnight would make the last hour ambiguous.
+      _uniform = ZONE.getOffset(start) == offset
+                 && ZONE.getOffset(start + DAY_MILLIS) == offset;
+      _midnight = start;
+    }
+
+    /**
+     * The day, as days since 1970-01-01.
+     */
+    protected final long    _days;
+
+    /**
+     * The time of local midnight in milliseconds since epoch.
+     */
+    protected final long    _midnight;
+
+    /**
+     * True if the UTC offset is the same throughout the day.
+     */
+    protected final boolean _uniform;
+  } // class Day
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of milliseconds in a day without a change in UTC offset.
+   */
+  protected static final long                  DAY_MILLIS       = 24 * 60 * 60 * 1000L;
+
+  /**
+   * The number of entries in _days; a power of 2.
+   */
+  protected static final int                   DAY_CACHE_SIZE   = 64;
+
+  /**
+   * The local time zone, in which all time stamps are interpreted.
+   */
+  protected static final TimeZone              ZONE             = TimeZone.getDefault();
+
+  /**
+   * The client's local time, plus one week into the future; used to infer the
+   * implicit (absent) year in LogBlock timestamps.
+   */
+  protected static final long                  REFERENCE_MILLIS;
+
+  /**
+   * The local year at REFERENCE_MILLIS.
+   */
+  protected static final int                   REFERENCE_YEAR;
   static
   {
-    // Set the reference timestamp to the client's local time, plus one week
-    // into the future.
-    _reference = Calendar.getInstance();
-    _reference.add(Calendar.WEEK_OF_YEAR, 1);
+    Calendar reference = Calendar.getInstance(ZONE);
+    reference.add(Calendar.WEEK_OF_YEAR, 1);
+    REFERENCE_MILLIS = reference.getTimeInMillis();
+    REFERENCE_YEAR = reference.get(Calendar.YEAR);
   }
-} // class TimeStamp
\ No newline at end of file
+
+  /**
+   * Cache of recently used days, indexed by day number modulo DAY_CACHE_SIZE.
+   * Entries are replaced without locking; a lost update only costs a
+   * recomputation.
+   */
+  protected static final Day[]                 _days            = new Day[DAY_CACHE_SIZE];
+
+  /**
+   * Per-thread buffer in which times are formatted.
+   */
+  protected static final ThreadLocal<char[]>   _buffer          = new ThreadLocal<char[]>()
+  {
+    @Override
+    protected char[] initialValue()
+    {
+      return new char[32];
+    }
+  };
+
+  /**
+   * Per-thread Calendar used for days on which the UTC offset changes.
+   */
+  protected static final ThreadLocal<Calendar> _calendar        = new ThreadLocal<Calendar>()
+  {
+    @Override
+    protected Calendar initialValue()
+    {
+      return Calendar.getInstance(ZONE);
+    }
+  };
+} // class TimeStamp
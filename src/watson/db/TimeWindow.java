@@ -0,0 +1,106 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * An immutable range of edit times, from a start time (inclusive) to an end
+ * time (exclusive), in milliseconds since epoch.
+ * 
+ * A new instance is created whenever the range changes, so that holders of
+ * compiled state, such as {@link EditSection}, can detect a change by
+ * reference.
+ */
+public class TimeWindow
+{
+  // --------------------------------------------------------------------------
+  /**
+   * The window containing all times.
+   */
+  public static final TimeWindow ALL = new TimeWindow(Long.MIN_VALUE,
+                                         Long.MAX_VALUE);
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   * 
+   * @param start the start time (inclusive).
+   * @param end the end time (exclusive).
+   */
+  public TimeWindow(long start, long end)
+  {
+    _start = start;
+    _end = end;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the start time (inclusive).
+   * 
+   * @return the start time (inclusive).
+   */
+  public long getStart()
+  {
+    return _start;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the end time (exclusive).
+   * 
+   * @return the end time (exclusive).
+   */
+  public long getEnd()
+  {
+    return _end;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if this window contains all times.
+   * 
+   * @return true if this window contains all times.
+   */
+  public boolean isAll()
+  {
+    return _start == Long.MIN_VALUE && _end == Long.MAX_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified time is in this window.
+   * 
+   * @param time the time in milliseconds since epoch.
+   * @return true if the specified time is in this window.
+   */
+  public boolean contains(long time)
+  {
+    return time >= _start && time < _end;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a description of this window for display in chat.
+   * 
+   * @return a description of this window for display in chat.
+   */
+  @Override
+  public String toString()
+  {
+    if (isAll())
+    {
+      return "all times";
+    }
+    return TimeStamp.formatMonthDayTime(_start) + " to "
+           + TimeStamp.formatMonthDayTime(_end);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The start time (inclusive).
+   */
+  protected long _start;
+
+  /**
+   * The end time (exclusive).
+   */
+  protected long _end;
+} // class TimeWindow
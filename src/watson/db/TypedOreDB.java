@@ -1,9 +1,8 @@
 package watson.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeSet;
 
 // ----------------------------------------------------------------------------
 /**
@@ -19,13 +18,13 @@ public class TypedOreDB
    * Constructor.
    * 
    * @param initialCapacity the initial capacity of the HashMap<> that maps
-   *          {@link IntCoord}s to {@link OreBlock} instances. This value should
+   *          packed {@link IntCoord}s to {@link OreBlock} instances. This value should
    *          be chosen to minimise hash collisions and the need to rehash in
    *          typical mining investigations.
    */
   public TypedOreDB(int initialCapacity)
   {
-    _oreBlocks = new HashMap<IntCoord, OreBlock>(initialCapacity);
+    _oreBlocks = new HashMap<Long, OreBlock>(initialCapacity);
   }
 
   // --------------------------------------------------------------------------
@@ -36,6 +35,7 @@ public class TypedOreDB
   {
     _oreBlocks.clear();
     _oreDeposits.clear();
+    _playerBlocks.clear();
   }
 
   // --------------------------------------------------------------------------
@@ -46,7 +46,7 @@ public class TypedOreDB
    * 
    * @return the set of deposits for fast iteration (drawing labels etc).
    */
-  public TreeSet<OreDeposit> getOreDeposits()
+  public RankedSet<OreDeposit> getOreDeposits()
   {
     return _oreDeposits;
   }
@@ -84,41 +84,7 @@ public class TypedOreDB
       index = 1;
     }
 
-    // Currently, indexing is a linear operation. We can at least improve the
-    // performance by iterating from the back when the index is past half way.
-    if (index > getOreDepositCount() / 2)
-    {
-      int currentIndex = getOreDepositCount();
-      Iterator<OreDeposit> it = _oreDeposits.descendingIterator();
-      while (it.hasNext())
-      {
-        OreDeposit deposit = it.next();
-        if (currentIndex == index)
-        {
-          return deposit;
-        }
-        --currentIndex;
-      }
-      // The only way we can really get here is if the collection is empty.
-      throw new IllegalArgumentException(
-        "index > TypedOreDB.getOreDepositCount()");
-    }
-    else
-    {
-      int currentIndex = 1;
-      Iterator<OreDeposit> it = _oreDeposits.iterator();
-      while (it.hasNext())
-      {
-        OreDeposit deposit = it.next();
-        if (currentIndex == index)
-        {
-          return deposit;
-        }
-        ++currentIndex;
-      }
-      // This should NEVER happen.
-      throw new IllegalStateException("shouldn't happen");
-    }
+    return _oreDeposits.get(index - 1);
   } // getOreDeposit
 
   // --------------------------------------------------------------------------
@@ -131,51 +97,20 @@ public class TypedOreDB
   public void addBlockEdit(BlockEdit edit)
   {
     // Look up the OreBlock at the edit location.
-    IntCoord coord = new IntCoord(edit.x, edit.y, edit.z);
-    OreBlock block = getOreBlock(coord);
-    if (block == null)
+    Long key = IntCoord.pack(edit.x, edit.y, edit.z);
+    if (!_oreBlocks.containsKey(key))
     {
       // Create a new OreBlock at the coordinate.
-      block = new OreBlock(coord, edit);
-      _oreBlocks.put(coord, block);
-
-      // Find all adjacent OreDeposits.
-      TreeSet<OreDeposit> deposits = getAdjacentDeposits(coord);
-      if (deposits.size() == 0)
+      OreBlock block = new OreBlock(new IntCoord(edit.x, edit.y, edit.z), edit);
+      String lowerName = edit.player.toLowerCase();
+      ArrayList<OreBlock> playerBlocks = _playerBlocks.get(lowerName);
+      if (playerBlocks == null)
       {
-        // Create a new deposit containing the block.
-        OreDeposit deposit = new OreDeposit();
-        deposit.addOreBlock(block);
-        _oreDeposits.add(deposit);
-      }
-      else if (deposits.size() == 1)
-      {
-        // Remove and re-add the OreDeposit to reindex it according to the newly
-        // added block.
-        OreDeposit deposit = deposits.first();
-        _oreDeposits.remove(deposit);
-        deposit.addOreBlock(block);
-        _oreDeposits.add(deposit);
-      }
-      else
-      {
-        // There are MULTIPLE adjacent ore deposits. Combine them. Remove each
-        // from _oreDeposits so that the merged deposit is indexed correctly.
-        ArrayList<OreBlock> blocks = new ArrayList<OreBlock>();
-        for (OreDeposit deposit : deposits)
-        {
-          _oreDeposits.remove(deposit);
-          blocks.addAll(deposit.getOreBlocks());
-        }
-
-        OreDeposit merged = new OreDeposit();
-        merged.addOreBlock(block);
-        for (OreBlock b : blocks)
-        {
-          merged.addOreBlock(b);
-        }
-        _oreDeposits.add(merged);
+        playerBlocks = new ArrayList<OreBlock>();
+        _playerBlocks.put(lowerName, playerBlocks);
       }
+      playerBlocks.add(block);
+      addOreBlock(key, block);
     }
   } // addBlockEdit
 
@@ -183,59 +118,139 @@ public class TypedOreDB
   /**
    * Remove all ore deposits mined by the specified player.
    * 
+   * Only the deposits containing blocks mined by the player are affected. Each
+   * of those deposits is dissolved and the blocks mined by other players are
+   * clustered again, which splits the deposit where the removed blocks joined
+   * its parts together. The result is the same as rebuilding the whole
+   * database from the retained edits.
+   * 
    * This method is called when "/w edits remove <player>" is executed.
    * 
    * @param player the case-insensitive player name.
    */
   public void removeDeposits(String player)
   {
-    // To keep it simple we simply make a list of all edits not by player,
-    // remove everything and reindex only those.
-    ArrayList<BlockEdit> retainedEdits = new ArrayList<BlockEdit>();
-    for (OreBlock block : _oreBlocks.values())
+    ArrayList<OreBlock> removedBlocks = _playerBlocks.remove(player.toLowerCase());
+    if (removedBlocks == null)
     {
-      if (!block.getEdit().player.equalsIgnoreCase(player))
+      return;
+    }
+
+    // Dissolve every deposit containing one of the player's blocks, removing
+    // all of its blocks from the spatial index.
+    ArrayList<OreBlock> retainedBlocks = new ArrayList<OreBlock>();
+    for (OreBlock removed : removedBlocks)
+    {
+      OreDeposit deposit = removed.getDeposit();
+      if (_oreDeposits.remove(deposit))
       {
-        retainedEdits.add(block.getEdit());
+        for (OreBlock block : deposit.getOreBlocks())
+        {
+          IntCoord location = block.getLocation();
+          _oreBlocks.remove(IntCoord.pack(location.getX(), location.getY(),
+            location.getZ()));
+          if (!block.getEdit().player.equalsIgnoreCase(player))
+          {
+            retainedBlocks.add(block);
+          }
+        }
       }
+    } // for
+
+    // Re-cluster the surviving blocks of the dissolved deposits.
+    for (OreBlock block : retainedBlocks)
+    {
+      IntCoord location = block.getLocation();
+      addOreBlock(
+        IntCoord.pack(location.getX(), location.getY(), location.getZ()),
+        block);
     }
+  } // removeDeposits
 
-    _oreBlocks.clear();
-    _oreDeposits.clear();
+  // --------------------------------------------------------------------------
+  /**
+   * Add an {@link OreBlock} to the spatial index and cluster it into a new or
+   * existing deposit.
+   * 
+   * Adjacent deposits are merged with {@link OreDeposit#union(OreDeposit,
+   * OreDeposit)}, which does not copy blocks. A deposit is only removed and
+   * re-added to the time-ordered set of deposits when its sort key might
+   * change.
+   * 
+   * @param key the packed coordinates of the block.
+   * @param block the block, which must not currently be in a deposit.
+   */
+  protected void addOreBlock(Long key, OreBlock block)
+  {
+    _oreBlocks.put(key, block);
 
-    // Re-index edits not by player.
-    for (BlockEdit edit : retainedEdits)
+    // Find all adjacent OreDeposits.
+    IntCoord location = block.getLocation();
+    int count = getAdjacentDeposits(location.getX(), location.getY(),
+      location.getZ(), _adjacent);
+    if (count == 0)
     {
-      addBlockEdit(edit);
+      // Create a new deposit containing the block.
+      OreDeposit deposit = new OreDeposit();
+      deposit.addOreBlock(block);
+      _oreDeposits.add(deposit);
     }
-  } // removeDeposits
+    else if (count == 1 && block.compareTo(_adjacent[0].getKeyOreBlock()) > 0)
+    {
+      // The key block, and hence the position of the deposit in the sorted
+      // set, is unchanged.
+      _adjacent[0].addOreBlock(block);
+    }
+    else
+    {
+      // Either the new block becomes the key block of its deposit or there
+      // are MULTIPLE adjacent deposits to combine. Remove each from
+      // _oreDeposits before it is modified so that the merged deposit is
+      // indexed correctly.
+      OreDeposit merged = _adjacent[0];
+      _oreDeposits.remove(merged);
+      for (int i = 1; i < count; ++i)
+      {
+        _oreDeposits.remove(_adjacent[i]);
+        merged = OreDeposit.union(merged, _adjacent[i]);
+      }
+      merged.addOreBlock(block);
+      _oreDeposits.add(merged);
+    }
+    Arrays.fill(_adjacent, 0, count, null);
+  } // addOreBlock
 
   // --------------------------------------------------------------------------
   /**
    * Return the {@link OreBlock} at the specified location, or null if there is
    * none.
    * 
-   * @param location the location.
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
    * @return the {@link OreBlock} at the specified location, or null if there is
    *         none.
    */
-  protected OreBlock getOreBlock(IntCoord location)
+  protected OreBlock getOreBlock(int x, int y, int z)
   {
-    return _oreBlocks.get(location);
+    return _oreBlocks.get(IntCoord.pack(x, y, z));
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Return the set of all OreDeposits that are "adjacent" to the specified
-   * location, ordered from oldest to newest.
+   * Find the distinct OreDeposits that are "adjacent" to the specified
+   * location.
    * 
-   * @return the set of all OreDeposits that are "adjacent" to the specified
-   *         location, ordered from oldest to newest.
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
+   * @param deposits an array of at least 26 elements into which the root
+   *          deposits are stored, in no particular order.
+   * @return the number of deposits stored in the array.
    */
-  protected TreeSet<OreDeposit> getAdjacentDeposits(IntCoord location)
+  protected int getAdjacentDeposits(int x, int y, int z, OreDeposit[] deposits)
   {
-    TreeSet<OreDeposit> deposits = new TreeSet<OreDeposit>();
-    IntCoord adjacent = new IntCoord();
+    int count = 0;
     for (int dx = -1; dx <= 1; ++dx)
     {
       for (int dy = -1; dy <= 1; ++dy)
@@ -248,29 +263,48 @@ public class TypedOreDB
           }
           else
           {
-            adjacent.setX(location.getX() + dx);
-            adjacent.setY(location.getY() + dy);
-            adjacent.setZ(location.getZ() + dz);
-            OreBlock neighbour = getOreBlock(adjacent);
+            OreBlock neighbour = getOreBlock(x + dx, y + dy, z + dz);
             if (neighbour != null)
             {
-              deposits.add(neighbour.getDeposit());
+              OreDeposit deposit = neighbour.getDeposit();
+              int i = 0;
+              while (i < count && deposits[i] != deposit)
+              {
+                ++i;
+              }
+              if (i == count)
+              {
+                deposits[count++] = deposit;
+              }
             }
           }
         } // z
       } // y
     } // x
-    return deposits;
+    return count;
   } // getAdjacentDeposits
 
   // --------------------------------------------------------------------------
   /**
-   * Maps 3-D coordinates of ore destructions to OreBlock instances.
+   * Maps 3-D coordinates of ore destructions, packed by
+   * {@link IntCoord#pack(int, int, int)}, to OreBlock instances.
+   */
+  protected HashMap<Long, OreBlock>              _oreBlocks;
+
+  /**
+   * The set of all root OreDeposits, in ascending order by timestamp (oldest
+   * first), indexable by rank.
+   */
+  protected RankedSet<OreDeposit>                _oreDeposits  = new RankedSet<OreDeposit>();
+
+  /**
+   * Map from lower case player name to the OreBlocks whose edits were made by
+   * that player.
    */
-  protected HashMap<IntCoord, OreBlock> _oreBlocks;
+  protected HashMap<String, ArrayList<OreBlock>> _playerBlocks = new HashMap<String, ArrayList<OreBlock>>();
 
   /**
-   * The set of all OreDeposits, in ascending order by timestamp (oldest first).
+   * Scratch array used by addOreBlock() to collect adjacent deposits.
    */
-  protected TreeSet<OreDeposit>         _oreDeposits = new TreeSet<OreDeposit>();
+  protected OreDeposit[]                         _adjacent     = new OreDeposit[26];
 } // class TypedOreDB
\ No newline at end of file
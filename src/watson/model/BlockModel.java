@@ -26,15 +26,48 @@ public abstract class BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * Draw the model.
+   * Draw the model on its own, in the colour and line width of the block type.
    * 
+   * This is a convenience for drawing a single block. When drawing many blocks,
+   * it is far cheaper to start one GL_LINES batch and call addOutline() for
+   * each block in that batch.
+   * 
+   * @param blockType a description of the type of block, which includes line
+   *          colour and thickness and cuboid bounds.
+   * @param x world X coordinate.
+   * @param y world Y coordinate.
+   * @param z world Z coordinate.
+   */
+  public void render(BlockType blockType, int x, int y, int z)
+  {
+    Tessellator tess = Tessellator.getInstance();
+    WorldRenderer wr = tess.getWorldRenderer();
+    wr.startDrawing(GL11.GL_LINES);
+    ARGB colour = blockType.getARGB();
+    wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
+      colour.getAlpha());
+    GL11.glLineWidth(blockType.getLineWidth());
+    addOutline(wr, blockType, x, y, z);
+    tess.draw();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the line segments of the model to a batch of GL_LINES that has already
+   * been started by the caller.
+   * 
+   * The caller is responsible for setting the colour and line width and for
+   * drawing the batch.
+   * 
+   * @param wr the WorldRenderer accumulating the batch.
    * @param blockType a description of the type of block, which includes line
    *          colour and thickness and cuboid bounds.
    * @param x world X coordinate.
    * @param y world Y coordinate.
    * @param z world Z coordinate.
    */
-  public abstract void render(BlockType blockType, int x, int y, int z);
+  public abstract void addOutline(WorldRenderer wr, BlockType blockType,
+                                  int x, int y, int z);
 
   // --------------------------------------------------------------------------
   /**
@@ -49,28 +82,47 @@ public abstract class BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * Render a simple wireframe box.
+   * Add a single line segment to a GL_LINES batch.
+   * 
+   * @param wr the WorldRenderer accumulating the batch.
+   * @param x1 start x.
+   * @param y1 start y.
+   * @param z1 start z.
+   * @param x2 end x.
+   * @param y2 end y.
+   * @param z2 end z.
+   */
+  protected static void addLine(WorldRenderer wr, double x1, double y1,
+                                double z1, double x2, double y2, double z2)
+  {
+    wr.addVertex(x1, y1, z1);
+    wr.addVertex(x2, y2, z2);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a simple wireframe box to a GL_LINES batch.
    * 
+   * @param wr the WorldRenderer accumulating the batch.
    * @param x1 minimum corner x.
    * @param y1 minimum corner y.
    * @param z1 minimum corner z.
    * @param x2 maximum corner x.
    * @param y2 maximum corner y.
    * @param z2 maximum corner z.
-   * @param colour colour.
-   * @param lineWidth line width.
    */
-  protected void renderBox(double x1, double y1, double z1, double x2,
-                           double y2, double z2, ARGB colour, float lineWidth)
+  protected static void addBox(WorldRenderer wr, double x1, double y1,
+                               double z1, double x2, double y2, double z2)
   {
-    renderTaperedBox(x1, z1, x2, z2, y1, x1, z1, x2, z2, y2, colour, lineWidth);
+    addTaperedBox(wr, x1, z1, x2, z2, y1, x1, z1, x2, z2, y2);
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Render a tapered wireframe box shape (either a pyramid or inverted pyramid,
-   * with the point sliced off).
+   * Add a tapered wireframe box shape (either a pyramid or inverted pyramid,
+   * with the point sliced off) to a GL_LINES batch.
    * 
+   * @param wr the WorldRenderer accumulating the batch.
    * @param xBot1 bottom x 1.
    * @param zBot1 bottom z 1.
    * @param xBot2 bottom x 2.
@@ -81,58 +133,31 @@ public abstract class BlockModel
    * @param xTop2 top x 2.
    * @param zTop2 top z 2.
    * @param yTop top y.
-   * @param colour colour.
-   * @param lineWidth line width.
    */
-  protected void renderTaperedBox(double xBot1, double zBot1, double xBot2,
-                                  double zBot2, double yBot, double xTop1,
-                                  double zTop1, double xTop2, double zTop2,
-                                  double yTop, ARGB colour, float lineWidth)
+  protected static void addTaperedBox(WorldRenderer wr, double xBot1,
+                                      double zBot1, double xBot2,
+                                      double zBot2, double yBot,
+                                      double xTop1, double zTop1,
+                                      double xTop2, double zTop2, double yTop)
   {
-    Tessellator tess = Tessellator.getInstance();
-      WorldRenderer wr = tess.getWorldRenderer();
-
     // Bottom face.
-      wr.startDrawing(GL11.GL_LINE_LOOP);
-      wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
-      colour.getAlpha());
-    GL11.glLineWidth(lineWidth);
-      wr.addVertex(xBot1, yBot, zBot1);
-      wr.addVertex(xBot2, yBot, zBot1);
-      wr.addVertex(xBot2, yBot, zBot2);
-      wr.addVertex(xBot1, yBot, zBot2);
-    tess.draw();
+    addLine(wr, xBot1, yBot, zBot1, xBot2, yBot, zBot1);
+    addLine(wr, xBot2, yBot, zBot1, xBot2, yBot, zBot2);
+    addLine(wr, xBot2, yBot, zBot2, xBot1, yBot, zBot2);
+    addLine(wr, xBot1, yBot, zBot2, xBot1, yBot, zBot1);
 
     // Top face.
-      wr.startDrawing(GL11.GL_LINE_LOOP);
-      wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
-      colour.getAlpha());
-    GL11.glLineWidth(lineWidth);
-      wr.addVertex(xTop1, yTop, zTop1);
-      wr.addVertex(xTop2, yTop, zTop1);
-      wr.addVertex(xTop2, yTop, zTop2);
-      wr.addVertex(xTop1, yTop, zTop2);
-    tess.draw();
+    addLine(wr, xTop1, yTop, zTop1, xTop2, yTop, zTop1);
+    addLine(wr, xTop2, yTop, zTop1, xTop2, yTop, zTop2);
+    addLine(wr, xTop2, yTop, zTop2, xTop1, yTop, zTop2);
+    addLine(wr, xTop1, yTop, zTop2, xTop1, yTop, zTop1);
 
     // Vertical lines joining top and bottom.
-      wr.startDrawing(GL11.GL_LINES);
-      wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
-      colour.getAlpha());
-    GL11.glLineWidth(lineWidth);
-
-      wr.addVertex(xBot1, yBot, zBot1);
-      wr.addVertex(xTop1, yTop, zTop1);
-
-      wr.addVertex(xBot2, yBot, zBot1);
-      wr.addVertex(xTop2, yTop, zTop1);
-
-      wr.addVertex(xBot1, yBot, zBot2);
-      wr.addVertex(xTop1, yTop, zTop2);
-
-      wr.addVertex(xBot2, yBot, zBot2);
-      wr.addVertex(xTop2, yTop, zTop2);
-    tess.draw();
-  } // renderTaperedBox
+    addLine(wr, xBot1, yBot, zBot1, xTop1, yTop, zTop1);
+    addLine(wr, xBot2, yBot, zBot1, xTop2, yTop, zTop1);
+    addLine(wr, xBot1, yBot, zBot2, xTop1, yTop, zTop2);
+    addLine(wr, xBot2, yBot, zBot2, xTop2, yTop, zTop2);
+  } // addTaperedBox
 
   // --------------------------------------------------------------------------
   /**
@@ -1,5 +1,6 @@
 package watson.model;
 
+import net.minecraft.client.renderer.WorldRenderer;
 import watson.db.BlockType;
 
 // --------------------------------------------------------------------------
@@ -21,9 +22,10 @@ public class CuboidBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * Render a cuboid at the specified world coordinates, (x,y,z), using the
-   * colour, line width and bounds associated with the BlockType.
+   * Add a cuboid at the specified world coordinates, (x,y,z), using the bounds
+   * associated with the BlockType.
    * 
+   * @param wr the WorldRenderer accumulating the batch.
    * @param blockType a description of the type of block, which includes line
    *          colour and thickness and cuboid bounds.
    * @param x world X coordinate.
@@ -31,10 +33,11 @@ public class CuboidBlockModel extends BlockModel
    * @param z world Z coordinate.
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(WorldRenderer wr, BlockType blockType, int x, int y,
+                         int z)
   {
-    renderBox(x + blockType.getX1(), y + blockType.getY1(),
+    addBox(wr, x + blockType.getX1(), y + blockType.getY1(),
       z + blockType.getZ1(), x + blockType.getX2(), y + blockType.getY2(),
-      z + blockType.getZ2(), blockType.getARGB(), blockType.getLineWidth());
-  } 
+      z + blockType.getZ2());
+  }
 } // class CuboidBlockModel
\ No newline at end of file
@@ -1,5 +1,6 @@
 package watson.model;
 
+import net.minecraft.client.renderer.WorldRenderer;
 import watson.db.BlockType;
 
 // --------------------------------------------------------------------------
@@ -19,12 +20,14 @@ public class HopperBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * @see watson.model.BlockModel#render(watson.db.BlockType, int, int, int)
+   * @see watson.model.BlockModel#addOutline(net.minecraft.client.renderer.WorldRenderer,
+   *      watson.db.BlockType, int, int, int)
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(WorldRenderer wr, BlockType blockType, int x, int y,
+                         int z)
   {
-    renderTaperedBox(x + 0.375, z + 0.375, x + 0.675, z + 0.675, y, x, z,
-      x + 1, z + 1, y + 1, blockType.getARGB(), blockType.getLineWidth());
-  } // render
+    addTaperedBox(wr, x + 0.375, z + 0.375, x + 0.675, z + 0.675, y, x, z,
+      x + 1, z + 1, y + 1);
+  } // addOutline
 } // class HopperBlockModel
\ No newline at end of file
@@ -1,10 +1,6 @@
 package watson.model;
 
-import net.minecraft.client.renderer.Tessellator;
-
 import net.minecraft.client.renderer.WorldRenderer;
-import org.lwjgl.opengl.GL11;
-
 import watson.db.BlockType;
 
 // ----------------------------------------------------------------------------
@@ -28,14 +24,13 @@ public class PlantBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * @see watson.model.BlockModel#render(watson.db.BlockType, int, int, int)
+   * @see watson.model.BlockModel#addOutline(net.minecraft.client.renderer.WorldRenderer,
+   *      watson.db.BlockType, int, int, int)
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(WorldRenderer wr, BlockType blockType, int x, int y,
+                         int z)
   {
-    Tessellator tess = Tessellator.getInstance();
-      WorldRenderer wr = tess.getWorldRenderer();
-
     double x1 = x + blockType.getX1();
     double y1 = y + blockType.getY1();
     double z1 = z + blockType.getZ1();
@@ -44,27 +39,15 @@ public class PlantBlockModel extends BlockModel
     double z2 = z + blockType.getZ2();
 
     // First rectangle.
-      wr.startDrawing(GL11.GL_LINE_LOOP);
-      wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-      wr.addVertex(x1, y1, z1);
-      wr.addVertex(x2, y1, z2);
-      wr.addVertex(x2, y2, z2);
-      wr.addVertex(x1, y2, z1);
-    tess.draw();
+    addLine(wr, x1, y1, z1, x2, y1, z2);
+    addLine(wr, x2, y1, z2, x2, y2, z2);
+    addLine(wr, x2, y2, z2, x1, y2, z1);
+    addLine(wr, x1, y2, z1, x1, y1, z1);
 
     // Second rectangle.
-      wr.startDrawing(GL11.GL_LINE_LOOP);
-      wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-      wr.addVertex(x1, y1, z2);
-      wr.addVertex(x2, y1, z1);
-      wr.addVertex(x2, y2, z1);
-      wr.addVertex(x1, y2, z2);
-    tess.draw();
-  } // render
+    addLine(wr, x1, y1, z2, x2, y1, z1);
+    addLine(wr, x2, y1, z1, x2, y2, z1);
+    addLine(wr, x2, y2, z1, x1, y2, z2);
+    addLine(wr, x1, y2, z2, x1, y1, z2);
+  } // addOutline
 } // class PlantBlockModel
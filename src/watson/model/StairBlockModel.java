@@ -1,10 +1,6 @@
 package watson.model;
 
-import net.minecraft.client.renderer.Tessellator;
-
 import net.minecraft.client.renderer.WorldRenderer;
-import org.lwjgl.opengl.GL11;
-
 import watson.db.BlockType;
 
 // --------------------------------------------------------------------------
@@ -24,14 +20,13 @@ public class StairBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * @see watson.model.BlockModel#render(watson.db.BlockType, int, int, int)
+   * @see watson.model.BlockModel#addOutline(net.minecraft.client.renderer.WorldRenderer,
+   *      watson.db.BlockType, int, int, int)
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(WorldRenderer wr, BlockType blockType, int x, int y,
+                         int z)
   {
-    Tessellator tess = Tessellator.getInstance();
-      WorldRenderer wr = tess.getWorldRenderer();
-
     // Opposite corners.
     double x1 = x + blockType.getX1();
     double y1 = y + blockType.getY1();
@@ -44,58 +39,41 @@ public class StairBlockModel extends BlockModel
     double yMid = y + 0.5 * (blockType.getY1() + blockType.getY2());
     double zMid = z + 0.5 * (blockType.getZ1() + blockType.getZ2());
 
-    // x1 side.
-      wr.startDrawing(GL11.GL_LINE_LOOP);
-      wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-      wr.addVertex(x1, y1, z1);
-      wr.addVertex(x1, y1, z2);
-      wr.addVertex(x1, y2, z2);
-      wr.addVertex(x1, y2, zMid);
-      wr.addVertex(x1, yMid, zMid);
-      wr.addVertex(x1, yMid, z1);
-    tess.draw();
-
-    // x2 side.
-      wr.startDrawing(GL11.GL_LINE_LOOP);
-      wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-      wr.addVertex(x2, y1, z1);
-      wr.addVertex(x2, y1, z2);
-      wr.addVertex(x2, y2, z2);
-      wr.addVertex(x2, y2, zMid);
-      wr.addVertex(x2, yMid, zMid);
-      wr.addVertex(x2, yMid, z1);
-    tess.draw();
+    // x1 and x2 sides.
+    addSide(wr, x1, y1, z1, y2, z2, yMid, zMid);
+    addSide(wr, x2, y1, z1, y2, z2, yMid, zMid);
 
     // Horizontal lines joining the two sides.
-      wr.startDrawing(GL11.GL_LINES);
-      wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-
-      wr.addVertex(x1, y1, z1);
-      wr.addVertex(x2, y1, z1);
-
-      wr.addVertex(x1, y1, z2);
-      wr.addVertex(x2, y1, z2);
-
-      wr.addVertex(x1, y2, z2);
-      wr.addVertex(x2, y2, z2);
+    addLine(wr, x1, y1, z1, x2, y1, z1);
+    addLine(wr, x1, y1, z2, x2, y1, z2);
+    addLine(wr, x1, y2, z2, x2, y2, z2);
+    addLine(wr, x1, y2, zMid, x2, y2, zMid);
+    addLine(wr, x1, yMid, zMid, x2, yMid, zMid);
+    addLine(wr, x1, yMid, z1, x2, yMid, z1);
+  } // addOutline
 
-      wr.addVertex(x1, y2, zMid);
-      wr.addVertex(x2, y2, zMid);
-
-      wr.addVertex(x1, yMid, zMid);
-      wr.addVertex(x2, yMid, zMid);
-
-      wr.addVertex(x1, yMid, z1);
-      wr.addVertex(x2, yMid, z1);
-    tess.draw();
-  } // render
+  // --------------------------------------------------------------------------
+  /**
+   * Add the L-shaped outline of one side of the stair.
+   * 
+   * @param wr the WorldRenderer accumulating the batch.
+   * @param x the x coordinate of the side.
+   * @param y1 bottom y.
+   * @param z1 front z.
+   * @param y2 top y.
+   * @param z2 back z.
+   * @param yMid y of the concave corner.
+   * @param zMid z of the concave corner.
+   */
+  protected static void addSide(WorldRenderer wr, double x, double y1,
+                                double z1, double y2, double z2, double yMid,
+                                double zMid)
+  {
+    addLine(wr, x, y1, z1, x, y1, z2);
+    addLine(wr, x, y1, z2, x, y2, z2);
+    addLine(wr, x, y2, z2, x, y2, zMid);
+    addLine(wr, x, y2, zMid, x, yMid, zMid);
+    addLine(wr, x, yMid, zMid, x, yMid, z1);
+    addLine(wr, x, yMid, z1, x, y1, z1);
+  } // addSide
 } // class StairBlockModel
\ No newline at end of file
@@ -0,0 +1,333 @@
+package watson.analysis;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// ----------------------------------------------------------------------------
+/**
+ * Differential test of {@link LbCoordsLine#scan(String)} against the
+ * {@link LogBlockPatterns#LB_COORD}, {@link LogBlockPatterns#LB_COORD_KILLS}
+ * and {@link LogBlockPatterns#LB_COORD_REPLACED} regexps, as used by the
+ * fallback handlers of {@link LbCoordsAnalysis}.
+ * 
+ * Every line of a corpus of LogBlock output, followed by randomly generated
+ * variations on it, is parsed both ways:
+ * <ul>
+ * <li>A line that the scanner accepts must match one of the regexps and every
+ * field must equal that set by {@link LbCoordsLine#set(Matcher, int)}, as
+ * must those of a copy.</li>
+ * <li>A line that the scanner rejects must not match any regexp, except where
+ * a number has more than the 9 digits that the scanner parses or the line ends
+ * in a line terminator (which "$" accepts); the regexp handlers deal with
+ * those.</li>
+ * </ul>
+ * 
+ * Run with the Watson classes on the class path, from the root of the
+ * repository:
+ * 
+ * <pre>
+ * java watson.analysis.LbCoordsLineCheck [corpus] [random lines] [seed]
+ * </pre>
+ * 
+ * The exit status is non-zero if any line differs.
+ */
+public class LbCoordsLineCheck
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   * 
+   * @param args optional corpus file, number of random lines and random seed.
+   */
+  public static void main(String[] args)
+    throws IOException
+  {
+    String corpus = (args.length > 0) ? args[0] : DEFAULT_CORPUS;
+    int randomCount = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+    long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+
+    ArrayList<String> lines = readCorpus(corpus);
+    int corpusCount = lines.size();
+    generate(new Random(seed), randomCount, lines);
+
+    LbCoordsLineCheck check = new LbCoordsLineCheck();
+    for (String line : lines)
+    {
+      check.check(line);
+    }
+
+    System.out.println(String.format(
+      "%d corpus and %d random lines: %d scanned, %d left to the regexps, %d rejected by both, %d differences",
+      corpusCount, randomCount, check._scanned, check._fallbacks,
+      check._rejected, check._differences));
+    if (check._differences != 0)
+    {
+      System.exit(1);
+    }
+    System.out.println("OK");
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the non-blank, non-comment lines of the corpus.
+   * 
+   * @param fileName the corpus file.
+   * @return the lines.
+   */
+  protected static ArrayList<String> readCorpus(String fileName)
+    throws IOException
+  {
+    ArrayList<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+      new FileInputStream(fileName), "UTF-8"));
+    try
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        if (line.length() != 0 && !line.startsWith("#"))
+        {
+          lines.add(line);
+        }
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+    return lines;
+  } // readCorpus
+
+  // --------------------------------------------------------------------------
+  /**
+   * Append random lines, each made by splicing fragments that are significant
+   * to one or both parsers into a corpus line.
+   * 
+   * @param random the source of random numbers.
+   * @param count the number of lines to generate.
+   * @param lines the corpus, to which the lines are appended.
+   */
+  protected static void generate(Random random, int count, ArrayList<String> lines)
+  {
+    int corpusCount = lines.size();
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < count; ++i)
+    {
+      line.setLength(0);
+      line.append(lines.get(random.nextInt(corpusCount)));
+      int edits = 1 + random.nextInt(3);
+      for (int e = 0; e < edits; ++e)
+      {
+        int position = random.nextInt(line.length() + 1);
+        int operation = random.nextInt(3);
+        if (operation == 0 && position < line.length())
+        {
+          line.deleteCharAt(position);
+        }
+        else if (operation == 1 && position < line.length())
+        {
+          line.setCharAt(position, CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+        else
+        {
+          line.insert(position, FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+      }
+      lines.add(line.toString());
+    }
+  } // generate
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a line both ways and count the outcome.
+   * 
+   * @param text the line.
+   */
+  protected void check(String text)
+  {
+    String expected;
+    boolean overflow = false;
+    try
+    {
+      expected = parseWithRegexps(text);
+    }
+    catch (NumberFormatException ex)
+    {
+      expected = null;
+      overflow = true;
+    }
+
+    if (_line.scan(text))
+    {
+      ++_scanned;
+      String actual = describe(_line);
+      String copy = describe(new LbCoordsLine(_line));
+      if (expected == null)
+      {
+        difference(text, "scanned but not matched by the regexps", actual);
+      }
+      else if (!actual.equals(expected))
+      {
+        difference(text, "scanned " + actual, expected);
+      }
+      else if (!copy.equals(actual))
+      {
+        difference(text, "copy " + copy, actual);
+      }
+    }
+    else if (expected != null || overflow)
+    {
+      if (overflow || LONG_NUMBER.matcher(text).find()
+          || text.endsWith("\n") || text.endsWith("\r"))
+      {
+        ++_fallbacks;
+      }
+      else
+      {
+        difference(text, "not scanned", expected);
+      }
+    }
+    else
+    {
+      ++_rejected;
+    }
+  } // check
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the description of the fields of a line parsed as by the fallback
+   * handlers of {@link LbCoordsAnalysis}.
+   * 
+   * @param text the line.
+   * @return the description, or null if no regexp matches.
+   * @throws NumberFormatException if a number does not fit in an int.
+   */
+  protected String parseWithRegexps(String text)
+  {
+    LbCoordsLine line = new LbCoordsLine();
+    Matcher m = LogBlockPatterns.LB_COORD.matcher(text);
+    if (m.matches())
+    {
+      line.set(m, m.group(8).equals("created") ? LbCoordsLine.CREATED
+        : LbCoordsLine.DESTROYED);
+      return describe(line);
+    }
+    m = LogBlockPatterns.LB_COORD_KILLS.matcher(text);
+    if (m.matches())
+    {
+      line.set(m, LbCoordsLine.KILLED);
+      return describe(line);
+    }
+    m = LogBlockPatterns.LB_COORD_REPLACED.matcher(text);
+    if (m.matches())
+    {
+      line.set(m, LbCoordsLine.REPLACED);
+      return describe(line);
+    }
+    return null;
+  } // parseWithRegexps
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a description of every field of a line, naming each.
+   * 
+   * @param line the line.
+   * @return the description.
+   */
+  protected static String describe(LbCoordsLine line)
+  {
+    StringBuilder result = new StringBuilder();
+    result.append("index=").append(line.getIndex());
+    result.append(" month=").append(line.getMonth());
+    result.append(" day=").append(line.getDay());
+    result.append(" hour=").append(line.getHour());
+    result.append(" minute=").append(line.getMinute());
+    result.append(" second=").append(line.getSecond());
+    result.append(" player=[").append(line.getPlayer()).append(']');
+    result.append(" action=").append(line.getAction());
+    result.append(" block=[").append(line.getBlock()).append(']');
+    result.append(" blockRange=[").append(
+      line.getText().substring(line.getBlockStart(), line.getBlockEnd())).append(']');
+    result.append(" other=[").append(line.getOther()).append(']');
+    result.append(" signs=").append(line.hasSigns());
+    for (int i = 0; i < 4; ++i)
+    {
+      result.append(" sign").append(i).append("=[").append(line.getSign(i)).append(']');
+    }
+    result.append(" x=").append(line.getX());
+    result.append(" y=").append(line.getY());
+    result.append(" z=").append(line.getZ());
+    return result.toString();
+  } // describe
+
+  // --------------------------------------------------------------------------
+  /**
+   * Report a difference, showing only the first few.
+   * 
+   * @param text the line.
+   * @param actual what the scanner did.
+   * @param expected the regexp result.
+   */
+  protected void difference(String text, String actual, String expected)
+  {
+    if (++_differences <= 10)
+    {
+      System.out.println("DIFFERENCE: \"" + text + "\"\n  " + actual
+                         + "\n  expected " + expected);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The corpus used when none is specified.
+   */
+  protected static final String   DEFAULT_CORPUS = "test/watson/analysis/lbcoords.txt";
+
+  /**
+   * A number too long for the scanner, which leaves the line to the regexps.
+   */
+  protected static final Pattern  LONG_NUMBER    = Pattern.compile("\\d{10,}");
+
+  /**
+   * Fragments inserted into corpus lines by generate().
+   */
+  protected static final String[] FRAGMENTS      = {" ", "a", "B", "at", " at ", " at 1:2:3",
+    " with ", "with", "] [", "[", "]", " [a] [b] [c] [d]", "1", "-", ":", "_", "x y",
+    "created", "destroyed", "killed", "replaced", "\n", "é"};
+
+  /**
+   * Characters substituted into corpus lines by generate().
+   */
+  protected static final String   CHARACTERS     = " aZ_09-:()[]\t";
+
+  /**
+   * The line reused by the scanner.
+   */
+  protected LbCoordsLine          _line          = new LbCoordsLine();
+
+  /**
+   * The number of lines that the scanner accepted.
+   */
+  protected int                   _scanned;
+
+  /**
+   * The number of lines that the scanner left to the regexps.
+   */
+  protected int                   _fallbacks;
+
+  /**
+   * The number of lines that neither parser accepted.
+   */
+  protected int                   _rejected;
+
+  /**
+   * The number of lines on which the parsers differed.
+   */
+  protected int                   _differences;
+} // class LbCoordsLineCheck
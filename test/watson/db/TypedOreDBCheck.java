@@ -0,0 +1,186 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+// ----------------------------------------------------------------------------
+/**
+ * Randomised equivalence test of {@link TypedOreDB#removeDeposits(String)}.
+ * 
+ * Random edits by a few players are added to a {@link TypedOreDB}, then the
+ * players are removed one at a time. After each removal, the database must be
+ * identical to a fresh {@link TypedOreDB} built from the edits that remain:
+ * the same deposits in the same order, each with the same blocks, key block,
+ * time stamp and earliest and latest edits.
+ * 
+ * Run with the Watson classes on the class path:
+ * 
+ * <pre>
+ * java watson.db.TypedOreDBCheck [trials] [seed]
+ * </pre>
+ * 
+ * The exit status is non-zero if any trial fails.
+ */
+public class TypedOreDBCheck
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   * 
+   * @param args optional number of trials and random seed.
+   */
+  public static void main(String[] args)
+  {
+    int trials = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+    long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+    Random random = new Random(seed);
+    for (int trial = 0; trial < trials; ++trial)
+    {
+      String failure = runTrial(random);
+      if (failure != null)
+      {
+        System.out.println("FAILED trial " + trial + " (seed " + seed + "): " + failure);
+        System.exit(1);
+      }
+    }
+    System.out.println("OK: " + trials + " trials");
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add random edits to a database, remove players in a random order and
+   * compare the database with a full rebuild after each removal.
+   * 
+   * @param random the source of random numbers.
+   * @return a description of the first difference, or null if none.
+   */
+  protected static String runTrial(Random random)
+  {
+    // A small volume, so that deposits are large and often bridged by the
+    // blocks of another player.
+    int size = 4 + random.nextInt(8);
+    int editCount = 1 + random.nextInt(400);
+
+    TypedOreDB db = new TypedOreDB(16);
+    ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+    for (int i = 0; i < editCount; ++i)
+    {
+      // Vary the case of names, since players are matched ignoring case, and
+      // reuse time stamps, to exercise the tie breaks of the key block.
+      String player = PLAYERS[random.nextInt(PLAYERS.length)];
+      if (random.nextInt(4) == 0)
+      {
+        player = player.toUpperCase();
+      }
+      BlockEdit edit = new BlockEdit(random.nextInt(200), player, false,
+        random.nextInt(size), random.nextInt(size), random.nextInt(size), null);
+      edits.add(edit);
+      db.addBlockEdit(edit);
+    }
+
+    ArrayList<String> order = new ArrayList<String>();
+    Collections.addAll(order, PLAYERS);
+    Collections.shuffle(order, random);
+    HashSet<String> removed = new HashSet<String>();
+    for (String player : order)
+    {
+      db.removeDeposits((random.nextBoolean()) ? player : player.toUpperCase());
+      removed.add(player.toLowerCase());
+
+      String expected = describe(rebuild(edits, removed));
+      String actual = describe(db);
+      if (!expected.equals(actual))
+      {
+        return "after removing " + removed + "\nexpected:\n" + expected
+               + "actual:\n" + actual;
+      }
+    }
+    return null;
+  } // runTrial
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new database built from the edits of players that have not been
+   * removed.
+   * 
+   * As in {@link TypedOreDB#addBlockEdit(BlockEdit)}, only the first edit at
+   * each location is kept, whether or not its player was removed later.
+   * 
+   * @param edits all edits, in the order they were added.
+   * @param removed the lower case names of removed players.
+   * @return the database.
+   */
+  protected static TypedOreDB rebuild(ArrayList<BlockEdit> edits,
+                                      HashSet<String> removed)
+  {
+    TypedOreDB db = new TypedOreDB(16);
+    HashSet<Long> locations = new HashSet<Long>();
+    for (BlockEdit edit : edits)
+    {
+      if (locations.add(IntCoord.pack(edit.x, edit.y, edit.z))
+          && !removed.contains(edit.player.toLowerCase()))
+      {
+        db.addBlockEdit(edit);
+      }
+    }
+    return db;
+  } // rebuild
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a description of the deposits in a database, in their sorted order,
+   * that is the same for equivalent databases.
+   * 
+   * @param db the database.
+   * @return the description.
+   */
+  protected static String describe(TypedOreDB db)
+  {
+    StringBuilder result = new StringBuilder();
+    for (OreDeposit deposit : db.getOreDeposits())
+    {
+      ArrayList<String> blocks = new ArrayList<String>();
+      for (OreBlock block : deposit.getOreBlocks())
+      {
+        if (block.getDeposit() != deposit)
+        {
+          blocks.add("(wrong deposit)");
+        }
+        blocks.add(describe(block));
+      }
+      Collections.sort(blocks);
+
+      result.append("key ").append(describe(deposit.getKeyOreBlock()));
+      result.append(" time ").append(deposit.getTimeStamp());
+      result.append(" count ").append(deposit.getBlockCount());
+      result.append(" earliest ").append(deposit.getEarliestEdit().time);
+      result.append(" latest ").append(deposit.getLatestEdit().time);
+      result.append(' ').append(blocks).append('\n');
+    }
+    result.append(db._oreBlocks.size()).append(" blocks\n");
+    return result.toString();
+  } // describe
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a description of an {@link OreBlock}.
+   * 
+   * @param block the block.
+   * @return the description.
+   */
+  protected static String describe(OreBlock block)
+  {
+    IntCoord location = block.getLocation();
+    BlockEdit edit = block.getEdit();
+    return location.getX() + "," + location.getY() + "," + location.getZ()
+           + "@" + edit.time + ":" + edit.player;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The names of the players that make the edits.
+   */
+  protected static final String[] PLAYERS = {"alice", "Bob", "carol", "Dave"};
+} // class TypedOreDBCheck